@@ -0,0 +1,76 @@
+package com.example.mobcontrol;
+
+/**
+ * Receiving side of AxisStreamEncoder (used by tests and as a reference for the desktop).
+ *
+ * Feed it every InputCodec.Handler.onAxes() call. A delta is applied only if this decoder
+ * holds the stream's values from the exact frame the delta is based on; after a lost frame
+ * the stream is invalid until the next full send. Late (reordered or FEC rebuilt) frames
+ * older than the stream's current values are ignored. Motion events (relative streams) are
+ * never rejected: value() returns the motion of the last one.
+ */
+public class AxisStreamDecoder {
+
+    private static final int STREAMS = 16;  // stream is 4 bits
+
+    private final int[][] values = new int[STREAMS][InputProtocol.MAX_STREAM_AXES];
+    private final int[] scales = new int[STREAMS];
+    private final int[] lastSeqs = new int[STREAMS];
+    private final boolean[] valid = new boolean[STREAMS];
+
+    // Metrics
+    private long rejectedDeltas;
+
+    /**
+     * Applies one decoded event.
+     * @return true if the stream's values were updated; read them with value()
+     */
+    public boolean apply(int seq, int stream, int base, int scale, int[] fields) {
+        int[] v = values[stream];
+        if (base == InputProtocol.AXIS_BASE_MOTION) {
+            System.arraycopy(fields, 0, v, 0, InputProtocol.MAX_STREAM_AXES);
+            scales[stream] = 1;
+            valid[stream] = true;
+            return true;
+        }
+        if (base == 0) {
+            if (valid[stream] && !InputProtocol.isNewer(seq, lastSeqs[stream])) return false;
+            System.arraycopy(fields, 0, v, 0, InputProtocol.MAX_STREAM_AXES);
+            scales[stream] = Math.max(1, scale);
+            lastSeqs[stream] = seq;
+            valid[stream] = true;
+            return true;
+        }
+
+        if (!valid[stream]) {
+            rejectedDeltas++;
+            return false;
+        }
+        if (!InputProtocol.isNewer(seq, lastSeqs[stream])) return false;
+        if (seq - base != lastSeqs[stream]) {
+            // The base frame was lost: these deltas don't apply to what we hold
+            valid[stream] = false;
+            rejectedDeltas++;
+            return false;
+        }
+
+        for (int i = 0; i < InputProtocol.MAX_STREAM_AXES; i++) {
+            v[i] += fields[i];
+        }
+        lastSeqs[stream] = seq;
+        return true;
+    }
+
+    // Current value of an axis, in the stream's units
+    public float value(int stream, int axis) {
+        return values[stream][axis] / (float) scales[stream];
+    }
+
+    public boolean isValid(int stream) {
+        return valid[stream];
+    }
+
+    public long getRejectedDeltas() {
+        return rejectedDeltas;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.mobcontrol;
+
+/**
+ * Compact encoding of one analog stream (mouse deltas, gyro) for the binary wire
+ * (InputProtocol OP_AXIS_KEY / OP_AXIS_DELTA).
+ *
+ * Each axis is quantized to value * scale. A send carries only the axes that changed since
+ * the previous send, as zigzag varints of the change, so a steady joystick or a slowly
+ * turning phone costs a byte or two per axis. The unreliable stream has no acks, so a delta
+ * names its base by sequence number instead; a receiver that missed the base waits for the
+ * next full send, which goes out at least every KEYFRAME_INTERVAL_NANOS.
+ *
+ * Deltas are taken against the quantized values sent, not the raw input, so rounding errors
+ * never accumulate: every decoded value is within half a step of its input.
+ *
+ * That only suits absolute values (gyro, sticks). A relative stream (mouse dx/dy, motion()) is
+ * already a change: each send carries its own motion (OP_AXIS_MOTION) with no base, since a
+ * delta chain would throw away all motion from a lost frame until the next keyframe.
+ *
+ * Not thread safe: used by the sender thread only.
+ */
+public class AxisStreamEncoder {
+
+    public static final long KEYFRAME_INTERVAL_NANOS = 100_000_000L;
+    private static final int MAX_BASE = 255;  // base is one byte
+
+    private final int stream;
+    private final int axisCount;
+    private final int scale;
+    private final boolean relative;
+
+    private final int[] sent = new int[InputProtocol.MAX_STREAM_AXES];    // quantized values of the last send
+    private final int[] fields = new int[InputProtocol.MAX_STREAM_AXES];
+    private boolean hasSent;
+    private int lastSeq;
+    private long lastKeyNanos;
+
+    // Metrics
+    private volatile long keyEvents;
+    private volatile long deltaEvents;
+    private volatile long bytes;
+
+    /**
+     * @param scale quantization steps per unit (1 = whole numbers), at most 0xFFFF
+     */
+    public AxisStreamEncoder(int stream, int axisCount, int scale) {
+        this(stream, axisCount, scale, false);
+    }
+
+    // Relative stream in whole units: every send stands alone
+    public static AxisStreamEncoder motion(int stream, int axisCount) {
+        return new AxisStreamEncoder(stream, axisCount, 1, true);
+    }
+
+    private AxisStreamEncoder(int stream, int axisCount, int scale, boolean relative) {
+        if (axisCount < 1 || axisCount > InputProtocol.MAX_STREAM_AXES) {
+            throw new IllegalArgumentException("Axis count " + axisCount);
+        }
+        if (scale < 1 || scale > 0xFFFF) {
+            throw new IllegalArgumentException("Scale " + scale);
+        }
+        this.stream = stream;
+        this.axisCount = axisCount;
+        this.scale = scale;
+        this.relative = relative;
+    }
+
+    // True if sending "values" now would tell the receiver nothing new
+    public boolean isUnchanged(float[] values, long nowNanos) {
+        if (!relative && isKeyDue(nowNanos)) return false;
+        for (int i = 0; i < axisCount; i++) {
+            if (quantize(values[i]) != (relative ? 0 : sent[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Appends the stream's values to the open frame of "codec", whose sequence number is "seq".
+     */
+    public void encode(InputCodec codec, int seq, float[] values, long nowNanos) {
+        if (relative) {
+            encodeMotion(codec, values);
+            return;
+        }
+        int base = seq - lastSeq;
+        boolean key = base <= 0 || base > MAX_BASE || isKeyDue(nowNanos);
+
+        int mask = 0;
+        for (int i = 0; i < axisCount; i++) {
+            int q = quantize(values[i]);
+            fields[i] = key ? q : q - sent[i];
+            if (fields[i] != 0) {
+                mask |= 1 << i;
+            }
+            sent[i] = q;
+        }
+
+        int start = codec.size();
+        if (key) {
+            codec.putAxisKey(stream, mask, scale, fields);
+            lastKeyNanos = nowNanos;
+            keyEvents++;
+        } else {
+            codec.putAxisDelta(stream, mask, base, fields);
+            deltaEvents++;
+        }
+        bytes += codec.size() - start;
+        hasSent = true;
+        lastSeq = seq;
+    }
+
+    private void encodeMotion(InputCodec codec, float[] values) {
+        int mask = 0;
+        for (int i = 0; i < axisCount; i++) {
+            fields[i] = quantize(values[i]);
+            if (fields[i] != 0) {
+                mask |= 1 << i;
+            }
+        }
+        int start = codec.size();
+        codec.putAxisMotion(stream, mask, fields);
+        bytes += codec.size() - start;
+        keyEvents++;
+    }
+
+    // Makes the next send a full one (e.g. after reconnecting)
+    public void reset() {
+        hasSent = false;
+    }
+
+    private boolean isKeyDue(long nowNanos) {
+        return !hasSent || nowNanos - lastKeyNanos >= KEYFRAME_INTERVAL_NANOS;
+    }
+
+    private int quantize(float value) {
+        return Math.round(value * scale);
+    }
+
+    public long getKeyEvents() {
+        return keyEvents;
+    }
+
+    public long getDeltaEvents() {
+        return deltaEvents;
+    }
+
+    // Average encoded size of an event, in bytes
+    public double getAverageBytes() {
+        long events = keyEvents + deltaEvents;
+        return events > 0 ? bytes / (double) events : 0;
+    }
+}
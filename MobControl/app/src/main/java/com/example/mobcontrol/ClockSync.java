@@ -0,0 +1,187 @@
+package com.example.mobcontrol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NTP-style phone -> desktop clock mapping over the session's UDP socket.
+ *
+ * The phone sends {"action":"time_sync","t0":phoneMicros}; the desktop echoes it with its own
+ * receive (t1) and send (t2) times. Each exchange gives an offset sample
+ * ((t1 - t0) + (t2 - t3)) / 2 with an error bound of half the round trip, so only
+ * exchanges whose round trip is close to the recent minimum are kept. Offset and drift are
+ * a least-squares line through the last WINDOW kept samples.
+ *
+ * Phone times are System.nanoTime() based (CLOCK_MONOTONIC, the same clock as
+ * MotionEvent.getEventTime()); use sensorToMonotonicNanos() for SensorEvent timestamps.
+ *
+ * Thread safe: replies arrive on the control channel thread, conversions happen on the sender.
+ */
+public class ClockSync {
+
+    private static final int WINDOW = 16;
+    private static final int DELAY_HISTORY = 32;  // exchanges the minimum round trip is taken over
+    private static final long GOOD_DELAY_MARGIN_MICROS = 2_000;  // samples within this of the minimum are kept
+    private static final long MIN_DRIFT_SPAN_MICROS = 2_000_000;  // need 2s of samples before estimating drift
+
+    private final long[] phoneMicros = new long[WINDOW];   // midpoint of each exchange
+    private final long[] offsetMicros = new long[WINDOW];
+    private final long[] delayMicros = new long[WINDOW];
+    private int samples;
+    private int next;
+
+    // Round trips of all recent exchanges, kept or not; the minimum follows route changes
+    private final long[] recentDelays = new long[DELAY_HISTORY];
+    private int exchanges;
+
+    // remote = phone + offset + drift * (phone - reference); replaced as a whole so readers never see a mix
+    private static class Estimate {
+        final long referenceMicros;
+        final long offsetMicros;
+        final double drift;  // remote seconds per phone second, minus 1
+        final long bestDelayMicros;
+
+        Estimate(long referenceMicros, long offsetMicros, double drift, long bestDelayMicros) {
+            this.referenceMicros = referenceMicros;
+            this.offsetMicros = offsetMicros;
+            this.drift = drift;
+            this.bestDelayMicros = bestDelayMicros;
+        }
+    }
+
+    private volatile Estimate estimate;  // null until the first reply
+
+    public static long nowMicros() {
+        return System.nanoTime() / 1000;
+    }
+
+    // SensorEvent.timestamp is CLOCK_BOOTTIME on current devices; move it to System.nanoTime()'s clock
+    public static long sensorToMonotonicNanos(long sensorTimestamp) {
+        return sensorTimestamp - (android.os.SystemClock.elapsedRealtimeNanos() - System.nanoTime());
+    }
+
+    public Map<String, Object> newRequest() {
+        Map<String, Object> message = new HashMap<>();
+        message.put("action", "time_sync");
+        message.put("t0", nowMicros());
+        return message;
+    }
+
+    // Handles a desktop echo received at phone time t3 (micros)
+    public void onReply(Map<String, Object> message, long t3) {
+        Object t0 = message.get("t0");
+        Object t1 = message.get("t1");
+        Object t2 = message.get("t2");
+        if (!(t0 instanceof Number) || !(t1 instanceof Number) || !(t2 instanceof Number)) return;
+
+        addSample(((Number) t0).longValue(), ((Number) t1).longValue(), ((Number) t2).longValue(), t3);
+    }
+
+    /**
+     * Adds one exchange: t0 phone send, t1 desktop receive, t2 desktop send, t3 phone receive.
+     */
+    public synchronized void addSample(long t0, long t1, long t2, long t3) {
+        long delay = (t3 - t0) - (t2 - t1);
+        if (delay < 0) return;  // clocks moved during the exchange
+
+        recentDelays[exchanges++ % DELAY_HISTORY] = delay;
+        long minimum = delay;
+        for (int i = 0; i < Math.min(exchanges, DELAY_HISTORY); i++) {
+            minimum = Math.min(minimum, recentDelays[i]);
+        }
+        if (delay > minimum + GOOD_DELAY_MARGIN_MICROS) return;  // queued somewhere; offset unreliable
+
+        phoneMicros[next] = t0 + (t3 - t0) / 2;
+        offsetMicros[next] = ((t1 - t0) + (t2 - t3)) / 2;
+        delayMicros[next] = delay;
+        next = (next + 1) % WINDOW;
+        if (samples < WINDOW) samples++;
+
+        estimate = fit();
+    }
+
+    // Least-squares line through the kept samples (those kept before a lower round trip was seen are left out)
+    private Estimate fit() {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < samples; i++) {
+            best = Math.min(best, delayMicros[i]);
+        }
+
+        long reference = 0;
+        int n = 0;
+        long minTime = Long.MAX_VALUE, maxTime = Long.MIN_VALUE;
+        for (int i = 0; i < samples; i++) {
+            if (delayMicros[i] > best + GOOD_DELAY_MARGIN_MICROS) continue;
+            if (n == 0) reference = phoneMicros[i];
+            minTime = Math.min(minTime, phoneMicros[i]);
+            maxTime = Math.max(maxTime, phoneMicros[i]);
+            n++;
+        }
+
+        // Relative to the first good sample so the sums stay small
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (int i = 0; i < samples; i++) {
+            if (delayMicros[i] > best + GOOD_DELAY_MARGIN_MICROS) continue;
+            double x = phoneMicros[i] - reference;
+            double y = offsetMicros[i];
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+
+        double slope = 0;
+        double denominator = n * sumXX - sumX * sumX;
+        if (n >= 3 && maxTime - minTime >= MIN_DRIFT_SPAN_MICROS && denominator != 0) {
+            slope = (n * sumXY - sumX * sumY) / denominator;
+        }
+        double intercept = (sumY - slope * sumX) / n;
+
+        return new Estimate(reference, Math.round(intercept), slope, best);
+    }
+
+    // Forgets all samples, e.g. when the desktop may have restarted; unsynced until the next reply
+    public synchronized void reset() {
+        samples = 0;
+        next = 0;
+        exchanges = 0;
+        estimate = null;
+    }
+
+    // ========== Conversion ==========
+
+    public boolean isSynced() {
+        return estimate != null;
+    }
+
+    // Desktop time (micros) for a phone time (micros); unchanged until synced
+    public long toRemoteMicros(long phoneMicros) {
+        Estimate e = estimate;
+        if (e == null) return phoneMicros;
+        return phoneMicros + e.offsetMicros + Math.round(e.drift * (phoneMicros - e.referenceMicros));
+    }
+
+    public long toRemoteMicrosFromNanos(long phoneNanos) {
+        return toRemoteMicros(phoneNanos / 1000);
+    }
+
+    public long getOffsetMicros() {
+        long now = nowMicros();
+        return toRemoteMicros(now) - now;
+    }
+
+    public double getDriftPpm() {
+        Estimate e = estimate;
+        return e != null ? e.drift * 1e6 : 0;
+    }
+
+    // Round trip of the best sample; the offset error is at most half of it
+    public long getBestDelayMicros() {
+        Estimate e = estimate;
+        return e != null ? e.bestDelayMicros : 0;
+    }
+
+    public synchronized int getSampleCount() {
+        return samples;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.mobcontrol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled control table of the active layout: numeric control ID -> key / mouse / axis target.
+ *
+ * IDs 1..63 are the raw InputProtocol key IDs and always mean that key, so fixed-key inputs
+ * (joysticks, D-pad, gyro steering) need no entry. Layout buttons get IDs from
+ * FIRST_LAYOUT_ID up; the table is uploaded once per session ("control_map", the controller
+ * side counterpart of the desktop's update_config), and once the desktop has acknowledged it,
+ * input carries only the control ID instead of a resolved key.
+ *
+ * Built on the main thread while the layout is set up, read-only afterwards.
+ */
+public class ControlMap {
+
+    public static final int FIRST_LAYOUT_ID = 64;
+    public static final int MAX_ID = 127;  // IDs travel in 7 bits of the key history
+
+    public static final String TARGET_KEY = "key";
+    public static final String TARGET_MOUSE = "mouse";
+    public static final String TARGET_AXIS = "axis";
+
+    /**
+     * One row of the table.
+     */
+    public static class Entry {
+        public final int id;           // control ID; mouse button / GamepadState axis for those targets
+        public final String control;   // ButtonData.id (plus a suffix for multi-part controls)
+        public final String type;
+        public final String target;    // key name, "left"/"right", or axis name
+
+        Entry(int id, String control, String type, String target) {
+            this.id = id;
+            this.control = control;
+            this.type = type;
+            this.target = target;
+        }
+    }
+
+    private final String layoutName;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> idsByControl = new HashMap<>();
+
+    // Indexed by control ID, so resolving an event is an array read
+    private final String[] keyNames = new String[MAX_ID + 1];
+    private final int[] keyIds = new int[MAX_ID + 1];
+
+    private int nextId = FIRST_LAYOUT_ID;
+
+    public ControlMap(String layoutName) {
+        this.layoutName = layoutName;
+
+        for (int id = 1; id < FIRST_LAYOUT_ID; id++) {
+            keyNames[id] = InputProtocol.keyName(id);
+            keyIds[id] = keyNames[id] != null ? id : 0;
+        }
+    }
+
+    // ========== Building ==========
+
+    /**
+     * Adds a control that presses a key.
+     * @return its control ID; the raw key ID if the table is full, or 0 if the key is unusable
+     */
+    public int addKey(String control, String keyName) {
+        Integer existing = idsByControl.get(control);
+        if (existing != null) return existing;
+
+        if (nextId > MAX_ID) {
+            return InputProtocol.keyId(keyName);
+        }
+
+        int id = nextId++;
+        keyNames[id] = keyName;
+        keyIds[id] = InputProtocol.keyId(keyName);
+        entries.add(new Entry(id, control, TARGET_KEY, keyName));
+        idsByControl.put(control, id);
+        return id;
+    }
+
+    // Mouse buttons keep their own events; listed so the desktop knows the whole layout
+    public void addMouse(String control, int button) {
+        entries.add(new Entry(button, control, TARGET_MOUSE,
+                button == InputProtocol.MOUSE_LEFT ? "left" : "right"));
+    }
+
+    public void addAxis(String control, int axis, String axisName) {
+        entries.add(new Entry(axis, control, TARGET_AXIS, axisName));
+    }
+
+    // ========== Lookup ==========
+
+    // Key name for a control ID (null if none)
+    public String keyName(int controlId) {
+        return controlId > 0 && controlId <= MAX_ID ? keyNames[controlId] : null;
+    }
+
+    // InputProtocol key ID for a control ID (0 if the target has no binary key ID)
+    public int keyId(int controlId) {
+        return controlId > 0 && controlId <= MAX_ID ? keyIds[controlId] : 0;
+    }
+
+    public boolean isLayoutControl(int controlId) {
+        return controlId >= FIRST_LAYOUT_ID && controlId < nextId;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public String getLayoutName() {
+        return layoutName;
+    }
+
+    // Changes whenever any entry changes, so the desktop can tell a new table from a resend
+    public int getVersion() {
+        int hash = layoutName != null ? layoutName.hashCode() : 0;
+        for (Entry e : entries) {
+            hash = 31 * hash + e.id;
+            hash = 31 * hash + e.control.hashCode();
+            hash = 31 * hash + e.type.hashCode();
+            hash = 31 * hash + (e.target != null ? e.target.hashCode() : 0);
+        }
+        return hash;
+    }
+
+    // ========== Upload ==========
+
+    public Map<String, Object> toMessage() {
+        List<Map<String, Object>> controls = new ArrayList<>();
+        List<Map<String, Object>> axes = new ArrayList<>();
+
+        for (Entry e : entries) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("control", e.control);
+            row.put("target", e.target);
+
+            if (TARGET_AXIS.equals(e.type)) {
+                row.put("axis", e.id);
+                axes.add(row);
+            } else if (TARGET_MOUSE.equals(e.type)) {
+                row.put("type", e.type);
+                row.put("button", e.id);
+                controls.add(row);
+            } else {
+                row.put("type", e.type);
+                row.put("id", e.id);
+                controls.add(row);
+            }
+        }
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("action", "control_map");
+        message.put("layout", layoutName);
+        message.put("version", getVersion());
+        message.put("firstId", FIRST_LAYOUT_ID);
+        message.put("controls", controls);
+        message.put("axes", axes);
+        return message;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.mobcontrol;
+
+/**
+ * Receiving side of the velocity mouse mode (used by tests and as a reference for the desktop).
+ *
+ * Each update gives the phone's cumulative pointer position and velocity at a sample time.
+ * Every display frame, advance() moves the cursor to where the most recent update puts the
+ * pointer at that moment (position + velocity * elapsed), so motion is continuous between
+ * packets. Extrapolation stops after MAX_EXTRAPOLATION_MICROS, in case the stop update is late.
+ *
+ * With a render delay the cursor is evaluated that far in the past, which turns most of the
+ * extrapolation into interpolation between received updates: fewer corrections, more latency.
+ *
+ * Positions are compared as wrapping 32 bit numbers, and the first update only sets the
+ * reference point, so the cursor never jumps to an absolute position.
+ */
+public class CursorExtrapolator {
+
+    public static final long MAX_EXTRAPOLATION_MICROS = 100_000L;
+    private static final int HISTORY = 8;  // updates kept for render delay lookups
+
+    private final long renderDelayMicros;
+
+    private final long[] positionX = new long[HISTORY];  // unwrapped, MOUSE_POSITION_SCALE units
+    private final long[] positionY = new long[HISTORY];
+    private final int[] velocityX = new int[HISTORY];
+    private final int[] velocityY = new int[HISTORY];
+    private final long[] sampleMicros = new long[HISTORY];
+    private int updates;
+
+    private long appliedX, appliedY;  // where the cursor is, same units
+    private int dx, dy;
+
+    public CursorExtrapolator(long renderDelayMicros) {
+        this.renderDelayMicros = renderDelayMicros;
+    }
+
+    /**
+     * Adds an update. "sampleMicros" is its capture time in the receiver's clock if known
+     * (ClockSync), else its arrival time. Updates older than the newest one are ignored.
+     */
+    public void onUpdate(int x, int y, int vx, int vy, long sampleMicros) {
+        long ux, uy;
+        if (updates == 0) {
+            ux = x;
+            uy = y;
+            appliedX = ux;
+            appliedY = uy;
+        } else {
+            int last = (updates - 1) % HISTORY;
+            if (sampleMicros <= this.sampleMicros[last]) return;
+            ux = positionX[last] + (x - (int) positionX[last]);
+            uy = positionY[last] + (y - (int) positionY[last]);
+        }
+
+        int slot = updates % HISTORY;
+        positionX[slot] = ux;
+        positionY[slot] = uy;
+        velocityX[slot] = vx;
+        velocityY[slot] = vy;
+        this.sampleMicros[slot] = sampleMicros;
+        updates++;
+    }
+
+    /**
+     * Moves the cursor for a display frame at "nowMicros"; read the whole-pixel motion
+     * with getDx() / getDy() (fractions carry over to the next frame).
+     */
+    public void advance(long nowMicros) {
+        dx = 0;
+        dy = 0;
+        if (updates == 0) return;
+
+        long t = nowMicros - renderDelayMicros;
+        int slot = updateAt(t);
+        long elapsed = Math.max(0, Math.min(MAX_EXTRAPOLATION_MICROS, t - sampleMicros[slot]));
+        long targetX = positionX[slot] + velocityX[slot] * elapsed * InputProtocol.MOUSE_POSITION_SCALE / 1_000_000L;
+        long targetY = positionY[slot] + velocityY[slot] * elapsed * InputProtocol.MOUSE_POSITION_SCALE / 1_000_000L;
+
+        dx = (int) ((targetX - appliedX) / InputProtocol.MOUSE_POSITION_SCALE);
+        dy = (int) ((targetY - appliedY) / InputProtocol.MOUSE_POSITION_SCALE);
+        appliedX += (long) dx * InputProtocol.MOUSE_POSITION_SCALE;
+        appliedY += (long) dy * InputProtocol.MOUSE_POSITION_SCALE;
+    }
+
+    // Newest update sampled at or before "t", or the oldest one kept if all are later
+    private int updateAt(long t) {
+        int kept = Math.min(updates, HISTORY);
+        for (int i = 1; i <= kept; i++) {
+            int slot = (updates - i) % HISTORY;
+            if (sampleMicros[slot] <= t) return slot;
+        }
+        return (updates - kept) % HISTORY;
+    }
+
+    public int getDx() {
+        return dx;
+    }
+
+    public int getDy() {
+        return dy;
+    }
+}
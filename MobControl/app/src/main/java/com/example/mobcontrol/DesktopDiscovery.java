@@ -0,0 +1,263 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the desktop for a pairing code on the local network.
+ *
+ * The discover request goes out on every active IPv4 interface at once: to the interface's
+ * directed broadcast address (a 255.255.255.255 broadcast only leaves through the default
+ * route) and to MULTICAST_GROUP, plus the limited broadcast and any extra targets (the
+ * emulator host). One non-blocking channel per interface, all on one Selector, so the
+ * first valid reply from any of them ends the search. Requests are repeated on a short
+ * schedule in case the first ones are lost.
+ *
+ * With interface probes off it races a list of unicast candidates instead (the addresses
+ * from a QR code): the first to answer is reachable and has the lowest RTT.
+ *
+ * Blocking; call off the main thread.
+ */
+public class DesktopDiscovery {
+
+    // The desktop answers discover requests sent to this group as well as broadcasts
+    public static final String MULTICAST_GROUP = "239.255.77.77";
+
+    // Send times of the requests, from the start of the search
+    private static final long[] SEND_AT_MILLIS = {0, 150, 500, 1200};
+    private static final int MAX_REPLY_SIZE = 1024;
+
+    public static class Result {
+        public final String host;         // null if nothing answered
+        public final long elapsedMicros;  // time to the valid reply (or the whole search)
+        public final String via;          // interface the reply came in on
+        public final int targets;         // addresses each round was sent to
+        public final int replies;         // datagrams received, valid or not
+
+        Result(String host, long elapsedMicros, String via, int targets, int replies) {
+            this.host = host;
+            this.elapsedMicros = elapsedMicros;
+            this.via = via;
+            this.targets = targets;
+            this.replies = replies;
+        }
+
+        public boolean isFound() {
+            return host != null;
+        }
+    }
+
+    // One channel and where it sends to
+    private static class Probe {
+        final String name;
+        final DatagramChannel channel;
+        final List<SocketAddress> targets = new ArrayList<>();
+
+        Probe(String name, DatagramChannel channel) {
+            this.name = name;
+            this.channel = channel;
+        }
+    }
+
+    private final int port;
+    private final List<InetAddress> extraTargets = new ArrayList<>();
+    private final Gson gson = new Gson();
+    private boolean interfaceProbes = true;
+
+    public DesktopDiscovery(int port) {
+        this.port = port;
+    }
+
+    // Also send to this address (unicast, e.g. the emulator host 10.0.2.2)
+    public void addTarget(InetAddress address) {
+        extraTargets.add(address);
+    }
+
+    // Only the extra targets, no broadcast or multicast (racing known candidate addresses)
+    public void setInterfaceProbes(boolean enabled) {
+        interfaceProbes = enabled;
+    }
+
+    public Result discover(String code, long timeoutMillis) throws IOException {
+        byte[] request = discoverRequest(code).getBytes(StandardCharsets.UTF_8);
+        List<Probe> probes = openProbes();
+        int targets = 0;
+        for (Probe probe : probes) targets += probe.targets.size();
+
+        long start = System.nanoTime();
+        int replies = 0;
+        try (Selector selector = Selector.open()) {
+            for (Probe probe : probes) {
+                probe.channel.configureBlocking(false);
+                probe.channel.register(selector, SelectionKey.OP_READ, probe);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_REPLY_SIZE);
+            int sends = 0;
+            while (true) {
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+                while (sends < SEND_AT_MILLIS.length && SEND_AT_MILLIS[sends] <= elapsedMillis) {
+                    sendAll(probes, request);
+                    sends++;
+                }
+                long wakeAt = sends < SEND_AT_MILLIS.length
+                        ? Math.min(timeoutMillis, SEND_AT_MILLIS[sends]) : timeoutMillis;
+                if (elapsedMillis >= timeoutMillis) break;
+
+                if (selector.select(Math.max(1, wakeAt - elapsedMillis)) == 0) continue;
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Probe probe = (Probe) key.attachment();
+
+                    SocketAddress from;
+                    while ((from = receive(probe.channel, buffer)) != null) {
+                        replies++;
+                        buffer.flip();
+                        String reply = StandardCharsets.UTF_8.decode(buffer).toString();
+                        if (isDesktopReply(reply) && from instanceof InetSocketAddress) {
+                            String host = ((InetSocketAddress) from).getAddress().getHostAddress();
+                            return new Result(host, (System.nanoTime() - start) / 1000, probe.name,
+                                    targets, replies);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (Probe probe : probes) {
+                try {
+                    probe.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return new Result(null, (System.nanoTime() - start) / 1000, null, targets, replies);
+    }
+
+    String discoverRequest(String code) {
+        Map<String, String> msg = new HashMap<>();
+        msg.put("action", "discover");
+        msg.put("code", code);
+        return gson.toJson(msg);
+    }
+
+    @SuppressWarnings("unchecked")
+    boolean isDesktopReply(String reply) {
+        try {
+            Map<String, Object> json = gson.fromJson(reply, Map.class);
+            return json != null
+                    && ("discovered".equals(json.get("action")) || "found".equals(json.get("status")));
+        } catch (JsonSyntaxException e) {
+            return false;
+        }
+    }
+
+    private List<Probe> openProbes() throws IOException {
+        List<Probe> probes = new ArrayList<>();
+        if (interfaceProbes) {
+            for (NetworkInterface ni : interfaces()) {
+                for (InterfaceAddress address : ni.getInterfaceAddresses()) {
+                    if (!(address.getAddress() instanceof Inet4Address)) continue;
+                    Probe probe = openInterfaceProbe(ni, address);
+                    if (probe != null) probes.add(probe);
+                }
+            }
+        }
+
+        // Default route: limited broadcast and the extra targets
+        DatagramChannel channel = DatagramChannel.open();
+        Probe probe = new Probe("default", channel);
+        if (interfaceProbes) {
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            probe.targets.add(new InetSocketAddress("255.255.255.255", port));
+        }
+        for (InetAddress target : extraTargets) {
+            probe.targets.add(new InetSocketAddress(target, port));
+        }
+        probes.add(probe);
+        return probes;
+    }
+
+    private static List<NetworkInterface> interfaces() {
+        List<NetworkInterface> result = new ArrayList<>();
+        try {
+            for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (ni.isUp() && !ni.isLoopback()) result.add(ni);
+            }
+        } catch (IOException | NullPointerException e) {
+            // No interfaces to enumerate: the default probe still goes out
+        }
+        return result;
+    }
+
+    // A channel bound to the interface's address, so its packets leave through that interface
+    private Probe openInterfaceProbe(NetworkInterface ni, InterfaceAddress address) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            channel.bind(new InetSocketAddress(address.getAddress(), 0));
+            Probe probe = new Probe(ni.getName(), channel);
+            if (address.getBroadcast() != null) {
+                probe.targets.add(new InetSocketAddress(address.getBroadcast(), port));
+            }
+            if (ni.supportsMulticast()) {
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, ni);
+                probe.targets.add(new InetSocketAddress(MULTICAST_GROUP, port));
+            }
+            return probe;
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    private static void sendAll(List<Probe> probes, byte[] request) {
+        for (Probe probe : probes) {
+            for (SocketAddress target : probe.targets) {
+                try {
+                    probe.channel.send(ByteBuffer.wrap(request), target);
+                } catch (IOException e) {
+                    // Unreachable from this interface; the others still go out
+                }
+            }
+        }
+    }
+
+    private static SocketAddress receive(DatagramChannel channel, ByteBuffer buffer) {
+        buffer.clear();
+        try {
+            return channel.receive(buffer);
+        } catch (IOException e) {
+            // ICMP port unreachable from a unicast target
+            return null;
+        }
+    }
+}
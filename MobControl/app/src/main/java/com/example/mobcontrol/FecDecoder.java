@@ -0,0 +1,128 @@
+package com.example.mobcontrol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Receiving side of FecEncoder (used by tests and as a reference for the desktop).
+ *
+ * Keeps the recent sequenced frames; when a parity packet arrives and exactly one frame of
+ * its group is missing, that frame is rebuilt from the parity and the others. Frames are
+ * handed on as they arrive (no reordering delay); a rebuilt frame is handed on when its
+ * parity arrives, and a late original of an already delivered frame is dropped.
+ */
+public class FecDecoder {
+
+    private static final int WINDOW = 256;  // frames kept, by sequence number
+
+    private final byte[][] frames = new byte[WINDOW][];
+    private final int[] seqs = new int[WINDOW];
+
+    // Metrics
+    private long recovered;
+    private long unrecoverable;
+    private long duplicates;
+
+    /**
+     * Handles one datagram.
+     * @return frames to process, in order (empty for parity packets that rebuilt nothing or duplicates)
+     */
+    public List<byte[]> receive(byte[] data, int length) {
+        if (length > 0 && data[0] == InputProtocol.FEC_MAGIC) {
+            byte[] rebuilt = onParity(data, length);
+            if (rebuilt == null) return Collections.emptyList();
+            return Collections.singletonList(rebuilt);
+        }
+
+        byte[] frame = copy(data, 0, length);
+        if (!InputCodec.isBinaryFrame(data, 0, length) || !InputCodec.isSequenced(data, 0)) {
+            return Collections.singletonList(frame);
+        }
+
+        int seq = InputCodec.sequence(data, 0);
+        if (has(seq)) {
+            duplicates++;
+            return Collections.emptyList();
+        }
+        store(seq, frame);
+        List<byte[]> out = new ArrayList<>(1);
+        out.add(frame);
+        return out;
+    }
+
+    private byte[] onParity(byte[] data, int length) {
+        if (length < InputProtocol.FEC_HEADER_SIZE) return null;
+
+        int count = data[2] & 0xFF;
+        int first = InputCodec.readInt(data, 3);
+        int lengthXor = ((data[7] & 0xFF) << 8) | (data[8] & 0xFF);
+
+        int missing = 0;
+        int missingSeq = 0;
+        for (int i = 0; i < count; i++) {
+            if (!has(first + i)) {
+                missing++;
+                missingSeq = first + i;
+            }
+        }
+        if (missing == 0) return null;
+        if (missing > 1) {
+            unrecoverable++;
+            return null;
+        }
+
+        // XOR of everything else leaves the missing frame
+        int payloadLength = length - InputProtocol.FEC_HEADER_SIZE;
+        byte[] payload = copy(data, InputProtocol.FEC_HEADER_SIZE, payloadLength);
+        int frameLength = lengthXor;
+        for (int i = 0; i < count; i++) {
+            int seq = first + i;
+            if (seq == missingSeq) continue;
+
+            byte[] other = frames[seq & (WINDOW - 1)];
+            frameLength ^= other.length;
+            for (int b = 0; b < other.length && b < payloadLength; b++) {
+                payload[b] ^= other[b];
+            }
+        }
+        if (frameLength <= 0 || frameLength > payloadLength) {
+            unrecoverable++;
+            return null;
+        }
+
+        byte[] frame = copy(payload, 0, frameLength);
+        store(missingSeq, frame);
+        recovered++;
+        return frame;
+    }
+
+    private boolean has(int seq) {
+        int slot = seq & (WINDOW - 1);
+        return frames[slot] != null && seqs[slot] == seq;
+    }
+
+    private void store(int seq, byte[] frame) {
+        int slot = seq & (WINDOW - 1);
+        frames[slot] = frame;
+        seqs[slot] = seq;
+    }
+
+    private static byte[] copy(byte[] data, int offset, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(data, offset, out, 0, length);
+        return out;
+    }
+
+    public long getRecovered() {
+        return recovered;
+    }
+
+    public long getUnrecoverable() {
+        return unrecoverable;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.mobcontrol;
+
+import java.util.Arrays;
+
+/**
+ * XOR parity over groups of consecutive sequenced binary frames (InputProtocol FEC_MAGIC).
+ *
+ * After every "group size" frames one parity packet is produced, so the receiver can rebuild
+ * one lost frame per group without a round trip, at the cost of 1 / group size extra
+ * datagrams. A group that stops filling (input went idle) is closed early with flush(), so
+ * the last frames of a burst are protected too.
+ *
+ * Not thread safe: used by the sender thread only.
+ */
+public class FecEncoder {
+
+    public static final int MAX_GROUP_SIZE = 16;
+
+    private final byte[] parity;
+    private int groupSize;       // 0 = off
+    private int count;           // frames in the current group
+    private int firstSeq;
+    private int lengthXor;
+    private int maxLength;
+    private int dirtyLength;     // payload bytes of the last parity packet, zeroed when the next group starts
+
+    // Metrics
+    private volatile long parityPackets;
+
+    public FecEncoder(int maxFrameSize) {
+        parity = new byte[InputProtocol.FEC_HEADER_SIZE + maxFrameSize];
+    }
+
+    // Frames per parity packet (0 = off); applies from the next group
+    public void setGroupSize(int frames) {
+        groupSize = Math.max(0, Math.min(MAX_GROUP_SIZE, frames));
+        if (groupSize == 0) {
+            reset();
+        }
+    }
+
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    public boolean isEnabled() {
+        return groupSize > 0;
+    }
+
+    /**
+     * Adds a frame that was just sent.
+     * @return length of the parity packet in parityBuffer() if this frame completed a group, else 0
+     */
+    public int add(byte[] frame, int length, int seq) {
+        if (groupSize == 0) return 0;
+
+        // Groups cover consecutive sequence numbers only
+        if (count > 0 && seq != firstSeq + count) {
+            reset();
+        }
+        if (count == 0) {
+            // The previous parity packet has been sent by now
+            clearPayload();
+            firstSeq = seq;
+        }
+
+        int offset = InputProtocol.FEC_HEADER_SIZE;
+        for (int i = 0; i < length; i++) {
+            parity[offset + i] ^= frame[i];
+        }
+        lengthXor ^= length;
+        maxLength = Math.max(maxLength, length);
+        count++;
+
+        return count >= groupSize ? finishGroup() : 0;
+    }
+
+    public boolean hasPending() {
+        return count > 0;
+    }
+
+    // Closes a partial group; returns the parity length, 0 if nothing was pending
+    public int flush() {
+        return count > 0 ? finishGroup() : 0;
+    }
+
+    public byte[] parityBuffer() {
+        return parity;
+    }
+
+    private int finishGroup() {
+        parity[0] = InputProtocol.FEC_MAGIC;
+        parity[1] = (byte) InputProtocol.VERSION;
+        parity[2] = (byte) count;
+        parity[3] = (byte) (firstSeq >> 24);
+        parity[4] = (byte) (firstSeq >> 16);
+        parity[5] = (byte) (firstSeq >> 8);
+        parity[6] = (byte) firstSeq;
+        parity[7] = (byte) (lengthXor >> 8);
+        parity[8] = (byte) lengthXor;
+
+        int length = InputProtocol.FEC_HEADER_SIZE + maxLength;
+        parityPackets++;
+        count = 0;
+        dirtyLength = maxLength;
+        lengthXor = 0;
+        maxLength = 0;
+        return length;
+    }
+
+    private void reset() {
+        dirtyLength = Math.max(dirtyLength, maxLength);
+        count = 0;
+        lengthXor = 0;
+        maxLength = 0;
+        clearPayload();
+    }
+
+    private void clearPayload() {
+        Arrays.fill(parity, InputProtocol.FEC_HEADER_SIZE, InputProtocol.FEC_HEADER_SIZE + dirtyLength, (byte) 0);
+        dirtyLength = 0;
+    }
+
+    public long getParityPackets() {
+        return parityPackets;
+    }
+
+    /**
+     * Group size for a measured loss rate: no parity on a clean link, smaller groups
+     * (more parity) as loss rises.
+     */
+    public static int groupSizeForLoss(double lossPercent) {
+        if (lossPercent < 1) return 0;
+        if (lossPercent < 5) return 8;
+        if (lossPercent < 15) return 4;
+        return 2;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.mobcontrol;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Authoritative controller state: every pressed key (by InputProtocol key ID),
+ * mouse buttons and the current analog axes.
+ *
+ * Written by the main thread, read by the sender thread when it builds a state report.
+ */
+public class GamepadState {
+
+    // Axes (joysticks in percent of full deflection, gyro in degrees)
+    public static final int AXIS_LEFT_X = 0;    // movement joystick
+    public static final int AXIS_LEFT_Y = 1;
+    public static final int AXIS_RIGHT_X = 2;   // mouse joystick
+    public static final int AXIS_RIGHT_Y = 3;
+    public static final int AXIS_ROLL = 4;      // gyro
+    public static final int AXIS_PITCH = 5;
+    public static final int AXIS_COUNT = 6;
+
+    private volatile long keys;          // bit n = key ID n
+    private volatile int mouseButtons;   // bit n = InputProtocol mouse button n
+    private final AtomicIntegerArray axes = new AtomicIntegerArray(AXIS_COUNT);  // AXIS_SCALE fixed point
+
+    private volatile int changeCount;
+
+    // ========== Writer ==========
+
+    public void setKey(int keyId, boolean pressed) {
+        if (keyId <= 0 || keyId >= 64) return;
+
+        long bit = 1L << keyId;
+        long next = pressed ? (keys | bit) : (keys & ~bit);
+        if (next != keys) {
+            keys = next;
+            changeCount++;
+        }
+    }
+
+    public void setMouseButton(int button, boolean pressed) {
+        int bit = 1 << button;
+        int next = pressed ? (mouseButtons | bit) : (mouseButtons & ~bit);
+        if (next != mouseButtons) {
+            mouseButtons = next;
+            changeCount++;
+        }
+    }
+
+    public void setAxis(int axis, float value) {
+        int fixed = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, InputCodec.toFixed(value)));
+        if (axes.getAndSet(axis, fixed) != fixed) {
+            changeCount++;
+        }
+    }
+
+    // Releases everything (e.g. when the controller screen closes)
+    public void clear() {
+        keys = 0;
+        mouseButtons = 0;
+        for (int i = 0; i < AXIS_COUNT; i++) {
+            axes.set(i, 0);
+        }
+        changeCount++;
+    }
+
+    // ========== Reader ==========
+
+    public long getKeys() {
+        return keys;
+    }
+
+    public boolean isKeyPressed(int keyId) {
+        return keyId > 0 && keyId < 64 && (keys & (1L << keyId)) != 0;
+    }
+
+    public int getMouseButtons() {
+        return mouseButtons;
+    }
+
+    public int getAxisFixed(int axis) {
+        return axes.get(axis);
+    }
+
+    public float getAxis(int axis) {
+        return InputCodec.fromFixed(axes.get(axis));
+    }
+
+    // Increments on every change, so a reader can tell whether anything happened since it last looked
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    // ========== Decoder side ==========
+
+    void setKeys(long keys) {
+        this.keys = keys;
+    }
+
+    void setMouseButtons(int mouseButtons) {
+        this.mouseButtons = mouseButtons;
+    }
+
+    void setAxisFixed(int axis, int value) {
+        axes.set(axis, value);
+    }
+}
@@ -0,0 +1,512 @@
+package com.example.mobcontrol;
+
+/**
+ * Encodes input events into a reused byte buffer using the InputProtocol frame format,
+ * and decodes frames back into events (used by tests and as a reference for the desktop).
+ *
+ * Not thread safe: one codec per sender thread.
+ */
+public class InputCodec {
+
+    public static final int MAX_FRAME_SIZE = 512;
+    public static final int STATE_REPORT_SIZE = 15 + 2 * GamepadState.AXIS_COUNT;
+    public static final int AXIS_EVENT_SIZE = 4 + 5 * InputProtocol.MAX_STREAM_AXES;  // varints take up to 5 bytes
+    public static final int MAX_EVENT_SIZE = Math.max(STATE_REPORT_SIZE, AXIS_EVENT_SIZE);   // largest event
+    public static final int MAX_EVENTS = 255;     // count is one byte
+    public static final int MAX_KEY_HISTORY_SIZE = 5 + 3 * InputProtocol.MAX_KEY_HISTORY;  // timestamped entries
+
+    /**
+     * Callback for decoded events.
+     */
+    public interface Handler {
+        void onKey(int keyId, boolean pressed);
+        void onMouseMove(int dx, int dy);
+        void onMouseButton(int button, boolean pressed);
+        void onGyro(float x, float y, float z);
+        void onHeartbeat();
+        void onStateReport(int seq, GamepadState state);
+        // One entry of the key history trailer; "transition" numbers are consecutive per sender
+        void onKeyTransition(int transition, int keyId, boolean pressed);
+        // Capture time (desktop clock micros) of the event or key transition passed next
+        void onCaptureTime(long remoteMicros);
+        // Probe the desktop should echo; "timestamp" is the 32 bit field to send back
+        void onEchoRequest(long timestamp);
+        /**
+         * Axis stream event of frame "seq": values when "base" is 0 (quantized by "scale"),
+         * motion of this frame alone when it is AXIS_BASE_MOTION (scale 1), else deltas
+         * against the frame "base" sequence numbers earlier. Resolve with AxisStreamDecoder.
+         * "fields" has MAX_STREAM_AXES entries and is reused.
+         */
+        void onAxes(int seq, int stream, int base, int scale, int[] fields);
+        // Velocity mouse update: cumulative position (MOUSE_POSITION_SCALE units) and velocity (px/s)
+        void onMouseVelocity(int x, int y, int vx, int vy);
+    }
+
+    private final byte[] buffer;
+    private int position;
+    private int count;
+    private boolean timestamped;
+
+    public InputCodec() {
+        this(MAX_FRAME_SIZE);
+    }
+
+    public InputCodec(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    // ========== Encoding ==========
+
+    // Starts a new frame, discarding anything not yet sent
+    public void begin(int player) {
+        buffer[0] = InputProtocol.MAGIC;
+        buffer[1] = (byte) InputProtocol.VERSION;
+        buffer[2] = 0;
+        buffer[3] = 0;
+        buffer[4] = (byte) player;
+        position = InputProtocol.HEADER_SIZE;
+        count = 0;
+        timestamped = false;
+    }
+
+    // Starts a sequenced frame (FLAG_SEQUENCED)
+    public void begin(int player, int seq) {
+        begin(player);
+        buffer[2] |= InputProtocol.FLAG_SEQUENCED;
+        putInt(seq);
+    }
+
+    // Starts a sequenced frame with a frame time (FLAG_TIMESTAMPED), in desktop clock micros
+    public void begin(int player, int seq, long frameMicros) {
+        begin(player, seq);
+        buffer[2] |= InputProtocol.FLAG_TIMESTAMPED;
+        putLong(frameMicros);
+        timestamped = true;
+    }
+
+    // Player for all key events in this frame (0 = single player)
+    public void setPlayer(int player) {
+        buffer[4] = (byte) player;
+    }
+
+    // True if one more event of any type (and its capture age) fits, leaving room for a key history
+    public boolean hasRoom() {
+        return count < MAX_EVENTS - 1 && position + MAX_EVENT_SIZE + MAX_KEY_HISTORY_SIZE <= buffer.length;
+    }
+
+    public void putKey(int keyId, boolean pressed) {
+        putByte(pressed ? InputProtocol.OP_KEY_DOWN : InputProtocol.OP_KEY_UP);
+        putByte(keyId);
+        count++;
+    }
+
+    public void putMouseMove(int dx, int dy) {
+        putByte(InputProtocol.OP_MOUSE_MOVE);
+        putShort(dx);
+        putShort(dy);
+        count++;
+    }
+
+    public void putMouseVelocity(int x, int y, int vx, int vy) {
+        putByte(InputProtocol.OP_MOUSE_VELOCITY);
+        putInt(x);
+        putInt(y);
+        putShort(vx);
+        putShort(vy);
+        count++;
+    }
+
+    public void putMouseButton(int button, boolean pressed) {
+        putByte(pressed ? InputProtocol.OP_MOUSE_DOWN : InputProtocol.OP_MOUSE_UP);
+        putByte(button);
+        count++;
+    }
+
+    public void putGyro(float x, float y, float z) {
+        putByte(InputProtocol.OP_GYRO);
+        putShort(toFixed(x));
+        putShort(toFixed(y));
+        putShort(toFixed(z));
+        count++;
+    }
+
+    public void putHeartbeat() {
+        putByte(InputProtocol.OP_HEARTBEAT);
+        count++;
+    }
+
+    // Capture age of the next event, in CAPTURE_AGE_UNIT_MICROS before the frame time (timestamped frames)
+    public void putCaptureAge(int age) {
+        putByte(InputProtocol.OP_CAPTURE_AGE);
+        putUnsignedShort(age);
+        count++;
+    }
+
+    public void putEchoRequest(long timestamp) {
+        putByte(InputProtocol.OP_ECHO_REQUEST);
+        putInt((int) timestamp);
+        count++;
+    }
+
+    // Axis stream values (OP_AXIS_KEY); axes whose bit is clear in "mask" are 0
+    public void putAxisKey(int stream, int mask, int scale, int[] values) {
+        putByte(InputProtocol.OP_AXIS_KEY);
+        putByte(stream << 4 | mask);
+        putUnsignedShort(scale);
+        putAxisFields(mask, values);
+        count++;
+    }
+
+    // Axis stream deltas (OP_AXIS_DELTA) against the frame "base" (1..255) sequence numbers back
+    public void putAxisDelta(int stream, int mask, int base, int[] deltas) {
+        putByte(InputProtocol.OP_AXIS_DELTA);
+        putByte(stream << 4 | mask);
+        putByte(base);
+        putAxisFields(mask, deltas);
+        count++;
+    }
+
+    // Relative stream motion (OP_AXIS_MOTION), whole units; stands alone, no base frame
+    public void putAxisMotion(int stream, int mask, int[] motion) {
+        putByte(InputProtocol.OP_AXIS_MOTION);
+        putByte(stream << 4 | mask);
+        putAxisFields(mask, motion);
+        count++;
+    }
+
+    private void putAxisFields(int mask, int[] fields) {
+        for (int i = 0; i < InputProtocol.MAX_STREAM_AXES; i++) {
+            if ((mask & (1 << i)) != 0) {
+                putVarint(zigzag(fields[i]));
+            }
+        }
+    }
+
+    public void putStateReport(int seq, GamepadState state) {
+        putByte(InputProtocol.OP_STATE_REPORT);
+        putInt(seq);
+        putLong(state.getKeys());
+        putByte(state.getMouseButtons());
+        putByte(GamepadState.AXIS_COUNT);
+        for (int i = 0; i < GamepadState.AXIS_COUNT; i++) {
+            putShort(state.getAxisFixed(i));
+        }
+        count++;
+    }
+
+    /**
+     * Starts the key history trailer. Must come after all events; follow it with exactly
+     * "entries" calls to putHistoryEntry(), oldest first.
+     */
+    public void beginKeyHistory(int firstTransition, int entries) {
+        buffer[2] |= InputProtocol.FLAG_KEY_HISTORY;
+        putInt(firstTransition);
+        putByte(entries);
+    }
+
+    public void putHistoryEntry(int keyId, boolean pressed) {
+        putByte((pressed ? 0x80 : 0) | keyId);
+    }
+
+    // History entry of a timestamped frame
+    public void putHistoryEntry(int keyId, boolean pressed, int captureAge) {
+        putHistoryEntry(keyId, pressed);
+        putUnsignedShort(captureAge);
+    }
+
+    // Completes the frame and returns its length in bytes
+    public int finish() {
+        buffer[3] = (byte) count;
+        return position;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    // Bytes written so far
+    public int size() {
+        return position;
+    }
+
+    public int eventCount() {
+        return count;
+    }
+
+    public boolean isTimestamped() {
+        return timestamped;
+    }
+
+    private void putByte(int value) {
+        buffer[position++] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+        else if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putUnsignedShort(int value) {
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        buffer[position++] = (byte) (value >> 24);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >> 32));
+        putInt((int) value);
+    }
+
+    // Unsigned LEB128: 7 bits per byte, high bit set on all but the last
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    // Maps small negative and positive numbers to small unsigned ones: 0, -1, 1, -2 -> 0, 1, 2, 3
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Capture age field for an age in micros (negative ages, from a clock step, count as 0)
+    public static int toCaptureAge(long ageMicros) {
+        long age = ageMicros / InputProtocol.CAPTURE_AGE_UNIT_MICROS;
+        return (int) Math.max(0, Math.min(InputProtocol.MAX_CAPTURE_AGE, age));
+    }
+
+    static int toFixed(float value) {
+        return Math.round(value * InputProtocol.AXIS_SCALE);
+    }
+
+    // ========== Decoding ==========
+
+    public static boolean isBinaryFrame(byte[] data, int offset, int length) {
+        return length >= InputProtocol.HEADER_SIZE && data[offset] == InputProtocol.MAGIC;
+    }
+
+    // Player number of a frame (0 = single player)
+    public static int player(byte[] data, int offset) {
+        return data[offset + 4] & 0xFF;
+    }
+
+    public static boolean isSequenced(byte[] data, int offset) {
+        return (data[offset + 2] & InputProtocol.FLAG_SEQUENCED) != 0;
+    }
+
+    // Datagram sequence number of a sequenced frame
+    public static int sequence(byte[] data, int offset) {
+        return readInt(data, offset + InputProtocol.HEADER_SIZE);
+    }
+
+    /**
+     * Decodes one frame and passes each event to the handler.
+     * @return number of events decoded
+     * @throws IllegalArgumentException if the frame is malformed or from an unsupported version
+     */
+    public static int decode(byte[] data, int offset, int length, Handler handler) {
+        if (!isBinaryFrame(data, offset, length)) {
+            throw new IllegalArgumentException("Not a binary input frame");
+        }
+        if ((data[offset + 1] & 0xFF) != InputProtocol.VERSION) {
+            throw new IllegalArgumentException("Unsupported version " + (data[offset + 1] & 0xFF));
+        }
+
+        int flags = data[offset + 2] & 0xFF;
+        int events = data[offset + 3] & 0xFF;
+        int end = offset + length;
+        int p = offset + InputProtocol.HEADER_SIZE;
+
+        int seq = 0;
+        if ((flags & InputProtocol.FLAG_SEQUENCED) != 0) {
+            require(p, InputProtocol.SEQUENCE_SIZE, end);
+            seq = readInt(data, p);
+            p += InputProtocol.SEQUENCE_SIZE;
+        }
+        int[] axisFields = null;
+
+        boolean timestamped = (flags & InputProtocol.FLAG_TIMESTAMPED) != 0;
+        long frameMicros = 0;
+        if (timestamped) {
+            require(p, InputProtocol.TIMESTAMP_SIZE, end);
+            frameMicros = readLong(data, p);
+            p += InputProtocol.TIMESTAMP_SIZE;
+        }
+
+        for (int i = 0; i < events; i++) {
+            if (p >= end) throw new IllegalArgumentException("Truncated frame");
+            int op = data[p++] & 0xFF;
+
+            switch (op) {
+                case InputProtocol.OP_KEY_DOWN:
+                case InputProtocol.OP_KEY_UP:
+                    require(p, 1, end);
+                    handler.onKey(data[p] & 0xFF, op == InputProtocol.OP_KEY_DOWN);
+                    p += 1;
+                    break;
+
+                case InputProtocol.OP_MOUSE_MOVE:
+                    require(p, 4, end);
+                    handler.onMouseMove(readShort(data, p), readShort(data, p + 2));
+                    p += 4;
+                    break;
+
+                case InputProtocol.OP_MOUSE_VELOCITY:
+                    require(p, 12, end);
+                    handler.onMouseVelocity(readInt(data, p), readInt(data, p + 4),
+                            readShort(data, p + 8), readShort(data, p + 10));
+                    p += 12;
+                    break;
+
+                case InputProtocol.OP_MOUSE_DOWN:
+                case InputProtocol.OP_MOUSE_UP:
+                    require(p, 1, end);
+                    handler.onMouseButton(data[p] & 0xFF, op == InputProtocol.OP_MOUSE_DOWN);
+                    p += 1;
+                    break;
+
+                case InputProtocol.OP_GYRO:
+                    require(p, 6, end);
+                    handler.onGyro(fromFixed(readShort(data, p)),
+                            fromFixed(readShort(data, p + 2)),
+                            fromFixed(readShort(data, p + 4)));
+                    p += 6;
+                    break;
+
+                case InputProtocol.OP_HEARTBEAT:
+                    handler.onHeartbeat();
+                    break;
+
+                case InputProtocol.OP_CAPTURE_AGE:
+                    require(p, 2, end);
+                    handler.onCaptureTime(captureTime(frameMicros, readUnsignedShort(data, p)));
+                    p += 2;
+                    break;
+
+                case InputProtocol.OP_ECHO_REQUEST:
+                    require(p, 4, end);
+                    handler.onEchoRequest(readInt(data, p) & 0xFFFFFFFFL);
+                    p += 4;
+                    break;
+
+                case InputProtocol.OP_AXIS_KEY:
+                case InputProtocol.OP_AXIS_DELTA:
+                case InputProtocol.OP_AXIS_MOTION: {
+                    boolean key = op == InputProtocol.OP_AXIS_KEY;
+                    boolean motion = op == InputProtocol.OP_AXIS_MOTION;
+                    require(p, key ? 3 : motion ? 1 : 2, end);
+                    int stream = (data[p] & 0xFF) >> 4;
+                    int mask = data[p] & 0x0F;
+                    int scale = key ? readUnsignedShort(data, p + 1) : motion ? 1 : 0;
+                    int base = key ? 0 : motion ? InputProtocol.AXIS_BASE_MOTION : data[p + 1] & 0xFF;
+                    p += key ? 3 : motion ? 1 : 2;
+
+                    if (axisFields == null) axisFields = new int[InputProtocol.MAX_STREAM_AXES];
+                    for (int a = 0; a < InputProtocol.MAX_STREAM_AXES; a++) {
+                        if ((mask & (1 << a)) == 0) {
+                            axisFields[a] = 0;
+                            continue;
+                        }
+                        int value = 0;
+                        for (int shift = 0; ; shift += 7) {
+                            if (p >= end) throw new IllegalArgumentException("Truncated frame");
+                            if (shift > 28) throw new IllegalArgumentException("Varint too long");
+                            int b = data[p++];
+                            value |= (b & 0x7F) << shift;
+                            if ((b & 0x80) == 0) break;
+                        }
+                        axisFields[a] = unzigzag(value);
+                    }
+                    if (!key && !motion && base == 0) throw new IllegalArgumentException("Axis delta without base");
+                    handler.onAxes(seq, stream, base, scale, axisFields);
+                    break;
+                }
+
+                case InputProtocol.OP_STATE_REPORT: {
+                    require(p, 14, end);
+                    int reportSeq = readInt(data, p);
+                    GamepadState state = new GamepadState();
+                    state.setKeys(readLong(data, p + 4));
+                    state.setMouseButtons(data[p + 12] & 0xFF);
+                    int axisCount = data[p + 13] & 0xFF;
+                    p += 14;
+
+                    require(p, 2 * axisCount, end);
+                    for (int a = 0; a < axisCount; a++) {
+                        // Axes this build doesn't know about are skipped
+                        if (a < GamepadState.AXIS_COUNT) {
+                            state.setAxisFixed(a, readShort(data, p));
+                        }
+                        p += 2;
+                    }
+                    handler.onStateReport(reportSeq, state);
+                    break;
+                }
+
+                default:
+                    throw new IllegalArgumentException("Unknown opcode " + op);
+            }
+        }
+
+        if ((flags & InputProtocol.FLAG_KEY_HISTORY) != 0) {
+            require(p, 5, end);
+            int first = readInt(data, p);
+            int entries = data[p + 4] & 0xFF;
+            p += 5;
+
+            int entrySize = timestamped ? 3 : 1;
+            require(p, entries * entrySize, end);
+            for (int i = 0; i < entries; i++, p += entrySize) {
+                int entry = data[p] & 0xFF;
+                if (timestamped) {
+                    handler.onCaptureTime(captureTime(frameMicros, readUnsignedShort(data, p + 1)));
+                }
+                handler.onKeyTransition(first + i, entry & 0x7F, (entry & 0x80) != 0);
+            }
+        }
+        return events;
+    }
+
+    private static void require(int position, int bytes, int end) {
+        if (position + bytes > end) throw new IllegalArgumentException("Truncated frame");
+    }
+
+    static int readShort(byte[] data, int p) {
+        return (short) (((data[p] & 0xFF) << 8) | (data[p + 1] & 0xFF));
+    }
+
+    static int readUnsignedShort(byte[] data, int p) {
+        return ((data[p] & 0xFF) << 8) | (data[p + 1] & 0xFF);
+    }
+
+    static long readLong(byte[] data, int p) {
+        return ((long) readInt(data, p) << 32) | (readInt(data, p + 4) & 0xFFFFFFFFL);
+    }
+
+    private static long captureTime(long frameMicros, int age) {
+        return frameMicros - (long) age * InputProtocol.CAPTURE_AGE_UNIT_MICROS;
+    }
+
+    static int readInt(byte[] data, int p) {
+        return ((data[p] & 0xFF) << 24) | ((data[p + 1] & 0xFF) << 16)
+                | ((data[p + 2] & 0xFF) << 8) | (data[p + 3] & 0xFF);
+    }
+
+    static float fromFixed(int value) {
+        return value / (float) InputProtocol.AXIS_SCALE;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.mobcontrol;
+
+/**
+ * One preallocated slot of InputEventRing.
+ * Slots are overwritten in place, so the producer never allocates per event.
+ */
+public class InputEvent {
+
+    public static final int KEY = 1;
+    public static final int MOUSE_MOVE = 2;
+    public static final int MOUSE_BUTTON = 3;
+    public static final int GYRO = 4;
+    public static final int HEARTBEAT = 5;
+    public static final int STATE_REPORT = 6;  // full GamepadState snapshot, built by the sender
+    public static final int ECHO_REQUEST = 7;  // LinkMonitor probe, built by the sender
+    public static final int MOUSE_VELOCITY = 8;
+
+    public int type;
+
+    // KEY
+    public String key;          // normalized key name (used by the JSON fallback)
+    public int keyId;           // InputProtocol key ID, 0 if the key has none
+    public int controlId;       // ControlMap ID (raw key IDs are valid control IDs), 0 if none
+    public int player;          // 0 = single player (KEY / STATE_REPORT)
+
+    // KEY / MOUSE_BUTTON
+    public boolean pressed;
+    public int button;
+
+    // MOUSE_MOVE
+    public int dx;
+    public int dy;
+
+    // MOUSE_VELOCITY: cumulative position (InputProtocol.MOUSE_POSITION_SCALE units), velocity in px/s
+    public int positionX;
+    public int positionY;
+    public int velocityX;
+    public int velocityY;
+
+    // GYRO
+    public float x;
+    public float y;
+    public float z;
+
+    // ECHO_REQUEST
+    public long echoTimestamp;
+
+    // System.nanoTime() when the event was published
+    public long enqueueNanos;
+
+    // System.nanoTime() clock time the input was captured (MotionEvent / SensorEvent time), 0 if unknown
+    public long captureNanos;
+}
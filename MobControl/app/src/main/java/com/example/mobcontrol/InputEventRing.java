@@ -0,0 +1,76 @@
+package com.example.mobcontrol;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer / single-consumer ring of preallocated InputEvent slots.
+ *
+ * Producer: claim() a slot, fill it, publish().
+ * Consumer: poll() the oldest slot, read it, release().
+ */
+public class InputEventRing {
+
+    private final InputEvent[] slots;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();  // next slot to read (written by consumer)
+    private final AtomicLong tail = new AtomicLong();  // next slot to write (written by producer)
+
+    private long cachedHead;  // producer's last view of head, avoids reading the shared counter every time
+
+    public InputEventRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        slots = new InputEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new InputEvent();
+        }
+        mask = capacity - 1;
+    }
+
+    // ========== Producer ==========
+
+    // Returns the next free slot, or null if the ring is full
+    public InputEvent claim() {
+        long t = tail.get();
+        if (t - cachedHead >= slots.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= slots.length) {
+                return null;
+            }
+        }
+        return slots[(int) t & mask];
+    }
+
+    // Makes the claimed slot visible to the consumer
+    public void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    // ========== Consumer ==========
+
+    // Returns the oldest published slot, or null if the ring is empty
+    public InputEvent poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        return slots[(int) h & mask];
+    }
+
+    // Frees the slot returned by poll()
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    // ========== Either side ==========
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
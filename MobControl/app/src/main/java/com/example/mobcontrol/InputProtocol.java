@@ -0,0 +1,154 @@
+package com.example.mobcontrol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary input wire format shared by the controller and the desktop.
+ *
+ * Frame layout (big endian):
+ *   [0] MAGIC  [1] VERSION  [2] flags  [3] event count  [4] player (0 = single player)
+ * followed by "count" events, each starting with a one-byte opcode.
+ *
+ * MAGIC is never '{', so the desktop can tell a binary frame from a JSON message by its first byte.
+ *
+ * Optional parts, announced by header flags:
+ *   FLAG_SEQUENCED    [seq u32] right after the header, incremented per datagram
+ *   FLAG_KEY_HISTORY  after the events: [first transition u32][count u8][count x (pressed << 7 | keyId)]
+ *                     the most recent key transitions, numbered consecutively from "first".
+ *                     The receiver applies the ones it hasn't seen, so a lost press/release is
+ *                     rebuilt from a later datagram without a round trip.
+ *   FLAG_TIMESTAMPED  [frame time s64] after the sequence number: desktop clock micros (ClockSync)
+ *                     when the frame was started. An OP_CAPTURE_AGE before an event gives how long
+ *                     before the frame time that event was captured, and key history entries
+ *                     become [pressed << 7 | keyId][age u16]. Ages are in CAPTURE_AGE_UNIT_MICROS,
+ *                     saturating at 0xFFFF.
+ *
+ * Axis streams (codec CODEC_BINARY_AXIS only, see AxisStreamEncoder): mouse and gyro values
+ * quantized to integers (value * scale) and sent as zigzag varints. OP_AXIS_KEY carries the
+ * values themselves, OP_AXIS_DELTA the change since the stream's values in the frame "base"
+ * sequence numbers earlier; axes left out of the mask are 0 (key) or unchanged (delta).
+ * A receiver that doesn't hold that earlier frame ignores deltas until the next OP_AXIS_KEY.
+ * Relative streams (mouse dx/dy) use OP_AXIS_MOTION instead: the frame's motion itself, in
+ * whole units, with no base, so a lost frame costs only its own motion.
+ *
+ * Parity packets (forward error correction, see FecEncoder) start with FEC_MAGIC instead:
+ *   [0] FEC_MAGIC  [1] VERSION  [2] frame count  [3..6] first seq u32  [7..8] XOR of frame lengths
+ *   followed by the XOR of the "count" sequenced frames first..first+count-1, zero padded to the
+ *   longest. A receiver missing exactly one of them rebuilds it by XOR-ing the others in.
+ */
+public final class InputProtocol {
+
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte FEC_MAGIC = (byte) 0xB8;
+    public static final int FEC_HEADER_SIZE = 9;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 5;
+
+    // Header flags
+    public static final int FLAG_SEQUENCED = 0x01;
+    public static final int FLAG_KEY_HISTORY = 0x02;
+    public static final int FLAG_TIMESTAMPED = 0x04;
+
+    public static final int SEQUENCE_SIZE = 4;
+    public static final int MAX_KEY_HISTORY = 16;
+    public static final int TIMESTAMP_SIZE = 8;
+    public static final int CAPTURE_AGE_UNIT_MICROS = 10;
+    public static final int MAX_CAPTURE_AGE = 0xFFFF;
+
+    // Codec names used during pairing
+    public static final String CODEC_BINARY = "binary1";
+    public static final String CODEC_BINARY_AXIS = "binary1-axis";  // binary1 plus the axis stream opcodes
+    public static final String CODEC_JSON = "json";
+
+    // Opcodes
+    public static final int OP_KEY_DOWN = 0x01;       // [keyId]
+    public static final int OP_KEY_UP = 0x02;         // [keyId]
+    public static final int OP_MOUSE_MOVE = 0x03;     // [dx s16][dy s16]
+    public static final int OP_MOUSE_DOWN = 0x04;     // [button]
+    public static final int OP_MOUSE_UP = 0x05;       // [button]
+    public static final int OP_GYRO = 0x06;           // [x s16][y s16][z s16], AXIS_SCALE fixed point
+    public static final int OP_HEARTBEAT = 0x07;      // no payload
+    public static final int OP_STATE_REPORT = 0x08;   // [seq s32][keys u64][mouse buttons u8][axis count u8][axes s16...]
+    public static final int OP_CAPTURE_AGE = 0x09;    // [age u16], applies to the next event (FLAG_TIMESTAMPED)
+    public static final int OP_ECHO_REQUEST = 0x0A;   // [timestamp u32], echoed back as {"action":"heartbeat_echo","ts":...}
+    public static final int OP_AXIS_KEY = 0x0B;       // [stream << 4 | axis mask][scale u16][value varint per mask bit]
+    public static final int OP_AXIS_DELTA = 0x0C;     // [stream << 4 | axis mask][base u8][delta varint per mask bit]
+    public static final int OP_MOUSE_VELOCITY = 0x0D; // [x s32][y s32][vx s16][vy s16], see MouseVelocityTracker
+    public static final int OP_AXIS_MOTION = 0x0E;    // [stream << 4 | axis mask][motion varint per mask bit]
+
+    // Axis streams: mouse [dx, dy] per frame in pixels, gyro [x, y, z]
+    public static final int AXIS_STREAM_MOUSE = 0;
+    public static final int AXIS_STREAM_GYRO = 1;
+    public static final int MAX_STREAM_AXES = 4;
+    public static final int AXIS_BASE_MOTION = -1;  // "base" of an OP_AXIS_MOTION event in InputCodec.Handler.onAxes()
+
+    // State report rates (Hz) offered in Options
+    public static final int[] STATE_REPORT_RATES = {0, 125, 250, 500};
+
+    // FEC group sizes offered in Options (0 = off, -1 = chosen from measured loss)
+    public static final int FEC_AUTO = -1;
+    public static final int[] FEC_GROUP_SIZES = {0, FEC_AUTO, 8, 4, 2};
+
+    // Mouse buttons
+    public static final int MOUSE_LEFT = 0;
+    public static final int MOUSE_RIGHT = 1;
+
+    // Velocity mouse: cumulative pointer position in 1/MOUSE_POSITION_SCALE pixels (wrapping), velocity in px/s
+    public static final int MOUSE_POSITION_SCALE = 8;
+
+    // Axis values are sent as value * AXIS_SCALE in a signed 16 bit field
+    public static final int AXIS_SCALE = 100;
+
+    // Key IDs (index = ID, 0 is reserved for "no key")
+    private static final String[] KEY_NAMES = buildKeyNames();
+    private static final Map<String, Integer> KEY_IDS = new HashMap<>();
+
+    static {
+        for (int i = 1; i < KEY_NAMES.length; i++) {
+            KEY_IDS.put(KEY_NAMES[i], i);
+        }
+    }
+
+    private InputProtocol() {}
+
+    private static String[] buildKeyNames() {
+        String[] names = new String[64];
+        int id = 1;
+        for (char c = 'a'; c <= 'z'; c++) names[id++] = String.valueOf(c);
+        for (char c = '0'; c <= '9'; c++) names[id++] = String.valueOf(c);
+
+        String[] special = {"space", "enter", "shift", "ctrl", "alt", "tab", "esc", "backspace",
+                "up", "down", "left", "right"};
+        for (String s : special) names[id++] = s;
+
+        for (int i = 1; i <= 12; i++) names[id++] = "f" + i;
+
+        names[id++] = "mouse1";
+        names[id++] = "mouse2";
+        names[id] = "mouse3";
+        return names;
+    }
+
+    // Returns the wire ID for a normalized key name, or 0 if the key has no binary ID
+    public static int keyId(String keyName) {
+        if (keyName == null) return 0;
+        Integer id = KEY_IDS.get(keyName);
+        return id != null ? id : 0;
+    }
+
+    // Returns the key name for a wire ID, or null if unknown
+    public static String keyName(int keyId) {
+        if (keyId <= 0 || keyId >= KEY_NAMES.length) return null;
+        return KEY_NAMES[keyId];
+    }
+
+    public static int keyCount() {
+        return KEY_NAMES.length;
+    }
+
+    // True if sequence number "seq" comes after "last" (32-bit wrap-around)
+    public static boolean isNewer(int seq, int last) {
+        return seq - last > 0;
+    }
+}
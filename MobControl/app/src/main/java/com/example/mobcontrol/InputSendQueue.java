@@ -0,0 +1,244 @@
+package com.example.mobcontrol;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outgoing input queue with priority classes.
+ *
+ *  - Discrete events (key / mouse button transitions, velocity mouse updates) keep their
+ *    order, are never dropped and are always drained before anything else.
+ *  - Mouse deltas are summed into one pending delta, which keeps the capture time of its
+ *    oldest sample.
+ *  - Gyro samples keep only the latest value (and its capture time).
+ *  - Heartbeats are a single pending flag; the sender decides whether to send or suppress it.
+ *
+ * One producer thread (main thread) and one consumer thread (InputSender).
+ */
+public class InputSendQueue {
+
+    private static final long PENDING = 1L << 63;
+
+    private final InputEventRing ring;
+
+    // Used only when the ring is full, so discrete events are never lost.
+    // Once it has entries, new discrete events go here too to keep the order.
+    private final ArrayDeque<InputEvent> overflow = new ArrayDeque<>();
+    private volatile int overflowSize;
+    private boolean claimedFromRing;  // producer only
+
+    private final AtomicLong pendingMouse = new AtomicLong();  // dx (high 32) | dy (low 32)
+    private final AtomicLong pendingGyro = new AtomicLong();   // PENDING | x,y,z as fixed point shorts
+    private final AtomicBoolean pendingHeartbeat = new AtomicBoolean();
+    private final AtomicLong mouseCaptureNanos = new AtomicLong();
+    private volatile long gyroCaptureNanos;
+
+    // Metrics
+    private final AtomicLong conflatedMouse = new AtomicLong();
+    private final AtomicLong conflatedAxis = new AtomicLong();
+    private final AtomicLong overflowEvents = new AtomicLong();
+    private volatile int maxBacklog;
+
+    public InputSendQueue(int capacity) {
+        ring = new InputEventRing(capacity);
+    }
+
+    // ========== Producer ==========
+
+    public void offerKey(String key, int keyId, int controlId, boolean pressed, int player, long captureNanos) {
+        InputEvent e = claim();
+        e.type = InputEvent.KEY;
+        e.key = key;
+        e.keyId = keyId;
+        e.controlId = controlId;
+        e.pressed = pressed;
+        e.player = player;
+        e.captureNanos = captureNanos;
+        publish(e);
+    }
+
+    public void offerMouseButton(int button, boolean pressed, long captureNanos) {
+        InputEvent e = claim();
+        e.type = InputEvent.MOUSE_BUTTON;
+        e.button = button;
+        e.pressed = pressed;
+        e.captureNanos = captureNanos;
+        publish(e);
+    }
+
+    // Velocity mouse update; these are rare (only on velocity changes), so they aren't conflated
+    public void offerMouseVelocity(int x, int y, int vx, int vy, long captureNanos) {
+        InputEvent e = claim();
+        e.type = InputEvent.MOUSE_VELOCITY;
+        e.positionX = x;
+        e.positionY = y;
+        e.velocityX = vx;
+        e.velocityY = vy;
+        e.captureNanos = captureNanos;
+        publish(e);
+    }
+
+    public void addMouseDelta(int dx, int dy, long captureNanos) {
+        if (dx == 0 && dy == 0) return;
+
+        // First sample of a new delta; if the sender takes the delta in between, the
+        // next delta may report this slightly older time
+        mouseCaptureNanos.compareAndSet(0, captureNanos);
+
+        long current, next;
+        do {
+            current = pendingMouse.get();
+            next = packMouse((int) (current >> 32) + dx, (int) current + dy);
+        } while (!pendingMouse.compareAndSet(current, next));
+
+        if (current != 0) {
+            conflatedMouse.incrementAndGet();
+        }
+        updateBacklog();
+    }
+
+    public void setGyro(float x, float y, float z, long captureNanos) {
+        gyroCaptureNanos = captureNanos;
+        long packed = PENDING
+                | ((long) (clampShort(InputCodec.toFixed(x)) & 0xFFFF) << 32)
+                | ((long) (clampShort(InputCodec.toFixed(y)) & 0xFFFF) << 16)
+                | (clampShort(InputCodec.toFixed(z)) & 0xFFFF);
+
+        if (pendingGyro.getAndSet(packed) != 0) {
+            conflatedAxis.incrementAndGet();
+        }
+        updateBacklog();
+    }
+
+    public void requestHeartbeat() {
+        pendingHeartbeat.set(true);
+    }
+
+    private InputEvent claim() {
+        InputEvent e = overflowSize == 0 ? ring.claim() : null;
+        claimedFromRing = e != null;
+        if (e == null) {
+            overflowEvents.incrementAndGet();
+            e = new InputEvent();
+        }
+        return e;
+    }
+
+    private void publish(InputEvent e) {
+        e.enqueueNanos = System.nanoTime();
+
+        if (claimedFromRing) {
+            ring.publish();
+        } else {
+            synchronized (overflow) {
+                overflow.addLast(e);
+                overflowSize = overflow.size();
+            }
+        }
+        updateBacklog();
+    }
+
+    private void updateBacklog() {
+        int backlog = backlog();
+        if (backlog > maxBacklog) {
+            maxBacklog = backlog;
+        }
+    }
+
+    // ========== Consumer ==========
+
+    /**
+     * Returns the oldest discrete event, or null if there is none.
+     * Must be followed by releaseDiscrete() once the event has been sent.
+     */
+    public InputEvent pollDiscrete() {
+        InputEvent e = ring.poll();
+        if (e != null) {
+            return e;
+        }
+        if (overflowSize > 0) {
+            synchronized (overflow) {
+                return overflow.peekFirst();
+            }
+        }
+        return null;
+    }
+
+    public void releaseDiscrete() {
+        if (ring.poll() != null) {
+            ring.release();
+            return;
+        }
+        synchronized (overflow) {
+            overflow.pollFirst();
+            overflowSize = overflow.size();
+        }
+    }
+
+    // Moves the summed mouse delta into "out" (type MOUSE_MOVE). Returns false if there is none.
+    public boolean takeMouse(InputEvent out) {
+        long packed = pendingMouse.getAndSet(0);
+        if (packed == 0) return false;
+
+        out.type = InputEvent.MOUSE_MOVE;
+        out.dx = (int) (packed >> 32);
+        out.dy = (int) packed;
+        out.captureNanos = mouseCaptureNanos.getAndSet(0);
+        return out.dx != 0 || out.dy != 0;
+    }
+
+    // Moves the latest gyro sample into "out" (type GYRO). Returns false if there is none.
+    public boolean takeGyro(InputEvent out) {
+        long packed = pendingGyro.getAndSet(0);
+        if (packed == 0) return false;
+
+        out.type = InputEvent.GYRO;
+        out.x = InputCodec.fromFixed((short) (packed >> 32));
+        out.y = InputCodec.fromFixed((short) (packed >> 16));
+        out.z = InputCodec.fromFixed((short) packed);
+        out.captureNanos = gyroCaptureNanos;
+        return true;
+    }
+
+    public boolean takeHeartbeat() {
+        return pendingHeartbeat.getAndSet(false);
+    }
+
+    public boolean isEmpty() {
+        return backlog() == 0 && !pendingHeartbeat.get();
+    }
+
+    // ========== Metrics ==========
+
+    // Discrete events waiting plus pending (conflated) analog values
+    public int backlog() {
+        return ring.size() + overflowSize
+                + (pendingMouse.get() != 0 ? 1 : 0)
+                + (pendingGyro.get() != 0 ? 1 : 0);
+    }
+
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public long getConflatedMouse() {
+        return conflatedMouse.get();
+    }
+
+    public long getConflatedAxis() {
+        return conflatedAxis.get();
+    }
+
+    public long getOverflowEvents() {
+        return overflowEvents.get();
+    }
+
+    private static long packMouse(int dx, int dy) {
+        return ((long) dx << 32) | (dy & 0xFFFFFFFFL);
+    }
+
+    private static int clampShort(int value) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+}
@@ -0,0 +1,891 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated sender thread for controller input.
+ *
+ * The main thread enqueues events into an InputSendQueue (no allocation, no locks), and a
+ * single high-priority thread drains it, encodes each event and sends it through the
+ * session's InputTransport. Key/button transitions always go out before pending mouse
+ * and gyro values, and heartbeats are suppressed while input is flowing.
+ *
+ * With the binary codec, everything produced within the batch window (or one loop
+ * iteration if the window is 0) is packed into a single multi-event datagram.
+ *
+ * Binary frames are sequenced, and key transitions travel in the key history trailer:
+ * each frame sent shortly after a transition repeats the last KEY_HISTORY transitions,
+ * so the desktop can rebuild a lost press or release from the next datagram. If no other
+ * traffic follows, the history is repeated on its own every HISTORY_REPEAT_NANOS.
+ *
+ * Once the desktop accepts the axis stream codec, gyro values are sent as varint deltas
+ * against the previous send (AxisStreamEncoder) and mouse motion as plain varints, and a
+ * gyro value that didn't change at the wire's resolution isn't sent at all.
+ *
+ * With FEC on (binary codec only), every group of sequenced frames is followed by an XOR
+ * parity packet (FecEncoder); a partial group is closed once the stream pauses for
+ * FEC_FLUSH_NANOS.
+ *
+ * State report mode (binary codec only): instead of individual key/button edges, the
+ * sender transmits the complete GamepadState at a fixed rate, plus immediately after
+ * every edge. A lost datagram is then repaired by the next report.
+ *
+ * After a reconnect, replayState() sends every key used this session with its current state,
+ * so the desktop converges on the phone's GamepadState whatever it missed.
+ *
+ * Once the desktop has acknowledged the ControlMap upload, key events carry the numeric
+ * control ID (key history entry, or {"action":"control"} on the JSON wire) instead of
+ * a key resolved on the phone.
+ *
+ * Once the ClockSync has an estimate, frames are timestamped in the desktop's clock and every
+ * event carries how long before the frame it was captured (a "t" field on the JSON wire), so
+ * the desktop can measure touch-to-inject latency per event.
+ *
+ * With a LinkMonitor set, the sender probes the link every PROBE_INTERVAL_NANOS: a
+ * standalone heartbeat only while input is idle; otherwise (binary wire, once the desktop
+ * has echoed a probe) the echo request rides in the next input frame.
+ *
+ * On the JSON wire, key and mouse button releases go through the ReliableChannel (if set),
+ * since a lost release leaves the key held on the desktop.
+ *
+ * All enqueue methods must be called from the same (main) thread.
+ */
+public class InputSender implements Runnable {
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;     // re-check running flag every 100ms
+    private static final long HEARTBEAT_QUIET_NANOS = 3_000_000_000L;  // no heartbeat if input was sent within this
+    public static final long DEFAULT_BATCH_WINDOW_NANOS = 1_000_000L;  // 1ms
+    private static final int KEY_HISTORY = 8;               // transitions repeated per frame
+    private static final int HISTORY_REPEATS = 3;           // frames after the newest transition that repeat it
+    private static final long HISTORY_REPEAT_NANOS = 5_000_000L;  // 5ms between standalone repeats
+    private static final long FEC_FLUSH_NANOS = 4_000_000L;       // parity for a partial group after 4ms without frames
+
+    private final InputSendQueue queue = new InputSendQueue(QUEUE_CAPACITY);
+    private final InputTransport transport;
+    private volatile ReliableChannel reliableChannel;
+    private volatile ControlMap controlMap = new ControlMap(null);
+    private volatile boolean controlIdsActive;
+    private PacketTemplates templates;  // sender thread only, JSON wire
+    private final byte[] templateScratch = new byte[256];  // template plus "t", JSON wire
+    private volatile ClockSync clockSync;
+    private volatile LinkMonitor linkMonitor;
+    private long nextProbeNanos;  // sender thread only
+    private final InputCodec codec = new InputCodec();
+    private final FecEncoder fec = new FecEncoder(InputCodec.MAX_FRAME_SIZE);  // sender thread only
+    private volatile int fecGroupSize;
+    private long lastFrameNanos;
+    private volatile boolean axisStreams;
+    private volatile boolean axisStreamsReset;  // new session: start the streams with full values
+    // Sender thread only
+    private final AxisStreamEncoder mouseStream = AxisStreamEncoder.motion(InputProtocol.AXIS_STREAM_MOUSE, 2);
+    private final AxisStreamEncoder gyroStream =
+            new AxisStreamEncoder(InputProtocol.AXIS_STREAM_GYRO, 3, InputProtocol.AXIS_SCALE);
+    private final float[] axisValues = new float[InputProtocol.MAX_STREAM_AXES];
+    private final Gson gson = new Gson();
+    private final String deviceName;
+
+    private final InputEvent scratch = new InputEvent();  // sender thread only, for conflated values
+
+    // Written by the main thread, snapshotted by the sender thread for state reports
+    private final GamepadState state = new GamepadState();
+    private volatile int statePlayer;
+    private long keysTouched;       // main thread: every key pressed this session, for replayState()
+    private int mouseButtonsTouched;
+
+    private volatile boolean binaryWire = false;
+    private volatile boolean running = false;
+    private volatile boolean sendFailing = false;
+    private Thread thread;
+
+    private long lastInputSentNanos;
+
+    // Batching (sender thread only)
+    private volatile long batchWindowNanos = DEFAULT_BATCH_WINDOW_NANOS;
+    private boolean frameOpen;
+    private long frameStartNanos;  // frame time of a timestamped frame
+    private int frameEvents;
+    private int framePlayer = -1;  // -1 until the frame has a key event
+
+    // Key history (sender thread only)
+    private final int[] history = new int[KEY_HISTORY];  // pressed << 7 | keyId, ring indexed by transition
+    private final long[] historyCapture = new long[KEY_HISTORY];
+    private int nextTransition;
+    private int historyCount;
+    private int historyPlayer;
+    private int historyRepeatsLeft;
+    private long nextRepeatNanos;
+    private int datagramSeq;
+    private volatile long historyRepeatFrames;
+
+    // State reports (sender thread only, except the interval)
+    private volatile long reportIntervalNanos;  // 0 = off
+    private long nextReportNanos;
+    private boolean stateDirty;
+    private int reportSeq;
+    private volatile long reportsSent;
+
+    // Metrics (sender side)
+    private volatile long eventsSent;
+    private volatile long datagramsSent;
+    private volatile long suppressedHeartbeats;
+    private volatile long lastEnqueueToWireMicros;
+    private volatile long avgEnqueueToWireMicros;   // EWMA, 1/8 gain
+    private volatile long maxEnqueueToWireMicros;
+
+    public InputSender(InputTransport transport, String deviceName) {
+        this.transport = transport;
+        this.deviceName = deviceName;
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, "InputSender");
+        thread.start();
+    }
+
+    // Stops the thread after it has sent everything already queued
+    public void stop() {
+        running = false;
+        wake();
+    }
+
+    public void setReliableChannel(ReliableChannel reliableChannel) {
+        this.reliableChannel = reliableChannel;
+    }
+
+    // Table used to resolve control IDs; control IDs go on the wire only after activateControlMap()
+    public void setControlMap(ControlMap map) {
+        controlIdsActive = false;
+        controlMap = map;
+    }
+
+    // Called once the desktop acknowledged the upload of "map"
+    public void activateControlMap(ControlMap map) {
+        if (map == controlMap) {
+            controlIdsActive = true;
+        }
+    }
+
+    public boolean isControlMapActive() {
+        return controlIdsActive;
+    }
+
+    // Capture times are sent once "clock" is synced
+    public void setClockSync(ClockSync clock) {
+        clockSync = clock;
+    }
+
+    // Echoed heartbeats replace the activity's periodic heartbeat once set
+    public void setLinkMonitor(LinkMonitor monitor) {
+        linkMonitor = monitor;
+        wake();
+    }
+
+    public void setBinaryWire(boolean binaryWire) {
+        this.binaryWire = binaryWire;
+    }
+
+    // Mouse and gyro as axis streams (codec CODEC_BINARY_AXIS); binary wire only
+    public void setAxisStreams(boolean enabled) {
+        axisStreams = enabled;
+        axisStreamsReset = true;
+    }
+
+    // How long the sender waits after the first event of a burst before sending (0 = no wait)
+    public void setBatchWindowMicros(long micros) {
+        batchWindowNanos = Math.max(0, micros) * 1000;
+    }
+
+    // Frames per FEC parity packet (0 = off). Only used with the binary codec.
+    public void setFecGroupSize(int frames) {
+        fecGroupSize = frames;
+        wake();
+    }
+
+    public int getFecGroupSize() {
+        return fecGroupSize;
+    }
+
+    // Full state reports per second (0 = edge events only). Only used with the binary codec.
+    public void setStateReportRate(int hz) {
+        reportIntervalNanos = hz > 0 ? 1_000_000_000L / hz : 0;
+        wake();
+    }
+
+    private boolean isReporting() {
+        return binaryWire && reportIntervalNanos > 0;
+    }
+
+    // ========== Producer (main thread) ==========
+
+    // "captureNanos" is the System.nanoTime() clock time of the input (e.g. MotionEvent.getEventTime()).
+    // The overloads without it use the current time.
+
+    public void enqueueKey(String key, boolean pressed, int player) {
+        enqueueKey(key, pressed, player, System.nanoTime());
+    }
+
+    public void enqueueKey(String key, boolean pressed, int player, long captureNanos) {
+        int keyId = InputProtocol.keyId(key);
+        state.setKey(keyId, pressed);
+        touchKey(keyId);
+        statePlayer = player;
+        queue.offerKey(key, keyId, keyId, pressed, player, captureNanos);
+        wake();
+    }
+
+    // Control of the current ControlMap (resolved with array lookups, no string work per event)
+    public void enqueueControl(int controlId, boolean pressed, int player, long captureNanos) {
+        ControlMap map = controlMap;
+        int keyId = map.keyId(controlId);
+        state.setKey(keyId, pressed);
+        touchKey(keyId);
+        statePlayer = player;
+        queue.offerKey(map.keyName(controlId), keyId, controlId, pressed, player, captureNanos);
+        wake();
+    }
+
+    public void enqueueMouseMove(int dx, int dy, long captureNanos) {
+        queue.addMouseDelta(dx, dy, captureNanos);
+        wake();
+    }
+
+    // Velocity mouse mode: sent only when MouseVelocityTracker says the receiver's extrapolation needs it
+    public void enqueueMouseVelocity(int x, int y, int vx, int vy, long captureNanos) {
+        queue.offerMouseVelocity(x, y, vx, vy, captureNanos);
+        wake();
+    }
+
+    public void enqueueMouseButton(int button, boolean pressed, long captureNanos) {
+        state.setMouseButton(button, pressed);
+        mouseButtonsTouched |= 1 << button;
+        queue.offerMouseButton(button, pressed, captureNanos);
+        wake();
+    }
+
+    private void touchKey(int keyId) {
+        if (keyId > 0 && keyId < 64) {
+            keysTouched |= 1L << keyId;
+        }
+    }
+
+    /**
+     * Sends the whole GamepadState again, after the session was re-established: the desktop
+     * may have missed any number of edges or restarted. Every key and mouse button used this
+     * session goes out with its current state (so keys released during the outage are
+     * released there too), and the axis streams restart with full values.
+     */
+    public void replayState() {
+        long now = System.nanoTime();
+        long keys = state.getKeys();
+        for (int keyId = 1; keyId < 64; keyId++) {
+            long bit = 1L << keyId;
+            if ((keysTouched & bit) == 0) continue;
+            // By key ID, not control ID: the control map may not be active again yet
+            queue.offerKey(InputProtocol.keyName(keyId), keyId, 0, (keys & bit) != 0, statePlayer, now);
+        }
+        int buttons = state.getMouseButtons();
+        for (int button = 0; button < 8; button++) {
+            int bit = 1 << button;
+            if ((mouseButtonsTouched & bit) == 0) continue;
+            queue.offerMouseButton(button, (buttons & bit) != 0, now);
+        }
+        axisStreamsReset = true;
+        wake();
+    }
+
+    // Analog axis for state reports (GamepadState.AXIS_*). Sent with the next periodic report.
+    public void setAxis(int axis, float value) {
+        state.setAxis(axis, value);
+    }
+
+    public void enqueueGyro(float x, float y, float z, long captureNanos) {
+        queue.setGyro(x, y, z, captureNanos);
+        wake();
+    }
+
+    public void enqueueHeartbeat() {
+        queue.requestHeartbeat();
+        wake();
+    }
+
+    private void wake() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    // ========== Sender thread ==========
+
+    @Override
+    public void run() {
+        try {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        } catch (Exception e) {
+            android.util.Log.w("InputSender", "Could not raise priority: " + e.getMessage());
+        }
+
+        while (running || !queue.isEmpty()) {
+            if (queue.isEmpty()) {
+                long untilDue = untilTimedWork();
+                if (untilDue > 0) {
+                    LockSupport.parkNanos(this, Math.min(untilDue, IDLE_PARK_NANOS));
+                    continue;
+                }
+            }
+
+            // Let the rest of the burst (e.g. four key releases from one touch) arrive
+            waitForBatchWindow();
+            drainOnce();
+        }
+    }
+
+    // Nanoseconds until the next state report or key history repeat is due
+    private long untilTimedWork() {
+        long now = System.nanoTime();
+        long until = Long.MAX_VALUE;
+        if (isReporting()) {
+            until = nextReportNanos - now;
+        }
+        if (binaryWire && historyRepeatsLeft > 0) {
+            until = Math.min(until, nextRepeatNanos - now);
+        }
+        if (linkMonitor != null) {
+            until = Math.min(until, nextProbeNanos - now);
+        }
+        if (fec.hasPending()) {
+            until = Math.min(until, lastFrameNanos + FEC_FLUSH_NANOS - now);
+        }
+        return until;
+    }
+
+    private void waitForBatchWindow() {
+        long window = batchWindowNanos;
+        // JSON can't batch, so waiting would only add latency
+        if (window <= 0 || !running || !binaryWire || queue.isEmpty()) return;
+
+        // Each enqueue unparks us, so keep parking until the deadline
+        long deadline = System.nanoTime() + window;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    // Sends discrete events first, then at most one pending mouse and gyro value,
+    // batched into as few datagrams as possible.
+    private void drainOnce() {
+        boolean reporting = isReporting();
+        if (axisStreamsReset) {
+            axisStreamsReset = false;
+            mouseStream.reset();
+            gyroStream.reset();
+        }
+
+        InputEvent event;
+        while ((event = queue.pollDiscrete()) != null) {
+            if (reporting && isInStateReport(event)) {
+                // Already in GamepadState; send a report right away instead of the edge
+                stateDirty = true;
+            } else {
+                addInput(event);
+            }
+            recordLatency(event.enqueueNanos);
+            queue.releaseDiscrete();
+        }
+
+        if (queue.takeMouse(scratch)) {
+            addInput(scratch);
+        }
+
+        // In report mode the gyro travels as the roll/pitch axes of the report
+        if (queue.takeGyro(scratch) && !reporting && !isGyroUnchanged(scratch)) {
+            addInput(scratch);
+        }
+
+        if (reporting && (stateDirty || System.nanoTime() - nextReportNanos >= 0)) {
+            scratch.type = InputEvent.STATE_REPORT;
+            scratch.player = statePlayer;
+            scratch.captureNanos = 0;
+            addInput(scratch);
+            reportsSent++;
+            stateDirty = false;
+            nextReportNanos = System.nanoTime() + reportIntervalNanos;
+        }
+
+        // Nothing else to send: repeat the key history on its own
+        if (!frameOpen && binaryWire && historyRepeatsLeft > 0
+                && System.nanoTime() - nextRepeatNanos >= 0) {
+            startFrame();
+            historyRepeatFrames++;
+        }
+
+        LinkMonitor monitor = linkMonitor;
+        if (monitor != null) {
+            probeIfDue(monitor);
+        }
+
+        if (queue.takeHeartbeat()) {
+            if (frameEvents > 0 || System.nanoTime() - lastInputSentNanos < HEARTBEAT_QUIET_NANOS) {
+                suppressedHeartbeats++;
+            } else {
+                addHeartbeat();
+            }
+        }
+
+        flushFrame();
+
+        // The stream paused: protect the frames of the unfinished group now
+        if (fec.hasPending() && System.nanoTime() - lastFrameNanos >= FEC_FLUSH_NANOS) {
+            sendParity(fec.flush());
+        }
+    }
+
+    private void addHeartbeat() {
+        scratch.type = InputEvent.HEARTBEAT;
+        scratch.captureNanos = 0;
+        addEvent(scratch);
+    }
+
+    // Standalone heartbeat + echo request while idle; otherwise the request joins the input frame
+    private void probeIfDue(LinkMonitor monitor) {
+        long now = System.nanoTime();
+        if (now - nextProbeNanos < 0) return;
+
+        boolean idle = frameEvents == 0 && now - lastInputSentNanos >= LinkMonitor.PROBE_INTERVAL_NANOS;
+        if (!idle && (!binaryWire || !frameOpen || !monitor.hasEcho())) {
+            // Input is flowing: no extra datagram; try again with the next binary frame
+            return;
+        }
+
+        if (idle && binaryWire) {
+            addHeartbeat();  // keeps desktops that don't know echo requests alive
+        }
+        scratch.type = InputEvent.ECHO_REQUEST;
+        scratch.captureNanos = 0;
+        scratch.echoTimestamp = LinkMonitor.probeTimestamp();
+        addEvent(scratch);
+
+        monitor.onProbeSent(now, scratch.echoTimestamp);
+        nextProbeNanos = now + monitor.getProbeIntervalNanos();
+    }
+
+    private static boolean isInStateReport(InputEvent e) {
+        return e.type == InputEvent.MOUSE_BUTTON || (e.type == InputEvent.KEY && e.keyId != 0);
+    }
+
+    private void addInput(InputEvent e) {
+        addEvent(e);
+        lastInputSentNanos = System.nanoTime();
+        eventsSent++;
+    }
+
+    // Appends the event to the current binary frame, or sends it as JSON
+    private void addEvent(InputEvent e) {
+        if (!binaryWire || (e.type == InputEvent.KEY && wireId(e) == 0)) {
+            // Keep the order: anything already batched goes first
+            flushFrame();
+            sendDatagramResult(sendJson(e));
+            return;
+        }
+
+        boolean hasPlayer = e.type == InputEvent.KEY || e.type == InputEvent.STATE_REPORT;
+        if (frameEvents > 0 && (!codec.hasRoom() || (hasPlayer
+                && framePlayer >= 0 && framePlayer != e.player))) {
+            flushFrame();
+        }
+
+        if (!frameOpen) {
+            startFrame();
+        }
+        if (hasPlayer && framePlayer < 0) {
+            framePlayer = e.player;
+            codec.setPlayer(e.player);
+        }
+
+        if (e.type == InputEvent.KEY) {
+            addToHistory(e);
+        } else {
+            encode(e);
+        }
+        frameEvents++;
+    }
+
+    // ID sent for a key event: its control ID once the map is active, else the raw key ID
+    private int wireId(InputEvent e) {
+        return controlIdsActive && e.controlId != 0 ? e.controlId : e.keyId;
+    }
+
+    private void startFrame() {
+        int player = historyRepeatsLeft > 0 ? historyPlayer : 0;
+        ClockSync clock = clockSync;
+        if (clock != null && clock.isSynced()) {
+            frameStartNanos = System.nanoTime();
+            codec.begin(player, datagramSeq++, clock.toRemoteMicrosFromNanos(frameStartNanos));
+        } else {
+            codec.begin(player, datagramSeq++);
+        }
+        framePlayer = historyRepeatsLeft > 0 ? historyPlayer : -1;
+        frameOpen = true;
+    }
+
+    // Key transitions are sent only in the key history trailer
+    private void addToHistory(InputEvent e) {
+        if (e.player != historyPlayer) {
+            // History entries carry no player, so never repeat another player's keys
+            historyCount = 0;
+            historyPlayer = e.player;
+        }
+        history[nextTransition & (KEY_HISTORY - 1)] = (e.pressed ? 0x80 : 0) | wireId(e);
+        historyCapture[nextTransition & (KEY_HISTORY - 1)] = e.captureNanos;
+        nextTransition++;
+        historyCount = Math.min(historyCount + 1, KEY_HISTORY);
+        historyRepeatsLeft = HISTORY_REPEATS + 1;  // this frame plus the repeats
+    }
+
+    private void flushFrame() {
+        if (!frameOpen) return;
+
+        if (historyRepeatsLeft > 0 && historyCount > 0 && framePlayer == historyPlayer) {
+            int first = nextTransition - historyCount;
+            codec.beginKeyHistory(first, historyCount);
+            for (int t = first; t != nextTransition; t++) {
+                int entry = history[t & (KEY_HISTORY - 1)];
+                if (codec.isTimestamped()) {
+                    codec.putHistoryEntry(entry & 0x7F, (entry & 0x80) != 0,
+                            captureAge(historyCapture[t & (KEY_HISTORY - 1)]));
+                } else {
+                    codec.putHistoryEntry(entry & 0x7F, (entry & 0x80) != 0);
+                }
+            }
+            historyRepeatsLeft--;
+            nextRepeatNanos = System.nanoTime() + HISTORY_REPEAT_NANOS;
+        }
+
+        int length = codec.finish();
+        sendDatagramResult(transport.send(codec.buffer(), 0, length));
+        frameOpen = false;
+        frameEvents = 0;
+        lastFrameNanos = System.nanoTime();
+        protect(length);
+    }
+
+    // Adds the frame just sent to the FEC group, sending the parity when the group is full
+    private void protect(int length) {
+        int groupSize = fecGroupSize;
+        if (groupSize != fec.getGroupSize()) {
+            sendParity(fec.flush());
+            fec.setGroupSize(groupSize);
+        }
+        sendParity(fec.add(codec.buffer(), length, datagramSeq - 1));
+    }
+
+    private void sendParity(int length) {
+        if (length > 0) {
+            transport.send(fec.parityBuffer(), 0, length);
+        }
+    }
+
+    private void sendDatagramResult(boolean sent) {
+        sendFailing = !sent;
+        datagramsSent++;
+    }
+
+    private void encode(InputEvent e) {
+        if (codec.isTimestamped() && e.captureNanos != 0) {
+            codec.putCaptureAge(captureAge(e.captureNanos));
+        }
+
+        switch (e.type) {
+            case InputEvent.KEY:
+                codec.putKey(e.keyId, e.pressed);
+                break;
+            case InputEvent.MOUSE_MOVE:
+                if (axisStreams) {
+                    axisValues[0] = e.dx;
+                    axisValues[1] = e.dy;
+                    mouseStream.encode(codec, datagramSeq - 1, axisValues, System.nanoTime());
+                } else {
+                    codec.putMouseMove(e.dx, e.dy);
+                }
+                break;
+            case InputEvent.MOUSE_VELOCITY:
+                codec.putMouseVelocity(e.positionX, e.positionY, e.velocityX, e.velocityY);
+                break;
+            case InputEvent.MOUSE_BUTTON:
+                codec.putMouseButton(e.button, e.pressed);
+                break;
+            case InputEvent.GYRO:
+                if (axisStreams) {
+                    setGyroValues(e);
+                    gyroStream.encode(codec, datagramSeq - 1, axisValues, System.nanoTime());
+                } else {
+                    codec.putGyro(e.x, e.y, e.z);
+                }
+                break;
+            case InputEvent.HEARTBEAT:
+                codec.putHeartbeat();
+                break;
+            case InputEvent.STATE_REPORT:
+                codec.putStateReport(reportSeq++, state);
+                break;
+            case InputEvent.ECHO_REQUEST:
+                codec.putEchoRequest(e.echoTimestamp);
+                break;
+        }
+    }
+
+    // Gyro values that would only repeat the last send (axis streams only)
+    private boolean isGyroUnchanged(InputEvent e) {
+        if (!axisStreams || !binaryWire) return false;
+        setGyroValues(e);
+        return gyroStream.isUnchanged(axisValues, System.nanoTime());
+    }
+
+    private void setGyroValues(InputEvent e) {
+        axisValues[0] = e.x;
+        axisValues[1] = e.y;
+        axisValues[2] = e.z;
+    }
+
+    // Capture age field of an event in the current timestamped frame
+    private int captureAge(long captureNanos) {
+        if (captureNanos == 0) return 0;
+        return InputCodec.toCaptureAge((frameStartNanos - captureNanos) / 1000);
+    }
+
+    // Capture time in the desktop's clock, or 0 if unknown / not synced yet
+    private long remoteCaptureMicros(InputEvent e) {
+        ClockSync clock = clockSync;
+        if (e.captureNanos == 0 || clock == null || !clock.isSynced()) return 0;
+        return clock.toRemoteMicrosFromNanos(e.captureNanos);
+    }
+
+    // JSON messages for desktops that didn't accept the binary codec
+    private boolean sendJson(InputEvent e) {
+        long captureMicros = remoteCaptureMicros(e);
+
+        if (e.type == InputEvent.KEY && e.controlId != 0) {
+            byte[] template = templateFor(e);
+            if (template != null) {
+                return sendJsonTemplate(template, e, captureMicros);
+            }
+        }
+
+        Map<String, Object> message = new HashMap<>();
+
+        switch (e.type) {
+            case InputEvent.KEY:
+                if (controlIdsActive && e.controlId != 0) {
+                    message.put("action", "control");
+                    message.put("id", e.controlId);
+                } else {
+                    message.put("action", "key");
+                    message.put("key", e.key);
+                }
+                message.put("pressed", e.pressed);
+                if (e.player > 0) {
+                    message.put("player", e.player);
+                }
+                break;
+            case InputEvent.MOUSE_MOVE:
+                message.put("action", "mouse_move");
+                message.put("x", e.dx);
+                message.put("y", e.dy);
+                break;
+            case InputEvent.MOUSE_VELOCITY:
+                message.put("action", "mouse_velocity");
+                message.put("x", e.positionX);
+                message.put("y", e.positionY);
+                message.put("vx", e.velocityX);
+                message.put("vy", e.velocityY);
+                break;
+            case InputEvent.MOUSE_BUTTON:
+                message.put("action", "mouse_button");
+                message.put("button", e.button == InputProtocol.MOUSE_LEFT ? "left" : "right");
+                message.put("pressed", e.pressed);
+                break;
+            case InputEvent.GYRO:
+                message.put("type", "gyro");
+                message.put("x", e.x);
+                message.put("y", e.y);
+                message.put("z", e.z);
+                break;
+            case InputEvent.HEARTBEAT:
+                message.put("action", "heartbeat");
+                message.put("deviceName", deviceName);
+                break;
+            case InputEvent.ECHO_REQUEST:
+                message.put("action", "heartbeat");
+                message.put("deviceName", deviceName);
+                message.put("ts", e.echoTimestamp);
+                break;
+        }
+        if (captureMicros != 0) {
+            message.put("t", captureMicros);
+        }
+
+        ReliableChannel reliable = reliableChannel;
+        if (reliable != null && (e.type == InputEvent.KEY || e.type == InputEvent.MOUSE_BUTTON)) {
+            long key = transitionKey(e);
+            if (!e.pressed) {
+                reliable.send(message, key);
+                return true;
+            }
+            // A press ends the pending release of the same key, or its retry would release it again
+            reliable.supersede(key);
+        }
+
+        byte[] buffer = gson.toJson(message).getBytes();
+        return transport.send(buffer, 0, buffer.length);
+    }
+
+    // Pre-encoded press/release for the event's control; rebuilt if the map, player or mode changed
+    private byte[] templateFor(InputEvent e) {
+        ControlMap map = controlMap;
+        boolean ids = controlIdsActive;
+        if (templates == null || !templates.matches(map, e.player, ids)) {
+            templates = new PacketTemplates(map, e.player, ids);
+        }
+        return templates.get(e.controlId, e.pressed);
+    }
+
+    private boolean sendJsonTemplate(byte[] template, InputEvent e, long captureMicros) {
+        byte[] data = template;
+        int length = template.length;
+        if (captureMicros != 0 && length + 32 <= templateScratch.length) {
+            data = templateScratch;
+            length = appendCaptureTime(template, captureMicros);
+        }
+
+        ReliableChannel reliable = reliableChannel;
+        if (reliable != null) {
+            if (!e.pressed) {
+                reliable.sendEncoded(data, length, "key", transitionKey(e));
+                return true;
+            }
+            reliable.supersede(transitionKey(e));
+        }
+        return transport.send(data, 0, length);
+    }
+
+    // ReliableChannel supersede key of a key / mouse button: one per key (or button) and player
+    static long transitionKey(InputEvent e) {
+        if (e.type == InputEvent.MOUSE_BUTTON) {
+            return ((long) InputEvent.MOUSE_BUTTON << 48) | e.button;
+        }
+        long key = e.keyId != 0 ? e.keyId : (e.key != null ? e.key.hashCode() & 0xFFFFFFFFL : 0);
+        return ((long) InputEvent.KEY << 48) | ((long) e.player << 40) | key;
+    }
+
+    // Copies the template into templateScratch with ,"t":micros before the closing brace
+    private int appendCaptureTime(byte[] template, long micros) {
+        byte[] out = templateScratch;
+        int p = template.length - 1;
+        System.arraycopy(template, 0, out, 0, p);
+        out[p++] = ',';
+        out[p++] = '"';
+        out[p++] = 't';
+        out[p++] = '"';
+        out[p++] = ':';
+        if (micros < 0) {
+            out[p++] = '-';
+            micros = -micros;
+        }
+        int start = p;
+        do {
+            out[p++] = (byte) ('0' + micros % 10);
+            micros /= 10;
+        } while (micros > 0);
+        for (int i = start, j = p - 1; i < j; i++, j--) {
+            byte digit = out[i];
+            out[i] = out[j];
+            out[j] = digit;
+        }
+        out[p++] = '}';
+        return p;
+    }
+
+    private void recordLatency(long enqueueNanos) {
+        long micros = (System.nanoTime() - enqueueNanos) / 1000;
+
+        lastEnqueueToWireMicros = micros;
+        avgEnqueueToWireMicros += (micros - avgEnqueueToWireMicros) / 8;
+        if (micros > maxEnqueueToWireMicros) {
+            maxEnqueueToWireMicros = micros;
+        }
+    }
+
+    // ========== Metrics ==========
+
+    // True if the most recent datagram could not be sent
+    public boolean isSendFailing() {
+        return sendFailing;
+    }
+
+    public int getBacklog() {
+        return queue.backlog();
+    }
+
+    public int getMaxBacklog() {
+        return queue.getMaxBacklog();
+    }
+
+    public long getConflatedEvents() {
+        return queue.getConflatedMouse() + queue.getConflatedAxis();
+    }
+
+    public long getSuppressedHeartbeats() {
+        return suppressedHeartbeats;
+    }
+
+    public long getEventsSent() {
+        return eventsSent;
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    public long getReportsSent() {
+        return reportsSent;
+    }
+
+    public long getHistoryRepeatFrames() {
+        return historyRepeatFrames;
+    }
+
+    public long getLastEnqueueToWireMicros() {
+        return lastEnqueueToWireMicros;
+    }
+
+    public long getAvgEnqueueToWireMicros() {
+        return avgEnqueueToWireMicros;
+    }
+
+    public long getMaxEnqueueToWireMicros() {
+        return maxEnqueueToWireMicros;
+    }
+
+    public String metricsSummary() {
+        return "sent=" + eventsSent + " datagrams=" + datagramsSent
+                + " backlog=" + queue.backlog() + " maxBacklog=" + queue.getMaxBacklog()
+                + " conflatedMouse=" + queue.getConflatedMouse()
+                + " conflatedAxis=" + queue.getConflatedAxis()
+                + " overflow=" + queue.getOverflowEvents()
+                + " suppressedHeartbeats=" + suppressedHeartbeats
+                + " reports=" + reportsSent
+                + " historyRepeats=" + historyRepeatFrames
+                + " fecParity=" + fec.getParityPackets()
+                + String.format(java.util.Locale.US, " axisBytes(mouse/gyro)=%.1f/%.1f",
+                        mouseStream.getAverageBytes(), gyroStream.getAverageBytes())
+                + " wireUs(avg/max)=" + avgEnqueueToWireMicros + "/" + maxEnqueueToWireMicros;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.mobcontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One scheduler for all periodic input producers (mouse loops, PWM steering, link checks,
+ * clock sync), instead of a Handler loop each.
+ *
+ * A producer's tick() returns how long until it wants to run again, so each sets its own
+ * rate and can change it on the fly. Timer tasks run when they are due; frame tasks run on
+ * the display frame nearest to when they are due (every frame for an interval of 0), so
+ * their sends stay in step with vsync instead of beating against it.
+ *
+ * Due times advance by the interval, not from when the tick actually ran, so the average
+ * rate is exact even when single ticks are late. A task that falls more than an interval
+ * behind skips ahead instead of bursting to catch up, and the skipped tick counts as missed.
+ *
+ * The scheduler itself doesn't know about Handlers or Choreographer: a Driver wakes it, and
+ * it runs its producers on whatever thread the Driver calls it on.
+ */
+public class InputTickScheduler {
+
+    // Returned by tick() to stop the task; start() it again to resume
+    public static final long STOP = -1;
+
+    // Later than this counts as a missed deadline (frame tasks: half a frame)
+    static final long MISS_TOLERANCE_NANOS = 4_000_000L;
+
+    public interface Producer {
+        /** @return nanoseconds until the next tick, or STOP */
+        long tick(long nowNanos);
+    }
+
+    public interface Driver {
+        // Call runTimers() at (or soon after) this System.nanoTime(); replaces an earlier request
+        void wakeAt(long nanos);
+        // Call runFrame() on the next display frame
+        void wakeOnFrame();
+    }
+
+    public static final class Task {
+        final String name;
+        final Producer producer;
+        final boolean frameAligned;
+        boolean running;
+        long due;
+
+        // Metrics
+        long ticks;
+        long missed;
+        double jitterNanos;    // RFC 3550 style: smoothed change in lateness
+        long lastLateNanos;
+        long maxLateNanos;
+
+        Task(String name, Producer producer, boolean frameAligned) {
+            this.name = name;
+            this.producer = producer;
+            this.frameAligned = frameAligned;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public long getMissed() {
+            return missed;
+        }
+
+        public long getJitterNanos() {
+            return (long) jitterNanos;
+        }
+
+        public long getMaxLateNanos() {
+            return maxLateNanos;
+        }
+    }
+
+    private final Driver driver;
+    private final long frameIntervalNanos;
+    private final List<Task> tasks = new ArrayList<>();
+
+    private long wakeAt = Long.MAX_VALUE;
+    private boolean framePending;
+
+    /** @param frameIntervalNanos display refresh period, for frame tasks */
+    public InputTickScheduler(Driver driver, long frameIntervalNanos) {
+        this.driver = driver;
+        this.frameIntervalNanos = frameIntervalNanos;
+    }
+
+    public Task timer(String name, Producer producer) {
+        Task task = new Task(name, producer, false);
+        tasks.add(task);
+        return task;
+    }
+
+    public Task frame(String name, Producer producer) {
+        Task task = new Task(name, producer, true);
+        tasks.add(task);
+        return task;
+    }
+
+    // First tick at "dueNanos" (frame tasks: on the frame nearest to it); no-op if already running
+    public void start(Task task, long dueNanos) {
+        if (task.running) return;
+        task.running = true;
+        task.due = dueNanos;
+        task.lastLateNanos = 0;
+        if (task.frameAligned) {
+            requestFrame();
+        } else {
+            requestWake(dueNanos);
+        }
+    }
+
+    public void stop(Task task) {
+        task.running = false;
+    }
+
+    public void stopAll() {
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).running = false;
+        }
+    }
+
+    // Driver callback: runs the timer tasks that are due
+    public void runTimers(long nowNanos) {
+        wakeAt = Long.MAX_VALUE;
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (!task.running || task.frameAligned) continue;
+            if (task.due <= nowNanos) {
+                run(task, nowNanos, MISS_TOLERANCE_NANOS);
+            }
+            if (task.running) {
+                next = Math.min(next, task.due);
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            requestWake(next);
+        }
+    }
+
+    // Driver callback: runs the frame tasks due by this frame (rounded to the nearest frame)
+    public void runFrame(long frameNanos) {
+        framePending = false;
+        boolean active = false;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (!task.running || !task.frameAligned) continue;
+            if (task.due - frameIntervalNanos / 2 <= frameNanos) {
+                run(task, frameNanos, frameIntervalNanos / 2);
+            }
+            active |= task.running;
+        }
+        if (active) {
+            requestFrame();
+        }
+    }
+
+    private void run(Task task, long nowNanos, long toleranceNanos) {
+        long late = nowNanos - task.due;
+        task.ticks++;
+        if (task.ticks > 1) {
+            task.jitterNanos += (Math.abs(late - task.lastLateNanos) - task.jitterNanos) / 16;
+        }
+        task.lastLateNanos = late;
+        task.maxLateNanos = Math.max(task.maxLateNanos, late);
+        if (late > toleranceNanos) {
+            task.missed++;
+        }
+
+        long interval = task.producer.tick(nowNanos);
+        if (interval == STOP || !task.running) {
+            task.running = false;
+            return;
+        }
+        if (task.frameAligned) {
+            interval = Math.max(interval, frameIntervalNanos);
+        }
+        task.due += Math.max(1, interval);
+        if (task.due <= nowNanos) {
+            // A whole interval behind: skip ahead
+            task.due = nowNanos + Math.max(1, interval);
+        }
+    }
+
+    private void requestWake(long nanos) {
+        if (nanos >= wakeAt) return;
+        wakeAt = nanos;
+        driver.wakeAt(nanos);
+    }
+
+    private void requestFrame() {
+        if (framePending) return;
+        framePending = true;
+        driver.wakeOnFrame();
+    }
+
+    public String metricsSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task.ticks == 0) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(task.name)
+                    .append(": ticks=").append(task.ticks)
+                    .append(" missed=").append(task.missed)
+                    .append(" jitter=").append(String.format("%.1f", task.jitterNanos / 1e6)).append("ms")
+                    .append(" maxLate=").append(String.format("%.1f", task.maxLateNanos / 1e6)).append("ms");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.mobcontrol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UDP transport for one controller session.
+ * Resolves the desktop address once, keeps a connected DatagramChannel and
+ * sends from a small pool of direct buffers so the send path doesn't allocate.
+ */
+public class InputTransport implements Closeable {
+
+    private static final int POOL_SIZE = 4;
+    private static final int BUFFER_SIZE = 1500;  // one Ethernet MTU
+
+    private final String host;
+    private final int port;
+
+    private volatile DatagramChannel channel;
+    private InetSocketAddress endpoint;
+
+    private final ArrayBlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // Metrics
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+
+    public InputTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            bufferPool.offer(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+    }
+
+    // Resolve the desktop address and connect the channel (blocking, call off the main thread)
+    public synchronized void open() throws IOException {
+        if (channel != null) return;
+
+        endpoint = new InetSocketAddress(InetAddress.getByName(host), port);
+        DatagramChannel ch = DatagramChannel.open();
+        ch.connect(endpoint);
+        channel = ch;
+    }
+
+    // New socket to the same desktop, e.g. after Wi-Fi roamed and the old local address is gone.
+    // The old one is closed even if the new one can't be opened (no route yet): left closed until the next try.
+    public synchronized void reopen() throws IOException {
+        DatagramChannel old = channel;
+        channel = null;
+        try {
+            open();
+        } finally {
+            if (old != null) {
+                try {
+                    old.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        DatagramChannel ch = channel;
+        return ch != null && ch.isOpen();
+    }
+
+    /**
+     * Sends one datagram. Failures are counted instead of thrown so callers on the
+     * hot path don't need their own try/catch.
+     * @return true if the datagram was handed to the OS
+     */
+    public boolean send(byte[] data, int offset, int length) {
+        DatagramChannel ch = channel;
+        if (ch == null || length > BUFFER_SIZE) {
+            sendErrors.incrementAndGet();
+            return false;
+        }
+
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        try {
+            buffer.clear();
+            buffer.put(data, offset, length);
+            buffer.flip();
+
+            int written = ch.write(buffer);
+            packetsSent.incrementAndGet();
+            bytesSent.addAndGet(written);
+            return true;
+
+        } catch (IOException e) {
+            sendErrors.incrementAndGet();
+            android.util.Log.w("Transport", "send failed: " + e.getMessage());
+            return false;
+
+        } finally {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Blocking receive with timeout.
+     * @return number of bytes received
+     * @throws java.net.SocketTimeoutException if nothing arrived in time
+     */
+    public int receive(byte[] into, int timeoutMs) throws IOException {
+        DatagramChannel ch = channel;
+        if (ch == null) throw new IOException("Transport not open");
+
+        ch.socket().setSoTimeout(timeoutMs);
+        DatagramPacket packet = new DatagramPacket(into, into.length);
+        ch.socket().receive(packet);
+        return packet.getLength();
+    }
+
+    @Override
+    public synchronized void close() {
+        DatagramChannel ch = channel;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getSendErrors() {
+        return sendErrors.get();
+    }
+}
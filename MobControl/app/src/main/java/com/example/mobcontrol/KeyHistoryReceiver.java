@@ -0,0 +1,82 @@
+package com.example.mobcontrol;
+
+/**
+ * Receiving side of sequenced frames (used by tests and as a reference for the desktop).
+ *
+ * Key transitions arrive in the key history trailer of every frame sent shortly after them,
+ * so each transition is seen several times. The receiver applies each transition number
+ * once, in order, and rebuilds the ones whose own datagram was lost.
+ */
+public class KeyHistoryReceiver {
+
+    private final GamepadState keys = new GamepadState();
+    private ControlMap controlMap;  // uploaded table, resolves IDs >= ControlMap.FIRST_LAYOUT_ID
+
+    private boolean hasSequence;
+    private int lastSequence;
+    private boolean hasTransition;
+    private int lastTransition;
+
+    private long lostDatagrams;       // gaps in the datagram sequence
+    private long lateDatagrams;       // older than one already received
+    private long appliedTransitions;
+    private long missedTransitions;   // lost together with every datagram that repeated them
+
+    public void setControlMap(ControlMap controlMap) {
+        this.controlMap = controlMap;
+    }
+
+    // Call once per sequenced frame, before its key history
+    public void onDatagram(int seq) {
+        if (hasSequence) {
+            if (!InputProtocol.isNewer(seq, lastSequence)) {
+                lateDatagrams++;
+                return;
+            }
+            lostDatagrams += (seq - lastSequence) - 1;
+        }
+        lastSequence = seq;
+        hasSequence = true;
+    }
+
+    /**
+     * Applies a history entry if it hasn't been applied yet.
+     * @return true if the transition is new and should be injected
+     */
+    public boolean onKeyTransition(int transition, int keyId, boolean pressed) {
+        // keyId is a control ID once the control map is active; raw key IDs map to themselves
+        if (hasTransition) {
+            if (!InputProtocol.isNewer(transition, lastTransition)) {
+                return false;
+            }
+            missedTransitions += (transition - lastTransition) - 1;
+        }
+
+        keys.setKey(controlMap != null ? controlMap.keyId(keyId) : keyId, pressed);
+        lastTransition = transition;
+        hasTransition = true;
+        appliedTransitions++;
+        return true;
+    }
+
+    // Keys currently held according to the transitions applied so far
+    public GamepadState getKeys() {
+        return keys;
+    }
+
+    public long getLostDatagrams() {
+        return lostDatagrams;
+    }
+
+    public long getLateDatagrams() {
+        return lateDatagrams;
+    }
+
+    public long getAppliedTransitions() {
+        return appliedTransitions;
+    }
+
+    public long getMissedTransitions() {
+        return missedTransitions;
+    }
+}
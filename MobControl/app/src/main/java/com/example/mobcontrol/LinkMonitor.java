@@ -0,0 +1,182 @@
+package com.example.mobcontrol;
+
+import java.util.Arrays;
+
+/**
+ * Link quality and liveness from echoed heartbeat probes.
+ *
+ * The sender probes every PROBE_INTERVAL_NANOS: a standalone heartbeat while input is idle,
+ * or an echo request riding in an input frame while it isn't. The desktop echoes the probe's
+ * timestamp back ({"action":"heartbeat_echo","ts":...}), which gives an RTT sample.
+ *
+ * RTT: smoothed RTT and variance (RttEstimator), interarrival jitter (RFC 3550, 1/16 gain)
+ * and percentiles over the last PERCENTILE_WINDOW samples.
+ *
+ * Loss: probes older than an echoed one that were never echoed count as lost (EWMA, 1/32 gain).
+ *
+ * Liveness: a probe still unanswered after DEGRADED_AFTER_NANOS marks the link degraded,
+ * after DEAD_AFTER_NANOS dead. Until the first echo the state is unknown (the desktop may
+ * not echo at all).
+ *
+ * Thread safe: probes are sent on the sender thread, echoes arrive on the control channel thread.
+ */
+public class LinkMonitor {
+
+    public static final int UNKNOWN = 0;
+    public static final int ALIVE = 1;
+    public static final int DEGRADED = 2;
+    public static final int DEAD = 3;
+
+    public static final long PROBE_INTERVAL_NANOS = 100_000_000L;
+    private static final long UNCONFIRMED_PROBE_INTERVAL_NANOS = 1_000_000_000L;  // until the first echo
+    private static final long DEGRADED_AFTER_NANOS = 250_000_000L;
+    private static final long DEAD_AFTER_NANOS = 500_000_000L;
+    private static final long MAX_RTT_MICROS = 10_000_000L;  // older echoes are stale, not samples
+    private static final int PERCENTILE_WINDOW = 64;
+    private static final int PROBE_HISTORY = 32;  // probes an echo can be matched against
+
+    private final RttEstimator rtt = new RttEstimator(0, 0, Long.MAX_VALUE);
+    private final long[] window = new long[PERCENTILE_WINDOW];  // RTT samples, micros
+    private int samples;
+    private long jitterMicros16;  // jitter * 16, so the 1/16 gain doesn't truncate (RFC 3550 A.8)
+    private long lastRttMicros;
+
+    private boolean echoed;
+    private long oldestUnansweredNanos;  // send time of the first probe since the last echo, 0 if none
+
+    private long probesSent;
+    private long echoesReceived;
+
+    // Outstanding probes, indexed by probe number, for loss accounting
+    private final long[] probeTimestamps = new long[PROBE_HISTORY];
+    private final boolean[] probeEchoed = new boolean[PROBE_HISTORY];
+    private long firstUnresolvedProbe;  // probes before this have been counted as echoed or lost
+    private double loss;                // EWMA of lost (1) / echoed (0) probes
+
+    // Probe timestamp field: phone micros, truncated to 32 bits on the binary wire
+    public static long probeTimestamp() {
+        return ClockSync.nowMicros();
+    }
+
+    public synchronized void onProbeSent(long nowNanos, long timestamp) {
+        int slot = (int) (probesSent % PROBE_HISTORY);
+        probeTimestamps[slot] = timestamp & 0xFFFFFFFFL;
+        probeEchoed[slot] = false;
+        probesSent++;
+        firstUnresolvedProbe = Math.max(firstUnresolvedProbe, probesSent - PROBE_HISTORY);
+        if (oldestUnansweredNanos == 0) {
+            oldestUnansweredNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Handles an echo of a probe sent at "sentMicros" (probeTimestamp()), received at "nowMicros".
+     */
+    public synchronized void onEcho(long sentMicros, long nowMicros) {
+        long rttMicros = (nowMicros - sentMicros) & 0xFFFFFFFFL;  // binary probes carry 32 bits
+        if (rttMicros > MAX_RTT_MICROS) return;
+
+        echoesReceived++;
+        echoed = true;
+        oldestUnansweredNanos = 0;
+        countLoss(sentMicros & 0xFFFFFFFFL);
+
+        if (rtt.hasSample()) {
+            jitterMicros16 += Math.abs(rttMicros - lastRttMicros) - ((jitterMicros16 + 8) >> 4);
+        }
+        lastRttMicros = rttMicros;
+        rtt.addSample(rttMicros * 1000);
+        window[samples++ % PERCENTILE_WINDOW] = rttMicros;
+    }
+
+    // Resolves the probes up to the echoed one: it arrived, earlier unechoed ones are lost
+    private void countLoss(long timestamp) {
+        for (long n = probesSent - 1; n >= firstUnresolvedProbe; n--) {
+            int slot = (int) (n % PROBE_HISTORY);
+            if (probeTimestamps[slot] != timestamp) continue;
+
+            probeEchoed[slot] = true;
+            for (long m = firstUnresolvedProbe; m <= n; m++) {
+                boolean lost = !probeEchoed[(int) (m % PROBE_HISTORY)];
+                loss += ((lost ? 1 : 0) - loss) / 32;
+            }
+            firstUnresolvedProbe = n + 1;
+            return;
+        }
+    }
+
+    // True once the desktop has echoed a probe, so it understands them
+    public synchronized boolean hasEcho() {
+        return echoed;
+    }
+
+    // Desktops that never echo only need a keep-alive, so probe slowly until one does
+    public synchronized long getProbeIntervalNanos() {
+        return echoed ? PROBE_INTERVAL_NANOS : UNCONFIRMED_PROBE_INTERVAL_NANOS;
+    }
+
+    public synchronized int getState(long nowNanos) {
+        if (!echoed) return UNKNOWN;
+        if (oldestUnansweredNanos == 0) return ALIVE;
+
+        long silent = nowNanos - oldestUnansweredNanos;
+        if (silent >= DEAD_AFTER_NANOS) return DEAD;
+        if (silent >= DEGRADED_AFTER_NANOS) return DEGRADED;
+        return ALIVE;
+    }
+
+    public static String stateName(int state) {
+        switch (state) {
+            case ALIVE: return "alive";
+            case DEGRADED: return "degraded";
+            case DEAD: return "dead";
+            default: return "unknown";
+        }
+    }
+
+    // ========== Metrics ==========
+
+    public synchronized long getSmoothedRttMicros() {
+        return rtt.getSmoothedRttNanos() / 1000;
+    }
+
+    public synchronized long getRttVarMicros() {
+        return rtt.getRttVarNanos() / 1000;
+    }
+
+    public synchronized long getJitterMicros() {
+        return jitterMicros16 >> 4;
+    }
+
+    // RTT percentile (0..100) over the recent window, 0 without samples
+    public synchronized long getRttPercentileMicros(int percentile) {
+        int n = Math.min(samples, PERCENTILE_WINDOW);
+        if (n == 0) return 0;
+
+        long[] sorted = Arrays.copyOf(window, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    public synchronized double getLossPercent() {
+        return loss * 100;
+    }
+
+    public synchronized long getProbesSent() {
+        return probesSent;
+    }
+
+    public synchronized long getEchoesReceived() {
+        return echoesReceived;
+    }
+
+    public String metricsSummary() {
+        return "state=" + stateName(getState(System.nanoTime()))
+                + " probes=" + getProbesSent() + " echoes=" + getEchoesReceived()
+                + String.format(java.util.Locale.US, " loss=%.1f%%", getLossPercent())
+                + " srttUs=" + getSmoothedRttMicros() + " jitterUs=" + getJitterMicros()
+                + " p50/p95/p99Us=" + getRttPercentileMicros(50) + "/" + getRttPercentileMicros(95)
+                + "/" + getRttPercentileMicros(99);
+    }
+}
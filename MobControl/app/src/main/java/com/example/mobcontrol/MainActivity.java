@@ -4,14 +4,17 @@ import android.Manifest;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Color;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.text.format.Formatter;
+import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -20,15 +23,11 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.gson.Gson;
 import com.google.zxing.integration.android.IntentIntegrator;
 import com.google.zxing.integration.android.IntentResult;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import android.widget.RelativeLayout;
@@ -42,12 +41,25 @@ public class MainActivity extends AppCompatActivity {
 
     private static final int CAMERA_PERMISSION_CODE = 100;
     private static final int DEFAULT_PORT = 7777;
+    private static final int DISCOVERY_TIMEOUT_MS = 3000;
+    private static final int CANDIDATE_RACE_TIMEOUT_MS = 1500;
 
     private ExecutorService executorService;
     private Handler mainHandler;
-    private Gson gson;
     private AlertDialog progressDialog;
 
+    // Desktops announce themselves; the list is filled while this screen is visible
+    private PresenceListener presenceListener;
+    private WifiManager.MulticastLock multicastLock;
+    private LinearLayout desktopListContainer;
+    private LinearLayout desktopList;
+    private long launchNanos;
+    private boolean firstDesktopLogged;
+
+    // Resume fast path to the last desktop, raced against the normal ways to connect
+    private static final int RESUME_TIMEOUT_MS = 800;
+    private boolean connectStarted;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -57,9 +69,13 @@ public class MainActivity extends AppCompatActivity {
         manualCodeInput = findViewById(R.id.manualCodeInput);
         connectButton = findViewById(R.id.connectButton);
 
+        desktopListContainer = findViewById(R.id.desktopListContainer);
+        desktopList = findViewById(R.id.desktopList);
+
         executorService = Executors.newSingleThreadExecutor();
         mainHandler = new Handler(Looper.getMainLooper());
-        gson = new Gson();
+        launchNanos = System.nanoTime();
+        tryResume();
 
         // Scan QR button with press effect
         scanQRButton.setOnClickListener(v -> {
@@ -96,90 +112,158 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        startPresence();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stopPresence();
+    }
+
     // ==========================================
-    // UDP DISCOVERY SYSTEM
+    // RESUME LAST DESKTOP
     // ==========================================
 
-    private void searchForDesktop(String code) {
-        showProgressDialog("Searching for Desktop...");
+    // Runs beside presence and the buttons; whichever connects first wins
+    private void tryResume() {
+        SessionStore.Endpoint endpoint = SessionStore.getLastEndpoint(this);
+        if (endpoint == null) return;
+        String token = SessionStore.getToken(this);
+        Context app = getApplicationContext();
+
+        new Thread(() -> {
+            ResumeHandshake.Result result = ResumeHandshake.resume(endpoint.host, endpoint.port, token,
+                    android.os.Build.MODEL, RESUME_TIMEOUT_MS);
+            boolean resumed = result.outcome == ResumeHandshake.RESUMED;
+            SessionStore.recordResume(app, resumed);
+            android.util.Log.d("Resume", endpoint.host + ":" + endpoint.port + " -> " + result.outcome
+                    + " rtt=" + result.rttMicros + "us (" + SessionStore.metricsSummary(app) + ")");
+            if (!resumed) return;
+
+            mainHandler.post(() -> {
+                if (connectStarted || isFinishing()) return;
+                android.util.Log.d("Resume", "Resumed " + (System.nanoTime() - launchNanos) / 1_000_000L
+                        + "ms after launch");
+                Toast.makeText(this, "✓ Reconnected to " + endpoint.host, Toast.LENGTH_SHORT).show();
+                startController(endpoint.host, endpoint.port, endpoint.code);
+            });
+        }, "Resume").start();
+    }
+
+    // ==========================================
+    // DESKTOP PRESENCE
+    // ==========================================
+
+    private void startPresence() {
+        // Without the lock most Wi-Fi drivers filter broadcast and multicast beacons
+        WifiManager wifi = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        if (wifi != null) {
+            multicastLock = wifi.createMulticastLock("MobControl presence");
+            multicastLock.setReferenceCounted(false);
+            multicastLock.acquire();
+        }
 
+        PresenceListener listener = new PresenceListener(PresenceListener.PRESENCE_PORT,
+                desktops -> mainHandler.post(() -> showDesktops(desktops)));
+        presenceListener = listener;
         executorService.execute(() -> {
-            DatagramSocket socket = null;
             try {
-                socket = new DatagramSocket();
-                socket.setBroadcast(true);
-                socket.setSoTimeout(3000); // 3 seconds timeout
+                listener.start();
+            } catch (Exception e) {
+                android.util.Log.w("Presence", "Listener failed: " + e.getMessage());
+            }
+        });
+    }
 
-                // Discovery message
-                Map<String, String> msg = new HashMap<>();
-                msg.put("action", "discover");
-                msg.put("code", code);
-                String json = gson.toJson(msg);
-                byte[] sendData = json.getBytes();
+    private void stopPresence() {
+        PresenceListener listener = presenceListener;
+        presenceListener = null;
+        if (listener != null && !executorService.isShutdown()) {
+            // Same executor as start(), so it never runs before it
+            executorService.execute(() -> {
+                listener.stop();
+                android.util.Log.d("Presence", listener.metricsSummary());
+            });
+        }
+        if (multicastLock != null) {
+            multicastLock.release();
+            multicastLock = null;
+        }
+        desktopListContainer.setVisibility(View.GONE);
+    }
 
-                android.util.Log.d("UDP", "=== UDP DISCOVERY ===");
-                android.util.Log.d("UDP", "Code: " + code);
-                android.util.Log.d("UDP", "Message: " + json);
-
-                String foundIP = null;
-
-                // Try multiple times
-                for (int attempt = 0; attempt < 3 && foundIP == null; attempt++) {
-                    android.util.Log.d("UDP", "Attempt " + (attempt + 1) + "/3");
-
-                    try {
-                        // Send to broadcast
-                        InetAddress broadcastAddr = InetAddress.getByName("255.255.255.255");
-                        DatagramPacket sendPacket = new DatagramPacket(
-                                sendData, sendData.length, broadcastAddr, DEFAULT_PORT);
-
-                        socket.send(sendPacket);
-                        android.util.Log.d("UDP", "✓ Sent to 255.255.255.255:7777");
-
-                        // for android studio emulator
-                        try {
-                            InetAddress emulatorAddr = InetAddress.getByName("10.0.2.2");
-                            DatagramPacket emulatorPacket = new DatagramPacket(
-                                    sendData, sendData.length, emulatorAddr, DEFAULT_PORT);
-                            socket.send(emulatorPacket);
-                            android.util.Log.d("UDP", "✓ Sent to 10.0.2.2:7777 (Emulator)");
-                        } catch (Exception e) {
-                            android.util.Log.d("UDP", "Not emulator");
-                        }
+    private void showDesktops(List<PresenceListener.Desktop> desktops) {
+        if (presenceListener == null) return;  // stopped meanwhile
 
-                        // Wait for response
-                        byte[] recvData = new byte[1024];
-                        DatagramPacket recvPacket = new DatagramPacket(recvData, recvData.length);
+        if (!desktops.isEmpty() && !firstDesktopLogged) {
+            firstDesktopLogged = true;
+            android.util.Log.d("Presence", "First desktop " + (System.nanoTime() - launchNanos) / 1_000_000L
+                    + "ms after launch");
+        }
 
-                        socket.receive(recvPacket);
+        desktopList.removeAllViews();
+        for (PresenceListener.Desktop desktop : desktops) {
+            TextView item = new TextView(this);
+            String rtt = desktop.rttMicros >= 0
+                    ? String.format("%.1fms", desktop.rttMicros / 1000f) : "…";
+            item.setText(desktop.name + "\n" + desktop.host + " • " + rtt);
+            item.setTextColor(Color.WHITE);
+            item.setTextSize(14);
+            item.setTypeface(android.graphics.Typeface.MONOSPACE);
+            item.setBackgroundResource(R.drawable.neon_button_secondary);
+            int padding = (int) (12 * getResources().getDisplayMetrics().density);
+            item.setPadding(padding, padding, padding, padding);
+            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT);
+            params.bottomMargin = padding / 2;
+            item.setOnClickListener(v -> connectToKnownDesktop(desktop));
+            desktopList.addView(item, params);
+        }
+        desktopListContainer.setVisibility(desktops.isEmpty() ? View.GONE : View.VISIBLE);
+    }
 
-                        String response = new String(recvPacket.getData(), 0, recvPacket.getLength());
-                        android.util.Log.d("UDP", "✓ Response: " + response);
+    // No discovery round: the address is known, only the pairing code may be missing
+    private void connectToKnownDesktop(PresenceListener.Desktop desktop) {
+        String code = desktop.code;
+        if (code == null) {
+            code = manualCodeInput.getText().toString().trim();
+            if (code.length() != 4 || !code.matches("\\d+")) {
+                Toast.makeText(this, "Enter the 4-digit code shown on " + desktop.name, Toast.LENGTH_SHORT).show();
+                manualCodeInput.requestFocus();
+                return;
+            }
+        }
+        android.util.Log.d("Presence", "Connecting to " + desktop.name + " " + (System.nanoTime() - launchNanos) / 1_000_000L
+                + "ms after launch");
+        connectToDesktop(desktop.host, desktop.port, code);
+    }
 
-                        Map<String, Object> respJson = gson.fromJson(response, Map.class);
+    // ==========================================
+    // UDP DISCOVERY SYSTEM
+    // ==========================================
 
-                        // Check response
-                        if ("discovered".equals(respJson.get("action")) ||
-                                "found".equals(respJson.get("status"))) {
-                            foundIP = recvPacket.getAddress().getHostAddress();
-                            android.util.Log.d("UDP", "✓✓✓ FOUND: " + foundIP);
-                            break;
-                        }
+    private void searchForDesktop(String code) {
+        showProgressDialog("Searching for Desktop...");
 
-                    } catch (java.net.SocketTimeoutException e) {
-                        android.util.Log.w("UDP", "Timeout on attempt " + (attempt + 1));
-                        // Continue to next attempt
-                    } catch (Exception e) {
-                        android.util.Log.w("UDP", "Error: " + e.getMessage());
-                    }
+        executorService.execute(() -> {
+            try {
+                DesktopDiscovery discovery = new DesktopDiscovery(DEFAULT_PORT);
+                // for android studio emulator
+                discovery.addTarget(InetAddress.getByName("10.0.2.2"));
 
-                    // Small delay between attempts
-                    if (foundIP == null && attempt < 2) {
-                        Thread.sleep(500);
-                    }
-                }
+                android.util.Log.d("UDP", "=== UDP DISCOVERY ===");
+                android.util.Log.d("UDP", "Code: " + code);
+
+                DesktopDiscovery.Result result = discovery.discover(code, DISCOVERY_TIMEOUT_MS);
+                android.util.Log.d("UDP", (result.isFound() ? "✓ FOUND: " + result.host + " via " + result.via : "Not found")
+                        + " in " + result.elapsedMicros / 1000 + "ms (targets=" + result.targets
+                        + " replies=" + result.replies + ")");
 
-                final String desktopIP = foundIP;
+                final String desktopIP = result.host;
 
                 mainHandler.post(() -> {
                     dismissProgressDialog();
@@ -200,11 +284,6 @@ public class MainActivity extends AppCompatActivity {
                     dismissProgressDialog();
                     showConnectionError();
                 });
-
-            } finally {
-                if (socket != null && !socket.isClosed()) {
-                    socket.close();
-                }
             }
         });
     }
@@ -234,28 +313,6 @@ public class MainActivity extends AppCompatActivity {
                 .show();
     }
 
-    private String calculateBroadcastAddress() {
-        try {
-            WifiManager wifi = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-            if (wifi != null) {
-                int ipInt = wifi.getConnectionInfo().getIpAddress();
-                if (ipInt != 0) {
-                    String ip = Formatter.formatIpAddress(ipInt);
-                    android.util.Log.d("UDP", "My IP: " + ip);
-
-                    // Calculate .255 broadcast
-                    String[] parts = ip.split("\\.");
-                    if (parts.length == 4) {
-                        return parts[0] + "." + parts[1] + "." + parts[2] + ".255";
-                    }
-                }
-            }
-        } catch (Exception e) {
-            android.util.Log.e("UDP", "Broadcast calc error: " + e.getMessage());
-        }
-        return null;
-    }
-
     private void showError() {
         Toast.makeText(this,
                 "Desktop not found\n\n" +
@@ -311,110 +368,70 @@ public class MainActivity extends AppCompatActivity {
             String qr = result.getContents();
             android.util.Log.d("QR", "Scanned: " + qr);
 
-            String[] parts = qr.split(":");
-
-            if (parts.length >= 3) {
-                try {
-                    String ip = parts[0];
-                    int port = Integer.parseInt(parts[1]);
-                    String code = parts[2];
-
-                    android.util.Log.d("QR", "IP: " + ip + ", Port: " + port + ", Code: " + code);
-
-                    // Show confirmation
-                    new AlertDialog.Builder(this)
-                            .setTitle("QR Code Scanned")
-                            .setMessage(
-                                    "Desktop PC Found!\n\n" +
-                                            "IP: " + ip + "\n" +
-                                            "Port: " + port + "\n" +
-                                            "Code: " + code
-                            )
-                            .setPositiveButton("Connect", (d, w) -> {
-                                // ✅ Send pairing message first
-                                sendPairingMessage(ip, port, code);
-                            })
-                            .setNegativeButton("Cancel", null)
-                            .show();
-
-                } catch (Exception e) {
-                    android.util.Log.e("QR", "Parse error: " + e.getMessage());
-                    Toast.makeText(this, "Invalid QR format", Toast.LENGTH_SHORT).show();
-                }
-            } else {
+            QrPayload payload;
+            try {
+                payload = QrPayload.parse(qr);
+            } catch (IllegalArgumentException e) {
+                android.util.Log.e("QR", "Parse error: " + e.getMessage());
                 Toast.makeText(this, "Invalid QR code", Toast.LENGTH_SHORT).show();
+                return;
             }
+
+            android.util.Log.d("QR", "Hosts: " + payload.hosts + ", Port: " + payload.port + ", Code: " + payload.code);
+
+            // Show confirmation
+            new AlertDialog.Builder(this)
+                    .setTitle("QR Code Scanned")
+                    .setMessage(
+                            "Desktop PC Found!\n\n" +
+                                    "IP: " + android.text.TextUtils.join(", ", payload.hosts) + "\n" +
+                                    "Port: " + payload.port + "\n" +
+                                    "Code: " + payload.code
+                    )
+                    .setPositiveButton("Connect", (d, w) -> {
+                        if (payload.hosts.size() == 1) {
+                            // The controller's session handshake does the pairing
+                            connectToDesktop(payload.hosts.get(0), payload.port, payload.code);
+                        } else {
+                            raceCandidates(payload);
+                        }
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
     }
 
-    // ==========================================
-    // PAIRING MESSAGE (for QR connection)
-    // ==========================================
-
-    private void sendPairingMessage(String ip, int port, String code) {
-        showProgressDialog("Pairing with Desktop...");
+    // All of the desktop's addresses are probed at once; the first to answer is the one
+    // reachable from here, with the lowest RTT
+    private void raceCandidates(QrPayload payload) {
+        showProgressDialog("Finding Desktop...");
 
         executorService.execute(() -> {
-            DatagramSocket socket = null;
+            DesktopDiscovery.Result result = null;
             try {
-                socket = new DatagramSocket();
-                socket.setSoTimeout(3000);
-
-                InetAddress serverAddress = InetAddress.getByName(ip);
-
-                // Pairing message - FIXED FORMAT for Desktop compatibility
-                Map<String, String> pairingMsg = new HashMap<>();
-                pairingMsg.put("action", "pair");           // ✅ Changed: "type":"pairing" → "action":"pair"
-                pairingMsg.put("code", code);
-                pairingMsg.put("deviceName", android.os.Build.MODEL);  // ✅ Changed: device_name → deviceName
-
-                String json = gson.toJson(pairingMsg);
-                byte[] sendData = json.getBytes();
-
-                DatagramPacket sendPacket = new DatagramPacket(
-                        sendData, sendData.length, serverAddress, port);
-
-                socket.send(sendPacket);
-
-
-                android.util.Log.d("QR", "✅ Pairing message sent to " + ip + ":" + port);
-                android.util.Log.d("QR", "   Message: " + json);
-
-                // Wait for response (optional but recommended)
-                byte[] recvData = new byte[1024];
-                DatagramPacket recvPacket = new DatagramPacket(recvData, recvData.length);
-
-                try {
-                    socket.receive(recvPacket);
-                    String response = new String(recvPacket.getData(), 0, recvPacket.getLength());
-                    android.util.Log.d("QR", "✅ Server response: " + response);
-                } catch (java.net.SocketTimeoutException e) {
-                    android.util.Log.w("QR", "⚠️ No response from server (but pairing sent)");
+                DesktopDiscovery race = new DesktopDiscovery(payload.port);
+                race.setInterfaceProbes(false);
+                for (String host : payload.hosts) {
+                    race.addTarget(InetAddress.getByName(host));
                 }
-
-                mainHandler.post(() -> {
-                    dismissProgressDialog();
-                    Toast.makeText(this, "✅ Paired successfully!", Toast.LENGTH_SHORT).show();
-                    connectToDesktop(ip, port, code);
-                });
-
+                result = race.discover(payload.code, CANDIDATE_RACE_TIMEOUT_MS);
             } catch (Exception e) {
-                android.util.Log.e("QR", "❌ Pairing error: " + e.getMessage());
-                e.printStackTrace();
-
-                mainHandler.post(() -> {
-                    dismissProgressDialog();
-                    Toast.makeText(this, "Pairing failed: " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                });
+                android.util.Log.w("QR", "Race failed: " + e.getMessage());
+            }
 
-            } finally {
-                if (socket != null && !socket.isClosed()) {
-                    socket.close();
-                }
+            // Nothing answered (e.g. an older desktop): pair with the first address like before
+            String host = result != null && result.isFound() ? result.host : payload.hosts.get(0);
+            if (result != null) {
+                android.util.Log.d("QR", (result.isFound() ? "✓ " + result.host + " answered" : "No answer")
+                        + " in " + result.elapsedMicros / 1000 + "ms (" + result.targets + " candidates)");
             }
+
+            mainHandler.post(() -> {
+                dismissProgressDialog();
+                connectToDesktop(host, payload.port, payload.code);
+            });
         });
     }
 
@@ -423,8 +440,16 @@ public class MainActivity extends AppCompatActivity {
     // ==========================================
 
     private void connectToDesktop(String ip, int port, String code) {
-        android.util.Log.d("UDP", "Connecting to: " + ip + ":" + port);
+        if (connectStarted) return;
+        SessionStore.recordFallback(this);
         Toast.makeText(this, "Connected! Choose layout", Toast.LENGTH_SHORT).show();
+        startController(ip, port, code);
+    }
+
+    private void startController(String ip, int port, String code) {
+        if (connectStarted) return;
+        connectStarted = true;
+        android.util.Log.d("UDP", "Connecting to: " + ip + ":" + port);
 
         Intent intent = new Intent(this, LayoutSelectionActivity.class);
         intent.putExtra("IP", ip);
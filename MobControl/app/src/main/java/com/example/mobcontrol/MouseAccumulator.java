@@ -0,0 +1,47 @@
+package com.example.mobcontrol;
+
+/**
+ * Sums fractional mouse motion and hands out whole pixels, keeping the remainder.
+ *
+ * Slow motion of less than a pixel per tick still adds up instead of being rounded away,
+ * and the total displacement sent equals the total added (to within one pixel) however
+ * often it is flushed.
+ *
+ * Main thread only.
+ */
+public class MouseAccumulator {
+
+    private float x, y;   // pending motion, pixels
+    private int dx, dy;   // whole pixels of the last flush
+
+    public void add(float dx, float dy) {
+        x += dx;
+        y += dy;
+    }
+
+    /**
+     * Takes the whole pixels accumulated so far; read them with getDx() / getDy().
+     * @return true if there is anything to send
+     */
+    public boolean flush() {
+        dx = (int) x;
+        dy = (int) y;
+        x -= dx;
+        y -= dy;
+        return dx != 0 || dy != 0;
+    }
+
+    public int getDx() {
+        return dx;
+    }
+
+    public int getDy() {
+        return dy;
+    }
+
+    // Drops the sub-pixel remainder
+    public void reset() {
+        x = 0;
+        y = 0;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mobcontrol;
+
+/**
+ * Phone side of the velocity mouse mode (InputProtocol OP_MOUSE_VELOCITY).
+ *
+ * The mouse loops keep computing a pointer velocity every tick, but instead of a rounded
+ * pixel delta per tick the desktop gets the velocity plus the pointer's cumulative position,
+ * and moves the cursor at its own frame rate from those (CursorExtrapolator). An update is
+ * due only when the velocity changed noticeably, when the pointer stops, or every
+ * REFRESH_NANOS while it keeps moving, so a steady drag costs a few packets per second.
+ *
+ * The position is the integral of the velocities sent, so the receiver's extrapolation
+ * matches it exactly until the next change, and any update (even after lost ones) puts
+ * the cursor back on the phone's position.
+ *
+ * Main thread only.
+ */
+public class MouseVelocityTracker {
+
+    public static final long REFRESH_NANOS = 50_000_000L;
+    private static final float MIN_CHANGE_PX_PER_SEC = 8f;
+    private static final float MIN_CHANGE_FRACTION = 0.1f;
+
+    private double x, y;          // pixels
+    private float vx, vy;         // px/s, current
+    private long lastNanos;
+    private boolean started;
+
+    private float sentVx, sentVy;
+    private long sentNanos;
+    private boolean sentMoving;
+
+    // Metrics
+    private long ticks;
+    private long updates;
+
+    /**
+     * Feeds the velocity of this tick.
+     * @return true if an update should be sent now (then call markSent())
+     */
+    public boolean update(float vxPxPerSec, float vyPxPerSec, long nowNanos) {
+        advance(nowNanos);
+        vx = clampVelocity(vxPxPerSec);
+        vy = clampVelocity(vyPxPerSec);
+        ticks++;
+
+        if (vx == 0 && vy == 0) {
+            return sentMoving;  // one update to stop the cursor
+        }
+        return !sentMoving
+                || changed(vx, sentVx) || changed(vy, sentVy)
+                || nowNanos - sentNanos >= REFRESH_NANOS;
+    }
+
+    public void markSent(long nowNanos) {
+        sentVx = vx;
+        sentVy = vy;
+        sentNanos = nowNanos;
+        sentMoving = vx != 0 || vy != 0;
+        updates++;
+    }
+
+    // Integrates the velocity of the previous tick up to now
+    private void advance(long nowNanos) {
+        if (started) {
+            double dt = (nowNanos - lastNanos) / 1e9;
+            x += wireVelocity(vx) * dt;
+            y += wireVelocity(vy) * dt;
+        }
+        lastNanos = nowNanos;
+        started = true;
+    }
+
+    private static boolean changed(float v, float sent) {
+        float change = Math.abs(v - sent);
+        return change >= MIN_CHANGE_PX_PER_SEC && change >= Math.abs(sent) * MIN_CHANGE_FRACTION;
+    }
+
+    private static float clampVelocity(float v) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+    }
+
+    // The receiver only knows the rounded velocity, so integrate that
+    private static int wireVelocity(float v) {
+        return Math.round(v);
+    }
+
+    // Cumulative position in MOUSE_POSITION_SCALE units (wraps around)
+    public int getPositionX() {
+        return (int) Math.round(x * InputProtocol.MOUSE_POSITION_SCALE);
+    }
+
+    public int getPositionY() {
+        return (int) Math.round(y * InputProtocol.MOUSE_POSITION_SCALE);
+    }
+
+    public int getVelocityX() {
+        return wireVelocity(vx);
+    }
+
+    public int getVelocityY() {
+        return wireVelocity(vy);
+    }
+
+    public boolean isMoving() {
+        return sentMoving;
+    }
+
+    public String metricsSummary() {
+        return "ticks=" + ticks + " updates=" + updates;
+    }
+}
@@ -40,6 +40,12 @@ public class OptionsActivity extends AppCompatActivity {
     private Button pingTestButton;
     private TextView pingDisplay;
 
+    // State report rate (Hz, 0 = off)
+    private Button stateReportButton;
+    private Button fecButton;
+    private Button mouseModeButton;
+    private Button touchpadButton;
+
     // Connection info
     private String layoutName;
     private String serverIP;
@@ -79,6 +85,10 @@ public class OptionsActivity extends AppCompatActivity {
         // ✅ Ping Test
         pingTestButton = findViewById(R.id.pingTestButton);
         pingDisplay = findViewById(R.id.pingDisplay);
+        stateReportButton = findViewById(R.id.stateReportButton);
+        fecButton = findViewById(R.id.fecButton);
+        mouseModeButton = findViewById(R.id.mouseModeButton);
+        touchpadButton = findViewById(R.id.touchpadButton);
 
         // Load saved settings
         vibrationSwitch.setChecked(preferences.getBoolean("vibration_enabled", true));
@@ -122,6 +132,54 @@ public class OptionsActivity extends AppCompatActivity {
         // ✅ Ping Test 버튼
         pingTestButton.setOnClickListener(v -> testPing());
 
+        // State reports: cycles OFF -> 125 -> 250 -> 500 Hz
+        updateStateReportButton(preferences.getInt("state_report_hz", 0));
+        stateReportButton.setOnClickListener(v -> {
+            int[] rates = InputProtocol.STATE_REPORT_RATES;
+            int current = preferences.getInt("state_report_hz", 0);
+            int next = rates[0];
+            for (int i = 0; i < rates.length; i++) {
+                if (rates[i] == current) {
+                    next = rates[(i + 1) % rates.length];
+                    break;
+                }
+            }
+            preferences.edit().putInt("state_report_hz", next).apply();
+            updateStateReportButton(next);
+        });
+
+        // Error correction: cycles OFF -> AUTO -> 1 parity per 8 / 4 / 2 frames
+        updateFecButton(preferences.getInt("fec_group", 0));
+        fecButton.setOnClickListener(v -> {
+            int[] sizes = InputProtocol.FEC_GROUP_SIZES;
+            int current = preferences.getInt("fec_group", 0);
+            int next = sizes[0];
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] == current) {
+                    next = sizes[(i + 1) % sizes.length];
+                    break;
+                }
+            }
+            preferences.edit().putInt("fec_group", next).apply();
+            updateFecButton(next);
+        });
+
+        // Mouse mode: per-tick deltas, or velocity updates the desktop extrapolates
+        updateMouseModeButton(preferences.getBoolean("mouse_velocity", false));
+        mouseModeButton.setOnClickListener(v -> {
+            boolean velocity = !preferences.getBoolean("mouse_velocity", false);
+            preferences.edit().putBoolean("mouse_velocity", velocity).apply();
+            updateMouseModeButton(velocity);
+        });
+
+        // Touchpad: smoothed (joystick-like) motion, or raw finger deltas
+        updateTouchpadButton(preferences.getBoolean("touchpad_raw", false));
+        touchpadButton.setOnClickListener(v -> {
+            boolean raw = !preferences.getBoolean("touchpad_raw", false);
+            preferences.edit().putBoolean("touchpad_raw", raw).apply();
+            updateTouchpadButton(raw);
+        });
+
         // Edit Layout button
         editLayoutButton.setOnClickListener(v -> {
             Intent intent = new Intent(this, EditLayoutActivity.class);
@@ -158,7 +216,28 @@ public class OptionsActivity extends AppCompatActivity {
         });
     }
 
+    private void updateStateReportButton(int hz) {
+        stateReportButton.setText(hz > 0 ? hz + " Hz" : "OFF");
+    }
+
+    private void updateFecButton(int groupSize) {
+        if (groupSize == InputProtocol.FEC_AUTO) {
+            fecButton.setText("AUTO");
+        } else {
+            fecButton.setText(groupSize > 0 ? "1/" + groupSize : "OFF");
+        }
+    }
+
+    private void updateMouseModeButton(boolean velocity) {
+        mouseModeButton.setText(velocity ? "VELOCITY" : "DELTA");
+    }
+
+    private void updateTouchpadButton(boolean raw) {
+        touchpadButton.setText(raw ? "RAW" : "SMOOTH");
+    }
+
     // ✅ Ping Test 메서드
+
     private void testPing() {
         pingTestButton.setEnabled(false);
         pingTestButton.setText("...");
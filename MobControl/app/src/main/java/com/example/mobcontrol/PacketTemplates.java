@@ -0,0 +1,66 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-encoded JSON press/release messages for every control of a ControlMap.
+ *
+ * The payload of a control's press or release never changes during a session, so the
+ * JSON wire serializes each one once here instead of building and serializing a map
+ * per key event. Templates are tied to one player number and control-ID mode; the sender
+ * builds a new set when either changes.
+ */
+public class PacketTemplates {
+
+    private final ControlMap map;
+    private final int player;
+    private final boolean controlIds;
+
+    private final byte[][] press = new byte[ControlMap.MAX_ID + 1][];
+    private final byte[][] release = new byte[ControlMap.MAX_ID + 1][];
+
+    public PacketTemplates(ControlMap map, int player, boolean controlIds) {
+        this.map = map;
+        this.player = player;
+        this.controlIds = controlIds;
+
+        Gson gson = new Gson();
+        for (int id = 1; id <= ControlMap.MAX_ID; id++) {
+            String key = map.keyName(id);
+            if (key == null) continue;
+
+            press[id] = gson.toJson(message(id, key, true)).getBytes();
+            release[id] = gson.toJson(message(id, key, false)).getBytes();
+        }
+    }
+
+    // Same fields the sender used to build per event
+    private Map<String, Object> message(int controlId, String key, boolean pressed) {
+        Map<String, Object> message = new HashMap<>();
+        if (controlIds) {
+            message.put("action", "control");
+            message.put("id", controlId);
+        } else {
+            message.put("action", "key");
+            message.put("key", key);
+        }
+        message.put("pressed", pressed);
+        if (player > 0) {
+            message.put("player", player);
+        }
+        return message;
+    }
+
+    // Encoded message for a control, or null if it has none. Callers must not modify it.
+    public byte[] get(int controlId, boolean pressed) {
+        if (controlId <= 0 || controlId > ControlMap.MAX_ID) return null;
+        return pressed ? press[controlId] : release[controlId];
+    }
+
+    public boolean matches(ControlMap map, int player, boolean controlIds) {
+        return this.map == map && this.player == player && this.controlIds == controlIds;
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a list of the desktops on the network from their presence beacons, so the phone
+ * knows them before the user asks to connect.
+ *
+ * Desktops send {"action":"presence","id":...,"name":...,"port":7777} about once a second
+ * to PRESENCE_PORT (broadcast and DesktopDiscovery.MULTICAST_GROUP); a desktop that is open
+ * for pairing adds its "code". Each desktop is pinged ({"action":"presence_ping","t":micros},
+ * answered with a "presence_pong" echoing "t") to measure its RTT, and dropped when its
+ * beacons stop for EXPIRE_NANOS.
+ *
+ * The listener runs its own thread; the Listener is called on it.
+ */
+public class PresenceListener implements Runnable {
+
+    private static final String TAG = "PresenceListener";
+
+    public static final int PRESENCE_PORT = 7778;
+    private static final int DEFAULT_DESKTOP_PORT = 7777;
+    static final long EXPIRE_NANOS = 5_000_000_000L;         // five missed beacons
+    static final long PING_INTERVAL_NANOS = 2_000_000_000L;
+    private static final int MAX_RECEIVE_WAIT_MS = 250;
+
+    public interface Listener {
+        // Sorted by RTT (unmeasured last); an empty list when the last desktop is gone
+        void onDesktopsChanged(List<Desktop> desktops);
+    }
+
+    /**
+     * Snapshot of a desktop, as passed to the Listener.
+     */
+    public static class Desktop {
+        public final String id;
+        public final String name;
+        public final String host;
+        public final int port;
+        public final String code;          // null unless the desktop is open for pairing
+        public final long lastSeenNanos;
+        public final long rttMicros;       // -1 until measured
+
+        Desktop(String id, String name, String host, int port, String code, long lastSeenNanos, long rttMicros) {
+            this.id = id;
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.code = code;
+            this.lastSeenNanos = lastSeenNanos;
+            this.rttMicros = rttMicros;
+        }
+    }
+
+    // Listener thread only
+    private static class Entry {
+        String name;
+        String host;
+        int port;
+        String code;
+        SocketAddress beaconFrom;
+        long lastSeenNanos;
+        long lastPingNanos;
+        final RttEstimator rtt = new RttEstimator(0, 0, Long.MAX_VALUE);
+    }
+
+    private final int port;
+    private final Listener listener;
+    private final Gson gson = new Gson();
+    private final Map<String, Entry> desktops = new LinkedHashMap<>();
+
+    private volatile boolean running = false;
+    private volatile MulticastSocket socket;
+    private Thread thread;
+
+    // Metrics
+    private long beacons;
+
+    public PresenceListener(int port, Listener listener) {
+        this.port = port;
+        this.listener = listener;
+    }
+
+    public void start() throws IOException {
+        if (running) return;
+        MulticastSocket s = new MulticastSocket(port);
+        s.setSoTimeout(MAX_RECEIVE_WAIT_MS);
+        try {
+            s.joinGroup(InetAddress.getByName(DesktopDiscovery.MULTICAST_GROUP));
+        } catch (IOException e) {
+            // No multicast route: broadcast beacons still arrive
+        }
+        socket = s;
+        running = true;
+        thread = new Thread(this, TAG);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        MulticastSocket s = socket;
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    public int getLocalPort() {
+        MulticastSocket s = socket;
+        return s != null ? s.getLocalPort() : -1;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[1024];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        while (running) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                handleDatagram(packet);
+            } catch (SocketTimeoutException e) {
+                // Nothing arrived; fall through to expiry
+            } catch (IOException e) {
+                if (!running) break;
+                android.util.Log.w(TAG, "receive failed: " + e.getMessage());
+            }
+            if (expire(System.nanoTime())) {
+                notifyListener();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleDatagram(DatagramPacket packet) {
+        if (packet.getLength() <= 0 || packet.getData()[0] != '{') return;
+
+        Map<String, Object> message;
+        try {
+            message = gson.fromJson(new String(packet.getData(), 0, packet.getLength(),
+                    StandardCharsets.UTF_8), Map.class);
+        } catch (Exception e) {
+            return;
+        }
+        if (message == null) return;
+
+        long now = System.nanoTime();
+        if (handleMessage(message, packet.getAddress(), packet.getSocketAddress(), now)) {
+            notifyListener();
+        }
+        pingDue(now);
+    }
+
+    /**
+     * Applies a beacon or ping reply.
+     * @return true if the desktop list changed
+     */
+    boolean handleMessage(Map<String, Object> message, InetAddress from, SocketAddress fromSocket, long now) {
+        Object action = message.get("action");
+        if ("presence".equals(action)) {
+            return onBeacon(message, from, fromSocket, now);
+        }
+        if ("presence_pong".equals(action)) {
+            Entry entry = find(fromSocket);
+            Object t = message.get("t");
+            if (entry != null && t instanceof Number) {
+                entry.rtt.addSample(now - ((Number) t).longValue() * 1000);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean onBeacon(Map<String, Object> message, InetAddress from, SocketAddress fromSocket, long now) {
+        String host = from.getHostAddress();
+        int desktopPort = message.get("port") instanceof Number
+                ? ((Number) message.get("port")).intValue() : DEFAULT_DESKTOP_PORT;
+        Object id = message.get("id");
+        String key = id != null ? id.toString() : host + ":" + desktopPort;
+        Object name = message.get("name");
+        Object code = message.get("code");
+
+        Entry entry = desktops.get(key);
+        boolean changed = entry == null;
+        if (entry == null) {
+            entry = new Entry();
+            desktops.put(key, entry);
+        }
+        String newName = name != null ? name.toString() : host;
+        String newCode = code != null ? code.toString() : null;
+        changed |= !newName.equals(entry.name) || !host.equals(entry.host) || desktopPort != entry.port
+                || (newCode == null ? entry.code != null : !newCode.equals(entry.code));
+
+        entry.name = newName;
+        entry.host = host;
+        entry.port = desktopPort;
+        entry.code = newCode;
+        entry.beaconFrom = fromSocket;
+        entry.lastSeenNanos = now;
+        beacons++;
+        return changed;
+    }
+
+    private Entry find(SocketAddress fromSocket) {
+        for (Entry entry : desktops.values()) {
+            if (fromSocket.equals(entry.beaconFrom)) return entry;
+        }
+        return null;
+    }
+
+    // Pings desktops that have no RTT yet or a stale one
+    private void pingDue(long now) {
+        for (Entry entry : desktops.values()) {
+            if (entry.lastPingNanos != 0 && now - entry.lastPingNanos < PING_INTERVAL_NANOS) continue;
+            entry.lastPingNanos = now;
+            byte[] ping = ("{\"action\":\"presence_ping\",\"t\":" + now / 1000 + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+            try {
+                socket.send(new DatagramPacket(ping, ping.length, entry.beaconFrom));
+            } catch (IOException e) {
+                // Next beacon tries again
+            }
+        }
+    }
+
+    /** @return true if a desktop was dropped */
+    boolean expire(long now) {
+        boolean changed = false;
+        Iterator<Entry> it = desktops.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastSeenNanos > EXPIRE_NANOS) {
+                it.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    List<Desktop> snapshot() {
+        List<Desktop> list = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : desktops.entrySet()) {
+            Entry entry = e.getValue();
+            long rtt = entry.rtt.hasSample() ? entry.rtt.getSmoothedRttNanos() / 1000 : -1;
+            list.add(new Desktop(e.getKey(), entry.name, entry.host, entry.port, entry.code,
+                    entry.lastSeenNanos, rtt));
+        }
+        Collections.sort(list, (a, b) -> Long.compare(
+                a.rttMicros < 0 ? Long.MAX_VALUE : a.rttMicros,
+                b.rttMicros < 0 ? Long.MAX_VALUE : b.rttMicros));
+        return list;
+    }
+
+    private void notifyListener() {
+        listener.onDesktopsChanged(snapshot());
+    }
+
+    // Listener thread (or after stop())
+    public String metricsSummary() {
+        return "beacons=" + beacons + " desktops=" + desktops.size();
+    }
+}
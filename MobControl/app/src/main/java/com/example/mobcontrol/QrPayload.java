@@ -0,0 +1,54 @@
+package com.example.mobcontrol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Connection details from the desktop's QR code: "host[,host...]:port:code".
+ *
+ * A desktop with several network adapters lists an address for each, since it can't tell
+ * which one the phone can reach; older desktops put a single host, which parses the same.
+ */
+public class QrPayload {
+
+    public final List<String> hosts;
+    public final int port;
+    public final String code;
+
+    private QrPayload(List<String> hosts, int port, String code) {
+        this.hosts = Collections.unmodifiableList(hosts);
+        this.port = port;
+        this.code = code;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a MobControl QR code
+     */
+    public static QrPayload parse(String text) {
+        String[] parts = text.trim().split(":");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Expected host:port:code");
+        }
+
+        List<String> hosts = new ArrayList<>();
+        for (String host : parts[0].split(",")) {
+            host = host.trim();
+            if (!host.isEmpty() && !hosts.contains(host)) hosts.add(host);
+        }
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("No host");
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad port: " + parts[1]);
+        }
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("Bad port: " + port);
+        }
+        return new QrPayload(hosts, port, parts[2].trim());
+    }
+}
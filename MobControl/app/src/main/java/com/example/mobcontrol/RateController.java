@@ -0,0 +1,128 @@
+package com.example.mobcontrol;
+
+/**
+ * Picks the analog streaming rate (mouse / joystick loops), the PWM steering cycle and the
+ * sender's batch window from measured link quality.
+ *
+ * Rates move between fixed levels. Any congestion signal in an update drops one level
+ * at once; the rate is only raised after RAISE_AFTER_UPDATES clean updates in a row on a
+ * low-RTT link, so a busy network settles on a lower rate instead of oscillating.
+ *
+ * Congestion signals:
+ *  - LinkMonitor reports the link degraded or dead
+ *  - queueing delay (smoothed RTT above the recent minimum) beyond MAX_QUEUE_DELAY_MICROS
+ *  - ReliableChannel retransmissions since the last update
+ *  - the sender's average enqueue-to-wire time beyond MAX_WIRE_DELAY_MICROS (local backlog)
+ *
+ * Main thread only.
+ */
+public class RateController {
+
+    // Analog send interval per level, fastest first
+    private static final int[] ANALOG_INTERVAL_MS = {2, 4, 8, 16, 33};
+    // PWM steering cycle per level: short cycles double the key transitions on the wire
+    private static final int[] PWM_CYCLE_MS = {50, 50, 75, 100, 200};
+    // Longer batch windows conflate more mouse deltas into each datagram
+    private static final int[] BATCH_WINDOW_MICROS = {500, 1000, 1000, 2000, 4000};
+
+    // Fastest rate the phone sends; the desktop may lower it in the session handshake
+    public static final int MAX_RATE_HZ = 1000 / ANALOG_INTERVAL_MS[0];
+
+    private static final int DEFAULT_LEVEL = 3;  // 16ms / 100ms, the old fixed rates
+    private static final int RAISE_AFTER_UPDATES = 10;
+    private static final long MAX_RAISE_RTT_MICROS = 20_000;
+    private static final long MAX_QUEUE_DELAY_MICROS = 10_000;
+    private static final long MAX_WIRE_DELAY_MICROS = 4_000;
+
+    private int level = DEFAULT_LEVEL;
+    private int fastestLevel = 0;  // from the desktop's rate limit
+    private int cleanUpdates;
+    private long lastRetransmissions;
+
+    // Metrics
+    private long raises;
+    private long drops;
+    private String lastReason = "start";
+
+    /**
+     * Feeds one set of measurements (call every ~100ms).
+     * @return true if the level changed
+     */
+    public boolean update(int linkState, long srttMicros, long minRttMicros,
+                          long retransmissions, long wireDelayMicros) {
+        String reason = null;
+        if (linkState == LinkMonitor.DEGRADED || linkState == LinkMonitor.DEAD) {
+            reason = "link " + LinkMonitor.stateName(linkState);
+        } else if (minRttMicros > 0 && srttMicros - minRttMicros > MAX_QUEUE_DELAY_MICROS) {
+            reason = "queueing " + (srttMicros - minRttMicros) + "us";
+        } else if (retransmissions > lastRetransmissions) {
+            reason = "retransmits " + (retransmissions - lastRetransmissions);
+        } else if (wireDelayMicros > MAX_WIRE_DELAY_MICROS) {
+            reason = "backlog " + wireDelayMicros + "us";
+        }
+        lastRetransmissions = retransmissions;
+
+        if (reason != null) {
+            cleanUpdates = 0;
+            if (level < ANALOG_INTERVAL_MS.length - 1) {
+                level++;
+                drops++;
+                lastReason = reason;
+                return true;
+            }
+            return false;
+        }
+
+        // Raising needs a measured, low RTT; without echoes stay where we are
+        boolean fastLink = linkState == LinkMonitor.ALIVE && srttMicros > 0 && srttMicros < MAX_RAISE_RTT_MICROS;
+        if (!fastLink) {
+            cleanUpdates = 0;
+            return false;
+        }
+        if (++cleanUpdates >= RAISE_AFTER_UPDATES && level > fastestLevel) {
+            level--;
+            raises++;
+            cleanUpdates = 0;
+            lastReason = "clean, srtt " + srttMicros + "us";
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Limits the rate to what the desktop accepts (0 = no limit). The slowest level is always
+     * allowed, even if the limit is below it.
+     */
+    public void setMaxRateHz(int hz) {
+        fastestLevel = 0;
+        if (hz > 0) {
+            while (fastestLevel < ANALOG_INTERVAL_MS.length - 1
+                    && 1000 / ANALOG_INTERVAL_MS[fastestLevel] > hz) {
+                fastestLevel++;
+            }
+        }
+        level = Math.max(level, fastestLevel);
+    }
+
+    public int getAnalogIntervalMs() {
+        return ANALOG_INTERVAL_MS[level];
+    }
+
+    public int getAnalogRateHz() {
+        return 1000 / ANALOG_INTERVAL_MS[level];
+    }
+
+    public int getPwmCycleMs() {
+        return PWM_CYCLE_MS[level];
+    }
+
+    public int getBatchWindowMicros() {
+        return BATCH_WINDOW_MICROS[level];
+    }
+
+    public String metricsSummary() {
+        return "rateHz=" + getAnalogRateHz() + " pwmMs=" + getPwmCycleMs()
+                + " batchUs=" + getBatchWindowMicros()
+                + " raises=" + raises + " drops=" + drops + " last=" + lastReason;
+    }
+}
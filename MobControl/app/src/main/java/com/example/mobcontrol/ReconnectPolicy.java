@@ -0,0 +1,121 @@
+package com.example.mobcontrol;
+
+import java.util.Random;
+
+/**
+ * Decides when the session is lost and paces the attempts to re-establish it.
+ *
+ * An outage starts when sends have kept failing (no route, e.g. Wi-Fi roaming) or the
+ * LinkMonitor has reported the link dead for OUTAGE_AFTER_NANOS; a short stall or a single
+ * failed send (one PortUnreachable) doesn't start one. Attempts follow right away, then
+ * with exponential backoff (INITIAL_BACKOFF_NANOS doubling up to MAX_BACKOFF_NANOS, +-20%
+ * jitter so several phones don't retry in step).
+ *
+ * Records each outage's length (link dead to recovered) and time to recover (outage
+ * detected to recovered).
+ *
+ * Main thread only.
+ */
+public class ReconnectPolicy {
+
+    static final long OUTAGE_AFTER_NANOS = 1_500_000_000L;
+    static final long INITIAL_BACKOFF_NANOS = 250_000_000L;
+    static final long MAX_BACKOFF_NANOS = 8_000_000_000L;
+    private static final double JITTER = 0.2;
+
+    private final Random random;
+
+    private long deadSinceNanos;     // link dead or sends failing since, 0 while the link is fine
+    private boolean inOutage;
+    private long detectedNanos;
+    private int attempts;            // in the current outage
+
+    // Metrics
+    private int outages;
+    private int recoveries;
+    private long lastOutageMicros;
+    private long maxOutageMicros;
+    private long lastRecoverMicros;
+    private int lastAttempts;
+
+    public ReconnectPolicy() {
+        this(new Random());
+    }
+
+    ReconnectPolicy(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Feeds one link check.
+     * @return true if an outage starts now: begin reconnecting
+     */
+    public boolean onLinkCheck(boolean linkDead, boolean sendFailing, long nowNanos) {
+        if (inOutage) return false;
+        if (!linkDead && !sendFailing) {
+            deadSinceNanos = 0;
+            return false;
+        }
+
+        if (deadSinceNanos == 0) {
+            deadSinceNanos = nowNanos;
+        }
+        if (nowNanos - deadSinceNanos < OUTAGE_AFTER_NANOS) {
+            return false;
+        }
+
+        inOutage = true;
+        detectedNanos = nowNanos;
+        attempts = 0;
+        outages++;
+        return true;
+    }
+
+    public void onAttempt() {
+        attempts++;
+    }
+
+    // Wait before the next attempt, after "attempts" failed ones
+    public long nextAttemptDelayNanos() {
+        if (attempts == 0) return 0;
+        long base = INITIAL_BACKOFF_NANOS << Math.min(attempts - 1, 16);
+        base = Math.min(base, MAX_BACKOFF_NANOS);
+        double jitter = 1 + JITTER * (2 * random.nextDouble() - 1);
+        return (long) (base * jitter);
+    }
+
+    public void onRecovered(long nowNanos) {
+        if (!inOutage) return;
+        inOutage = false;
+        recoveries++;
+        lastOutageMicros = (nowNanos - deadSinceNanos) / 1000;
+        maxOutageMicros = Math.max(maxOutageMicros, lastOutageMicros);
+        lastRecoverMicros = (nowNanos - detectedNanos) / 1000;
+        lastAttempts = attempts;
+        deadSinceNanos = 0;
+    }
+
+    public boolean isInOutage() {
+        return inOutage;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getLastOutageMicros() {
+        return lastOutageMicros;
+    }
+
+    public long getLastRecoverMicros() {
+        return lastRecoverMicros;
+    }
+
+    public String metricsSummary() {
+        return "outages=" + outages + " recovered=" + recoveries
+                + " lastOutage=" + lastOutageMicros / 1000 + "ms"
+                + " maxOutage=" + maxOutageMicros / 1000 + "ms"
+                + " lastRecover=" + lastRecoverMicros / 1000 + "ms"
+                + " lastAttempts=" + lastAttempts;
+    }
+}
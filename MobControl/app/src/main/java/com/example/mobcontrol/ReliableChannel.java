@@ -0,0 +1,431 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Acknowledged delivery for control messages (pairing, disconnect, player changes, key
+ * releases on the JSON wire) over the session's InputTransport.
+ *
+ * Each message gets an ID ("rid") and is kept until the desktop acknowledges it with an
+ * "ack" list of IDs, either in {"action":"ack","ack":[...]} or piggybacked on any reply.
+ * Unacknowledged messages are retransmitted after an RTO based on measured round trips,
+ * doubling per attempt, and given up after MAX_ATTEMPTS. Mouse and axis traffic never
+ * goes through here.
+ *
+ * Key releases are not idempotent against later presses of the same key: a late
+ * retransmission would release a key the user is holding again. They are sent with a
+ * supersede key, and a later transition for that key (supersede(), or another message
+ * with the same key) drops the pending one.
+ *
+ * The channel also owns the receive side of the socket: every incoming message that is
+ * not a bare ack is passed to the Listener (on the channel thread).
+ */
+public class ReliableChannel implements Runnable {
+
+    private static final String TAG = "ReliableChannel";
+
+    public static final int MAX_ATTEMPTS = 6;
+    private static final int MAX_PENDING = 64;
+    private static final long INITIAL_RTO_NANOS = 200_000_000L;  // until the first RTT sample
+    private static final long MIN_RTO_NANOS = 30_000_000L;
+    private static final long MAX_RTO_NANOS = 1_000_000_000L;
+    private static final int MAX_RECEIVE_WAIT_MS = 100;
+    // Replies can be larger than anything sent, e.g. the original desktop's pairing reply with its button config
+    private static final int RECEIVE_BUFFER_SIZE = 8192;
+
+    /**
+     * Callbacks, called on the channel thread.
+     */
+    public interface Listener {
+        void onMessage(Map<String, Object> message);
+        void onDelivered(long id, Object action);
+        void onDeliveryFailed(long id, Object action);
+    }
+
+    private static class Pending {
+        final long id;
+        final Object action;
+        final byte[] data;
+        final long supersedeKey;  // 0 = never superseded
+        final long firstSentNanos;
+        long deadlineNanos;
+        int attempts;
+
+        Pending(long id, Object action, byte[] data, long supersedeKey, long now) {
+            this.id = id;
+            this.action = action;
+            this.data = data;
+            this.supersedeKey = supersedeKey;
+            this.firstSentNanos = now;
+        }
+    }
+
+    private final InputTransport transport;
+    private final Listener listener;
+    private final Gson gson = new Gson();
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Long, Pending> pending = new LinkedHashMap<>();  // oldest first
+    private final ArrayDeque<Long> failedIds = new ArrayDeque<>();  // recent give-ups, for awaitDelivery()
+    private final RttEstimator rtt = new RttEstimator(INITIAL_RTO_NANOS, MIN_RTO_NANOS, MAX_RTO_NANOS);
+    private long nextId = 1;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // Metrics
+    private volatile long messagesSent;
+    private volatile long messagesAcked;
+    private volatile long retransmissions;
+    private volatile long deliveryFailures;
+    private volatile long supersededCount;
+
+    public ReliableChannel(InputTransport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, TAG);
+        thread.start();
+    }
+
+    // The thread exits within MAX_RECEIVE_WAIT_MS (not interrupted: that would close the socket)
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            for (Pending p : pending.values()) {
+                rememberFailed(p.id);
+            }
+            pending.clear();
+            lock.notifyAll();
+        }
+    }
+
+    // ========== Sending ==========
+
+    /**
+     * Sends a message reliably. Adds the "rid" field to the message.
+     * @return the message ID, for awaitDelivery()
+     */
+    public long send(Map<String, Object> message) {
+        return send(message, 0);
+    }
+
+    // Same, replacing any pending message with the same supersede key (0 = none)
+    public long send(Map<String, Object> message, long supersedeKey) {
+        long id;
+        Pending evicted;
+        synchronized (lock) {
+            removeSuperseded(supersedeKey);
+            id = nextId++;
+            message.put("rid", id);
+            evicted = enqueue(new Pending(id, message.get("action"), gson.toJson(message).getBytes(),
+                    supersedeKey, System.nanoTime()));
+        }
+        notifyFailed(evicted);
+        return id;
+    }
+
+    /**
+     * Sends an already encoded JSON object (e.g. a PacketTemplates entry) reliably.
+     * The "rid" field is spliced in before the closing brace; "json" itself is not modified.
+     */
+    public long sendEncoded(byte[] json, Object action) {
+        return sendEncoded(json, json.length, action);
+    }
+
+    // Same, for the first "length" bytes of "json" (which is copied, so the caller may reuse it)
+    public long sendEncoded(byte[] json, int length, Object action) {
+        return sendEncoded(json, length, action, 0);
+    }
+
+    public long sendEncoded(byte[] json, int length, Object action, long supersedeKey) {
+        long id;
+        Pending evicted;
+        synchronized (lock) {
+            removeSuperseded(supersedeKey);
+            id = nextId++;
+            byte[] rid = (",\"rid\":" + id + "}").getBytes();
+            byte[] data = new byte[length - 1 + rid.length];
+            System.arraycopy(json, 0, data, 0, length - 1);
+            System.arraycopy(rid, 0, data, length - 1, rid.length);
+            evicted = enqueue(new Pending(id, action, data, supersedeKey, System.nanoTime()));
+        }
+        notifyFailed(evicted);
+        return id;
+    }
+
+    /**
+     * Drops the pending message with this supersede key, if any: a newer transition for the
+     * same key was sent (e.g. a press after a release), so retransmitting it would be wrong.
+     */
+    public void supersede(long supersedeKey) {
+        if (supersedeKey == 0) return;
+        synchronized (lock) {
+            if (removeSuperseded(supersedeKey)) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Caller holds the lock. awaitDelivery() reports dropped messages as not delivered.
+    private boolean removeSuperseded(long supersedeKey) {
+        if (supersedeKey == 0) return false;
+        boolean removed = false;
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            if (p.supersedeKey == supersedeKey) {
+                it.remove();
+                rememberFailed(p.id);
+                supersededCount++;
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    // Caller holds the lock. Returns the oldest message if it had to make room, for notifyFailed().
+    private Pending enqueue(Pending p) {
+        Pending evicted = null;
+        if (pending.size() >= MAX_PENDING) {
+            Iterator<Pending> oldest = pending.values().iterator();
+            evicted = oldest.next();
+            oldest.remove();
+            markFailed(evicted);
+            lock.notifyAll();
+        }
+        pending.put(p.id, p);
+        transmit(p);
+        messagesSent++;
+        return evicted;
+    }
+
+    // Sends without acknowledgement (used where a retransmission would be stale, e.g. pings)
+    public boolean sendUnreliable(Map<String, Object> message) {
+        byte[] data = gson.toJson(message).getBytes();
+        return transport.send(data, 0, data.length);
+    }
+
+    /**
+     * Blocks until the message is acknowledged, given up, or the timeout expires.
+     * @return true if the desktop acknowledged it
+     */
+    public boolean awaitDelivery(long id, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        synchronized (lock) {
+            while (pending.containsKey(id)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                lock.wait(Math.max(1, remaining / 1_000_000L));
+            }
+            return id < nextId && !failedIds.contains(id);
+        }
+    }
+
+    // Caller holds the lock
+    private void markFailed(Pending p) {
+        deliveryFailures++;
+        rememberFailed(p.id);
+    }
+
+    // Caller must not hold the lock: the listener may call back into the channel
+    private void notifyFailed(Pending p) {
+        if (p == null) return;
+        android.util.Log.w(TAG, "Gave up on message " + p.id + " (" + p.action + ") after " + p.attempts + " attempts");
+        listener.onDeliveryFailed(p.id, p.action);
+    }
+
+    private void rememberFailed(long id) {
+        failedIds.addLast(id);
+        if (failedIds.size() > MAX_PENDING) {
+            failedIds.pollFirst();
+        }
+    }
+
+    // Caller holds the lock
+    private void transmit(Pending p) {
+        p.attempts++;
+        p.deadlineNanos = System.nanoTime() + rtt.getBackoffRtoNanos(p.attempts);
+        transport.send(p.data, 0, p.data.length);
+    }
+
+    // ========== Channel thread ==========
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[RECEIVE_BUFFER_SIZE];
+
+        while (running) {
+            try {
+                int length = transport.receive(buffer, receiveWaitMillis());
+                handleDatagram(buffer, length);
+            } catch (SocketTimeoutException e) {
+                // Nothing arrived; fall through to retransmit
+            } catch (Exception e) {
+                if (!running) break;
+                android.util.Log.w(TAG, "receive failed: " + e.getMessage());
+                try {
+                    Thread.sleep(MAX_RECEIVE_WAIT_MS);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+            retransmitDue();
+        }
+    }
+
+    private int receiveWaitMillis() {
+        synchronized (lock) {
+            long wait = MAX_RECEIVE_WAIT_MS * 1_000_000L;
+            long now = System.nanoTime();
+            for (Pending p : pending.values()) {
+                wait = Math.min(wait, p.deadlineNanos - now);
+            }
+            // 0 would mean "wait forever" for setSoTimeout
+            return (int) Math.max(1, wait / 1_000_000L);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleDatagram(byte[] data, int length) {
+        if (length <= 0 || data[0] != '{') return;
+
+        Map<String, Object> message;
+        try {
+            message = gson.fromJson(new String(data, 0, length), Map.class);
+        } catch (Exception e) {
+            android.util.Log.w(TAG, "Bad message: " + e.getMessage());
+            return;
+        }
+        if (message == null) return;
+
+        Object ack = message.get("ack");
+        if (ack instanceof List) {
+            handleAck((List<Object>) ack);
+        }
+
+        if (!"ack".equals(message.get("action"))) {
+            listener.onMessage(message);
+        }
+    }
+
+    private void handleAck(List<Object> ids) {
+        long now = System.nanoTime();
+        List<Pending> delivered = new ArrayList<>();
+        synchronized (lock) {
+            for (Object value : ids) {
+                if (!(value instanceof Number)) continue;
+
+                Pending p = pending.remove(((Number) value).longValue());
+                if (p == null) continue;  // duplicate ack
+
+                // Karn's rule: only unambiguous (first transmission) round trips are sampled
+                if (p.attempts == 1) {
+                    rtt.addSample(now - p.firstSentNanos);
+                }
+                messagesAcked++;
+                delivered.add(p);
+            }
+            lock.notifyAll();
+        }
+
+        for (Pending p : delivered) {
+            listener.onDelivered(p.id, p.action);
+        }
+    }
+
+    private void retransmitDue() {
+        List<Pending> failed = null;
+        long now = System.nanoTime();
+
+        synchronized (lock) {
+            Iterator<Pending> it = pending.values().iterator();
+            while (it.hasNext()) {
+                Pending p = it.next();
+                if (now - p.deadlineNanos < 0) continue;
+
+                if (p.attempts >= MAX_ATTEMPTS) {
+                    it.remove();
+                    if (failed == null) failed = new ArrayList<>();
+                    failed.add(p);
+                } else {
+                    transmit(p);
+                    retransmissions++;
+                }
+            }
+            if (failed != null) {
+                for (Pending p : failed) {
+                    markFailed(p);
+                }
+                lock.notifyAll();
+            }
+        }
+
+        // Like handleAck(), the listener runs outside the lock
+        if (failed != null) {
+            for (Pending p : failed) {
+                notifyFailed(p);
+            }
+        }
+    }
+
+    // ========== Metrics ==========
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    public long getSmoothedRttMicros() {
+        synchronized (lock) {
+            return rtt.getSmoothedRttNanos() / 1000;
+        }
+    }
+
+    public long getRtoMicros() {
+        synchronized (lock) {
+            return rtt.getRtoNanos() / 1000;
+        }
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getMessagesAcked() {
+        return messagesAcked;
+    }
+
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    public long getDeliveryFailures() {
+        return deliveryFailures;
+    }
+
+    public long getSuperseded() {
+        return supersededCount;
+    }
+
+    public String metricsSummary() {
+        return "sent=" + messagesSent + " acked=" + messagesAcked
+                + " retransmits=" + retransmissions + " failed=" + deliveryFailures
+                + " superseded=" + supersededCount
+                + " pending=" + getPendingCount()
+                + " srttUs=" + getSmoothedRttMicros() + " rtoUs=" + getRtoMicros();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reconnects to the last desktop in one round trip, skipping discovery and the code.
+ *
+ * Sends {"action":"resume","session":token,"deviceName":...} straight to the saved endpoint
+ * (SessionStore). A desktop that knows the token from an earlier pairing answers
+ * {"action":"resumed"}; one that doesn't (restarted, other phone connected) answers
+ * {"action":"resume_rejected"}, and older desktops don't answer at all. The request is
+ * repeated once in case it is lost.
+ *
+ * Blocking; call off the main thread.
+ */
+public class ResumeHandshake {
+
+    public static final int RESUMED = 0;
+    public static final int REJECTED = 1;
+    public static final int NO_ANSWER = 2;
+
+    // Send times of the requests, from the start
+    private static final long[] SEND_AT_MILLIS = {0, 300};
+
+    public static class Result {
+        public final int outcome;
+        public final long rttMicros;  // from the last request sent, -1 without an answer
+
+        Result(int outcome, long rttMicros) {
+            this.outcome = outcome;
+            this.rttMicros = rttMicros;
+        }
+    }
+
+    private static final Gson gson = new Gson();
+
+    @SuppressWarnings("unchecked")
+    public static Result resume(String host, int port, String token, String deviceName, int timeoutMillis) {
+        Map<String, Object> msg = new HashMap<>();
+        msg.put("action", "resume");
+        msg.put("session", token);
+        msg.put("deviceName", deviceName);
+        byte[] request = gson.toJson(msg).getBytes(StandardCharsets.UTF_8);
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(InetAddress.getByName(host), port);
+            byte[] buffer = new byte[1024];
+            DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+
+            long start = System.nanoTime();
+            long sentAt = start;
+            int sends = 0;
+            while (true) {
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+                if (elapsedMillis >= timeoutMillis) break;
+                if (sends < SEND_AT_MILLIS.length && SEND_AT_MILLIS[sends] <= elapsedMillis) {
+                    sentAt = System.nanoTime();
+                    socket.send(new DatagramPacket(request, request.length));
+                    sends++;
+                }
+                long wakeAt = sends < SEND_AT_MILLIS.length
+                        ? Math.min(timeoutMillis, SEND_AT_MILLIS[sends]) : timeoutMillis;
+                socket.setSoTimeout((int) Math.max(1, wakeAt - elapsedMillis));
+
+                try {
+                    reply.setLength(buffer.length);
+                    socket.receive(reply);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+
+                Map<String, Object> json;
+                try {
+                    json = gson.fromJson(new String(buffer, 0, reply.getLength(), StandardCharsets.UTF_8), Map.class);
+                } catch (Exception e) {
+                    continue;
+                }
+                if (json == null) continue;
+                long rtt = (System.nanoTime() - sentAt) / 1000;
+                if ("resumed".equals(json.get("action"))) return new Result(RESUMED, rtt);
+                if ("resume_rejected".equals(json.get("action"))) return new Result(REJECTED, rtt);
+            }
+        } catch (IOException e) {
+            // Unreachable (other network, desktop off): same as no answer
+        }
+        return new Result(NO_ANSWER, -1);
+    }
+}
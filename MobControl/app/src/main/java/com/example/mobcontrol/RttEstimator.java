@@ -0,0 +1,70 @@
+package com.example.mobcontrol;
+
+/**
+ * Round-trip time estimate and retransmission timeout (RFC 6298 style):
+ * smoothed RTT with 1/8 gain, RTT variance with 1/4 gain, RTO = SRTT + 4 * RTTVAR,
+ * clamped to [minRto, maxRto].
+ *
+ * Not thread safe; callers synchronize.
+ */
+public class RttEstimator {
+
+    private final long initialRtoNanos;
+    private final long minRtoNanos;
+    private final long maxRtoNanos;
+
+    private boolean hasSample;
+    private long srttNanos;
+    private long rttvarNanos;
+    private long lastSampleNanos;
+
+    public RttEstimator(long initialRtoNanos, long minRtoNanos, long maxRtoNanos) {
+        this.initialRtoNanos = initialRtoNanos;
+        this.minRtoNanos = minRtoNanos;
+        this.maxRtoNanos = maxRtoNanos;
+    }
+
+    public void addSample(long rttNanos) {
+        if (rttNanos < 0) return;
+
+        lastSampleNanos = rttNanos;
+        if (!hasSample) {
+            srttNanos = rttNanos;
+            rttvarNanos = rttNanos / 2;
+            hasSample = true;
+        } else {
+            rttvarNanos += (Math.abs(srttNanos - rttNanos) - rttvarNanos) / 4;
+            srttNanos += (rttNanos - srttNanos) / 8;
+        }
+    }
+
+    public long getRtoNanos() {
+        if (!hasSample) return initialRtoNanos;
+        return Math.max(minRtoNanos, Math.min(maxRtoNanos, srttNanos + 4 * rttvarNanos));
+    }
+
+    // RTO for the given attempt (1 = first transmission), doubled per retransmission
+    public long getBackoffRtoNanos(int attempt) {
+        long rto = getRtoNanos();
+        for (int i = 1; i < attempt && rto < maxRtoNanos; i++) {
+            rto *= 2;
+        }
+        return Math.min(rto, maxRtoNanos);
+    }
+
+    public boolean hasSample() {
+        return hasSample;
+    }
+
+    public long getSmoothedRttNanos() {
+        return srttNanos;
+    }
+
+    public long getRttVarNanos() {
+        return rttvarNanos;
+    }
+
+    public long getLastSampleNanos() {
+        return lastSampleNanos;
+    }
+}
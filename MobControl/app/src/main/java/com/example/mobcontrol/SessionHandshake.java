@@ -0,0 +1,153 @@
+package com.example.mobcontrol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The one message that opens a session, and what the desktop agreed to in its reply.
+ *
+ * The phone sends a hello with everything it can do: protocol version, wire codecs in order
+ * of preference, the highest input rate it will send and its optional features. A current
+ * desktop answers in the same round trip:
+ *
+ *   {"action":"hello_ack","v":2,"codec":"binary1","max_rate_hz":250,
+ *    "features":["state_reports","acks"],"session":"..."}
+ *
+ * The hello also carries the old pairing fields ("action":"pair", "code", "deviceName"), so
+ * desktops from before the handshake still pair from it. Their replies map to a legacy
+ * Agreement with no optional features: {"codec":...} from desktops that negotiate only the
+ * codec, "pair_success" or {"status":"connected","buttons":...} from the original ones.
+ * A desktop that only acks the hello gets legacy JSON (NO_REPLY).
+ *
+ * Features are switched on per session only if the desktop lists them; new ones are added
+ * here and ignored by desktops that don't know them.
+ */
+public class SessionHandshake {
+
+    public static final int PROTOCOL_VERSION = 2;  // 1 = the separate pair / pairing messages
+
+    // Optional features, negotiated by name
+    public static final String FEATURE_STATE_REPORTS = "state_reports";
+    public static final String FEATURE_FEC = "fec";
+    public static final String FEATURE_ACKS = "acks";  // ReliableChannel acknowledgements
+
+    static final List<String> CODECS = Collections.unmodifiableList(Arrays.asList(
+            InputProtocol.CODEC_BINARY_AXIS, InputProtocol.CODEC_BINARY, InputProtocol.CODEC_JSON));
+    static final List<String> FEATURES = Collections.unmodifiableList(Arrays.asList(
+            FEATURE_STATE_REPORTS, FEATURE_FEC, FEATURE_ACKS));
+
+    /** What the desktop agreed to; immutable. */
+    public static class Agreement {
+        public final boolean accepted;    // false: wrong pairing code
+        public final int version;         // 1 for desktops without the handshake
+        public final String codec;
+        public final int maxRateHz;       // 0 = no limit from the desktop
+        public final String sessionId;    // desktop's id for this session, null from legacy desktops
+        private final Set<String> features;
+
+        Agreement(boolean accepted, int version, String codec, int maxRateHz,
+                  Set<String> features, String sessionId) {
+            this.accepted = accepted;
+            this.version = version;
+            this.codec = codec;
+            this.maxRateHz = maxRateHz;
+            this.features = Collections.unmodifiableSet(features);
+            this.sessionId = sessionId;
+        }
+
+        public boolean has(String feature) {
+            return features.contains(feature);
+        }
+
+        // Legacy desktops never listed features, so none are switched on; only the codec applies
+        static Agreement legacy(String codec) {
+            return new Agreement(true, 1, codec, 0, new HashSet<String>(), null);
+        }
+
+        public boolean isLegacy() {
+            return version < PROTOCOL_VERSION;
+        }
+
+        @Override
+        public String toString() {
+            if (!accepted) return "rejected";
+            return "v" + version + " codec=" + codec + " maxRateHz=" + maxRateHz
+                    + " features=" + features + " session=" + sessionId;
+        }
+    }
+
+    // Until a reply arrives, and for desktops that never reply
+    public static final Agreement NO_REPLY = Agreement.legacy(InputProtocol.CODEC_JSON);
+
+    /**
+     * The hello. "resume" marks a re-pairing of the same session after an outage.
+     */
+    public static Map<String, Object> hello(String code, String deviceName, String sessionToken,
+                                            boolean resume, int maxRateHz) {
+        Map<String, Object> msg = new HashMap<>();
+        msg.put("action", "pair");
+        msg.put("type", "pairing");
+        msg.put("v", PROTOCOL_VERSION);
+        msg.put("code", code);
+        msg.put("deviceName", deviceName);
+        msg.put("device_name", deviceName);
+        msg.put("session", sessionToken);
+        msg.put("codecs", CODECS);
+        msg.put("max_rate_hz", maxRateHz);
+        msg.put("features", FEATURES);
+        if (resume) {
+            msg.put("resume", true);
+        }
+        return msg;
+    }
+
+    /**
+     * @return the agreement in a reply to the hello, or null if the message is something else
+     */
+    public static Agreement parseReply(Map<String, Object> message) {
+        Object action = message.get("action");
+        Object codec = message.get("codec");
+
+        if ("hello_ack".equals(action)) {
+            String agreedCodec = codec != null && CODECS.contains(codec.toString())
+                    ? codec.toString() : InputProtocol.CODEC_JSON;
+            Set<String> features = new HashSet<>();
+            Object listed = message.get("features");
+            if (listed instanceof List) {
+                for (Object feature : (List<?>) listed) {
+                    // Only what was offered: a desktop can't switch on something unknown here
+                    if (FEATURES.contains(String.valueOf(feature))) features.add(String.valueOf(feature));
+                }
+            }
+            Object session = message.get("session");
+            return new Agreement(true, intField(message, "v", PROTOCOL_VERSION), agreedCodec,
+                    intField(message, "max_rate_hz", 0), features,
+                    session != null ? session.toString() : null);
+        }
+        if ("pair_failed".equals(action) || "hello_rejected".equals(action)) {
+            return new Agreement(false, 1, InputProtocol.CODEC_JSON, 0, new HashSet<String>(), null);
+        }
+        if ("pair_success".equals(action)) {
+            return Agreement.legacy(codec != null ? codec.toString() : InputProtocol.CODEC_JSON);
+        }
+        if (codec != null) {
+            return Agreement.legacy(codec.toString());
+        }
+        // Original desktop's pairing reply, which also carries its button config
+        if ("connected".equals(message.get("status"))) {
+            return Agreement.legacy(InputProtocol.CODEC_JSON);
+        }
+        return null;
+    }
+
+    // Gson reads JSON numbers as doubles
+    private static int intField(Map<String, Object> message, String key, int fallback) {
+        Object value = message.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : fallback;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.mobcontrol;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.SecureRandom;
+
+/**
+ * The last desktop this phone paired with, and the phone's session token, for the resume
+ * fast path (ResumeHandshake). The token goes with every pairing message, so the desktop
+ * can recognize the phone later without a new code.
+ *
+ * Also counts how often the fast path worked, across launches.
+ */
+public class SessionStore {
+
+    private static final String PREFS_NAME = "Session";
+    private static final String KEY_TOKEN = "token";
+    private static final String KEY_HOST = "host";
+    private static final String KEY_PORT = "port";
+    private static final String KEY_CODE = "code";
+    private static final String KEY_RESUME_ATTEMPTS = "resume_attempts";
+    private static final String KEY_RESUME_SUCCESSES = "resume_successes";
+    private static final String KEY_FALLBACKS = "fallbacks";
+
+    public static class Endpoint {
+        public final String host;
+        public final int port;
+        public final String code;
+
+        Endpoint(String host, int port, String code) {
+            this.host = host;
+            this.port = port;
+            this.code = code;
+        }
+    }
+
+    // Created on first use, then kept
+    public static synchronized String getToken(Context context) {
+        SharedPreferences prefs = prefs(context);
+        String token = prefs.getString(KEY_TOKEN, null);
+        if (token == null) {
+            byte[] bytes = new byte[16];
+            new SecureRandom().nextBytes(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bytes) sb.append(String.format("%02x", b));
+            token = sb.toString();
+            prefs.edit().putString(KEY_TOKEN, token).apply();
+        }
+        return token;
+    }
+
+    // Null if this phone never paired
+    public static Endpoint getLastEndpoint(Context context) {
+        SharedPreferences prefs = prefs(context);
+        String host = prefs.getString(KEY_HOST, null);
+        if (host == null) return null;
+        return new Endpoint(host, prefs.getInt(KEY_PORT, 0), prefs.getString(KEY_CODE, null));
+    }
+
+    // After pairing succeeded
+    public static void saveEndpoint(Context context, String host, int port, String code) {
+        prefs(context).edit()
+                .putString(KEY_HOST, host)
+                .putInt(KEY_PORT, port)
+                .putString(KEY_CODE, code)
+                .apply();
+    }
+
+    // ========== Metrics ==========
+
+    public static void recordResume(Context context, boolean success) {
+        SharedPreferences prefs = prefs(context);
+        SharedPreferences.Editor editor = prefs.edit()
+                .putInt(KEY_RESUME_ATTEMPTS, prefs.getInt(KEY_RESUME_ATTEMPTS, 0) + 1);
+        if (success) {
+            editor.putInt(KEY_RESUME_SUCCESSES, prefs.getInt(KEY_RESUME_SUCCESSES, 0) + 1);
+        }
+        editor.apply();
+    }
+
+    // A connection made through discovery, the desktop list or a QR code
+    public static void recordFallback(Context context) {
+        SharedPreferences prefs = prefs(context);
+        prefs.edit().putInt(KEY_FALLBACKS, prefs.getInt(KEY_FALLBACKS, 0) + 1).apply();
+    }
+
+    public static String metricsSummary(Context context) {
+        SharedPreferences prefs = prefs(context);
+        int attempts = prefs.getInt(KEY_RESUME_ATTEMPTS, 0);
+        int successes = prefs.getInt(KEY_RESUME_SUCCESSES, 0);
+        int fallbacks = prefs.getInt(KEY_FALLBACKS, 0);
+        return "resume=" + successes + "/" + attempts
+                + (attempts > 0 ? " (" + (successes * 100 / attempts) + "%)" : "")
+                + " fallback=" + fallbacks;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
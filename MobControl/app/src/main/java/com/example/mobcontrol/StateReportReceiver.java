@@ -0,0 +1,69 @@
+package com.example.mobcontrol;
+
+/**
+ * Receiving side of state report mode (used by tests and as a reference for the desktop).
+ *
+ * Every report carries the complete controller state, so the receiver only has to keep
+ * the newest one: reports that arrive late or out of order are dropped, and a lost report
+ * is repaired by the next one.
+ */
+public class StateReportReceiver {
+
+    private GamepadState current = new GamepadState();
+    private boolean hasReport;
+    private int lastSeq;
+
+    private long acceptedReports;
+    private long droppedReports;
+    private long lostReports;  // gaps in the sequence, i.e. reports that never arrived (or not yet)
+
+    /**
+     * Applies a report if it is newer than the last one.
+     * @return true if the report was applied, false if it was stale and dropped
+     */
+    public boolean onReport(int seq, GamepadState state) {
+        if (hasReport && !InputProtocol.isNewer(seq, lastSeq)) {
+            droppedReports++;
+            return false;
+        }
+
+        if (hasReport) {
+            lostReports += (seq - lastSeq) - 1;
+        }
+        current = state;
+        lastSeq = seq;
+        hasReport = true;
+        acceptedReports++;
+        return true;
+    }
+
+    // Forgets the sequence (new session: the controller restarts its counter)
+    public void reset() {
+        current = new GamepadState();
+        hasReport = false;
+    }
+
+    public GamepadState getState() {
+        return current;
+    }
+
+    public boolean hasReport() {
+        return hasReport;
+    }
+
+    public int getLastSeq() {
+        return lastSeq;
+    }
+
+    public long getAcceptedReports() {
+        return acceptedReports;
+    }
+
+    public long getDroppedReports() {
+        return droppedReports;
+    }
+
+    public long getLostReports() {
+        return lostReports;
+    }
+}
@@ -13,6 +13,7 @@ import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
@@ -24,13 +25,13 @@ import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.gson.Gson;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class UniversalControllerActivity extends AppCompatActivity {
 
@@ -43,7 +44,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private String deviceName;
     private String layoutName;
 
-    private DatagramSocket udpSocket;
+    private InputTransport transport;
     private boolean isConnected = false;
     private ExecutorService executorService;
     private Handler mainHandler;
@@ -58,8 +59,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private LayoutData currentLayout;
 
     // PWM for Racing
-    private Handler pwmHandler = new Handler(Looper.getMainLooper());
-    private Runnable pwmRunnable;
+    private InputTickScheduler.Task pwmTask;
     private boolean isPWMActive = false;
     private boolean isLeftPressed = false;
     private boolean isRightPressed = false;
@@ -68,7 +68,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private static final float GYRO_DEADZONE = 8.0f;
 
     private static final float MAX_ANGLE = 30.0f;
-    private static final int PWM_CYCLE_MS = 100;
+    private static final int PWM_TICKS_PER_CYCLE = 10;  // cycle length comes from rateController
 
     // key status for flight
     private boolean isWPressed = false;
@@ -91,6 +91,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
     // For Mouse
     private float lastTouchX, lastTouchY;
+    private long lastTouchNanos;
     private boolean isMouseDragging = false;
     // Smooth mouse movement
     private float velocityX = 0;
@@ -99,10 +100,26 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private static final float MAX_SPEED = 2.0f;
     private static final float MOUSE_DEADZONE = 0.1f;
 
-    private Handler mouseHandler = new Handler();
-    private static final int MOUSE_INTERVAL_MS = 16;  // 60fps
+    private static final float MOUSE_FRAME_MS = 16f;  // mouse speeds are per 16ms frame
+    private final MouseAccumulator mouseAccumulator = new MouseAccumulator();
     private boolean isMouseActive = false;
 
+    // Touchpad: smoothed motion advanced on display frames (Choreographer), or raw finger deltas
+    private boolean touchpadRaw;  // Options "touchpad_raw"
+    private static final float TOUCHPAD_RAW_GAIN = 1.5f;  // cursor pixels per finger pixel
+    private static final long MOUSE_FLUSH_SLACK_NANOS = 4_000_000L;  // flush on the frame nearest the interval
+    private long lastMouseFrameNanos;
+    private long lastMouseFlushNanos;
+    private InputTickScheduler.Task touchpadTask;
+
+    // Velocity mouse (Options "mouse_velocity"): the desktop moves the cursor from velocity updates
+    private boolean velocityMouse;
+    private final MouseVelocityTracker mouseVelocity = new MouseVelocityTracker();
+    private static final int MOUSE_STOP_REPEATS = 2;  // a lost stop update would leave the cursor drifting
+    private static final int MOUSE_STOP_REPEAT_MS = 20;
+    private int mouseStopRepeatsLeft;
+    private InputTickScheduler.Task mouseStopTask;
+
     private LinearLayout centerContainer;
     private RelativeLayout  calibrateButton;
 
@@ -110,8 +127,55 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private android.os.Vibrator vibrator;
     private android.content.SharedPreferences preferences;
 
-    private Handler heartbeatHandler = new Handler();
-    private static final int HEARTBEAT_INTERVAL_MS = 3000; // 3seconds
+    // The sender probes the desktop (echoed heartbeats); this only watches the result
+    private InputTickScheduler.Task linkCheckTask;
+    private static final int LINK_CHECK_INTERVAL_MS = 100;
+    private final LinkMonitor linkMonitor = new LinkMonitor();
+    private int shownLinkState = LinkMonitor.UNKNOWN;
+
+    // Lost sessions are re-established in place, without leaving the controller
+    private final ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+    private InputTickScheduler.Task reconnectTask;
+    private static final int RECONNECT_ACK_TIMEOUT_MS = 1000;
+
+    // Analog loop rate, PWM cycle and batch window, adapted to the link
+    private final RateController rateController = new RateController();
+    private int fecMode;  // Options "fec_group": frames per parity packet, 0 = off, FEC_AUTO
+    private int stateReportHz;  // Options "state_report_hz"
+
+    // Input is queued to a dedicated sender thread; JSON until the desktop accepts binary in the handshake
+    private InputSender inputSender;
+    private int playerNumber = 0;  // 0 = single player
+
+    // What the desktop agreed to in the session handshake; optional features are used only if listed
+    private volatile SessionHandshake.Agreement agreement = SessionHandshake.NO_REPLY;
+    private final BlockingQueue<SessionHandshake.Agreement> handshakeReplies = new LinkedBlockingQueue<>();
+    private static final int HANDSHAKE_REPLY_TIMEOUT_MS = 500;
+
+    // Acknowledged control messages (pairing, disconnect, player changes); also receives desktop replies
+    private ReliableChannel controlChannel;
+    private static final int DISCONNECT_ACK_TIMEOUT_MS = 500;
+    private static final long HELLO_SUPERSEDE_KEY = -1;  // any handshake reply ends the hello's retries
+
+    // Control IDs of the current layout; uploaded once per session, used on the wire once acknowledged
+    private ControlMap controlMap;
+    private volatile ControlMap uploadedControlMap;
+    private static final long CONTROL_MAP_SUPERSEDE_KEY = -2;  // only the latest upload is pending
+
+    // Phone -> desktop clock mapping; input carries its capture time once synced
+    private final ClockSync clockSync = new ClockSync();
+    private static final int CLOCK_SYNC_BURST = 8;            // quick samples after connecting
+    private static final int CLOCK_SYNC_BURST_INTERVAL_MS = 100;
+    private static final int CLOCK_SYNC_INTERVAL_MS = 2000;   // then keep tracking drift
+    private int clockSyncRequests;
+    private InputTickScheduler.Task clockSyncTask;
+
+    // Every periodic input producer runs from this one scheduler, on the main thread: the
+    // producers read view state, and the sender's queue takes a single (main thread) producer
+    private InputTickScheduler inputTicks;
+    private final Runnable inputTimerWake = () -> inputTicks.runTimers(System.nanoTime());
+    private final Choreographer.FrameCallback inputFrameWake = frameTimeNanos -> inputTicks.runFrame(frameTimeNanos);
+    private long inputCaptureNanos;  // time of the touch / sensor event being handled, 0 outside one
 
 
     @Override
@@ -132,7 +196,14 @@ public class UniversalControllerActivity extends AppCompatActivity {
         layoutName = getIntent().getStringExtra("LAYOUT_NAME");
 
         executorService = Executors.newSingleThreadExecutor();
+        transport = new InputTransport(serverIP, serverPort);
+        inputSender = new InputSender(transport, deviceName);
+        controlChannel = new ReliableChannel(transport, controlListener);
+        inputSender.setClockSync(clockSync);
+        inputSender.setLinkMonitor(linkMonitor);
+        inputSender.start();
         mainHandler = new Handler(Looper.getMainLooper());
+        setupInputTicks();
         gson = new Gson();
 
         controllerContainer = findViewById(R.id.controllerContainer);
@@ -180,50 +251,268 @@ public class UniversalControllerActivity extends AppCompatActivity {
         }
 
         setupEmptySpaceMouseControl();
+    }
 
-        if (isConnected) {
-            startHeartbeat();
-        }
+    private void setupInputTicks() {
+        float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+        long frameIntervalNanos = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60f));
+        inputTicks = new InputTickScheduler(new InputTickScheduler.Driver() {
+            @Override
+            public void wakeAt(long nanos) {
+                // Handler delays are whole milliseconds: round up so the task is due when woken
+                long delayMs = (nanos - System.nanoTime() + 999_999L) / 1_000_000L;
+                mainHandler.removeCallbacks(inputTimerWake);
+                mainHandler.postDelayed(inputTimerWake, Math.max(0, delayMs));
+            }
+
+            @Override
+            public void wakeOnFrame() {
+                Choreographer.getInstance().postFrameCallback(inputFrameWake);
+            }
+        }, frameIntervalNanos);
+
+        pwmTask = inputTicks.timer("pwm", this::pwmTick);
+        linkCheckTask = inputTicks.timer("link", this::linkCheckTick);
+        clockSyncTask = inputTicks.timer("clockSync", this::clockSyncTick);
+        reconnectTask = inputTicks.timer("reconnect", this::reconnectTick);
+        mouseStopTask = inputTicks.timer("mouseStop", this::mouseStopTick);
+        touchpadTask = inputTicks.frame("touchpad", this::touchpadTick);
     }
 
-    // Start Heartbeat to capture connection status
-    private void startHeartbeat() {
-        heartbeatHandler.postDelayed(heartbeatRunnable, HEARTBEAT_INTERVAL_MS);
+    // Start watching the link once connected
+    private void startLinkCheck() {
+        inputTicks.start(linkCheckTask, System.nanoTime() + LINK_CHECK_INTERVAL_MS * 1_000_000L);
     }
 
-    // Heartbeat Runnable
-    private Runnable heartbeatRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (isConnected) {
-                sendHeartbeat();
-                heartbeatHandler.postDelayed(this, HEARTBEAT_INTERVAL_MS);
+    private long linkCheckTick(long nowNanos) {
+        if (!isConnected) return InputTickScheduler.STOP;
+
+        int state = linkMonitor.getState(nowNanos);
+        // Sends failing (no route, port unreachable) or silence, for long enough: the session is gone
+        if (reconnectPolicy.onLinkCheck(state == LinkMonitor.DEAD, inputSender.isSendFailing(), nowNanos)) {
+            startReconnect(nowNanos);
+            return InputTickScheduler.STOP;
+        }
+        if (state != shownLinkState) {
+            shownLinkState = state;
+            showLinkState(state);
+        }
+        adaptRate(state);
+        return LINK_CHECK_INTERVAL_MS * 1_000_000L;
+    }
+
+    private void adaptRate(int linkState) {
+        boolean changed = rateController.update(linkState,
+                linkMonitor.getSmoothedRttMicros(), linkMonitor.getRttPercentileMicros(0),
+                controlChannel.getRetransmissions(), inputSender.getAvgEnqueueToWireMicros());
+        if (changed) {
+            inputSender.setBatchWindowMicros(rateController.getBatchWindowMicros());
+            android.util.Log.d("Universal", "Rate: " + rateController.metricsSummary());
+        }
+
+        if (fecMode == InputProtocol.FEC_AUTO && agreement.has(SessionHandshake.FEATURE_FEC)) {
+            int groupSize = FecEncoder.groupSizeForLoss(linkMonitor.getLossPercent());
+            if (groupSize != inputSender.getFecGroupSize()) {
+                inputSender.setFecGroupSize(groupSize);
+                android.util.Log.d("Universal", "FEC group: " + groupSize + " (" + linkMonitor.metricsSummary() + ")");
             }
         }
-    };
+    }
 
-    // send Heartbeat message
-    private void sendHeartbeat() {
-        executorService.execute(() -> {
-            try {
-                Map<String, Object> message = new HashMap<>();
-                message.put("action", "heartbeat");
-                message.put("deviceName", deviceName);
+    // Analog loops reschedule with this, so a rate change applies on their next tick
+    private int analogIntervalMs() {
+        return rateController.getAnalogIntervalMs();
+    }
+
+    // Loop gain tuned per 16ms frame, converted to the current interval
+    private float perTick(float gainPerFrame) {
+        return 1f - (float) Math.pow(1f - gainPerFrame, analogIntervalMs() / MOUSE_FRAME_MS);
+    }
 
-                String json = gson.toJson(message);
-                byte[] buffer = json.getBytes();
+    // Sends a per-16ms-frame mouse delta scaled to the current interval; fractions carry over
+    private void sendScaledMouseMove(float dxPerFrame, float dyPerFrame) {
+        if (velocityMouse) {
+            float framesPerSecond = 1000f / MOUSE_FRAME_MS;
+            sendMouseVelocity(dxPerFrame * framesPerSecond, dyPerFrame * framesPerSecond);
+            return;
+        }
+        addMouseMotion(dxPerFrame, dyPerFrame, analogIntervalMs());
+        flushMouse();
+    }
+
+    // Adds "elapsedMs" of motion at a per-16ms-frame speed
+    private void addMouseMotion(float dxPerFrame, float dyPerFrame, float elapsedMs) {
+        float scale = elapsedMs / MOUSE_FRAME_MS;
+        mouseAccumulator.add(dxPerFrame * scale, dyPerFrame * scale);
+    }
 
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
+    // Sends the whole pixels accumulated so far
+    private void flushMouse() {
+        if (mouseAccumulator.flush()) {
+            sendMouseMove(mouseAccumulator.getDx(), mouseAccumulator.getDy());
+        }
+    }
 
-            } catch (Exception e) {
-                // Heartbeat 실패하면 연결 끊김
-                isConnected = false;
+    // Velocity mouse: sends an update only when the desktop's extrapolation needs one
+    private void sendMouseVelocity(float vx, float vy) {
+        long now = System.nanoTime();
+        if (!mouseVelocity.update(vx, vy, now)) return;
+
+        mouseVelocity.markSent(now);
+        enqueueMouseVelocity(now);
+        inputTicks.stop(mouseStopTask);
+        if (!mouseVelocity.isMoving()) {
+            mouseStopRepeatsLeft = MOUSE_STOP_REPEATS;
+            inputTicks.start(mouseStopTask, now + MOUSE_STOP_REPEAT_MS * 1_000_000L);
+        }
+    }
+
+    private void enqueueMouseVelocity(long captureNanos) {
+        if (!isConnected) return;
+        inputSender.enqueueMouseVelocity(mouseVelocity.getPositionX(), mouseVelocity.getPositionY(),
+                mouseVelocity.getVelocityX(), mouseVelocity.getVelocityY(), captureNanos);
+    }
+
+    private long mouseStopTick(long nowNanos) {
+        if (mouseVelocity.isMoving() || mouseStopRepeatsLeft <= 0) return InputTickScheduler.STOP;
+        enqueueMouseVelocity(nowNanos);
+        return --mouseStopRepeatsLeft > 0 ? MOUSE_STOP_REPEAT_MS * 1_000_000L : InputTickScheduler.STOP;
+    }
+
+    // Mouse loops call this when the pointer is released
+    private void stopMouseMotion() {
+        if (velocityMouse) {
+            sendMouseVelocity(0, 0);
+        }
+    }
+
+    private void showLinkState(int state) {
+        android.util.Log.d("Universal", "Link " + LinkMonitor.stateName(state) + ": " + linkMonitor.metricsSummary());
+        switch (state) {
+            case LinkMonitor.ALIVE:
+                updateStatus("Connected - " + layoutName, Color.parseColor("#4CAF50"));
+                break;
+            case LinkMonitor.DEGRADED:
+                updateStatus("Weak connection", Color.parseColor("#FF9800"));
+                break;
+            case LinkMonitor.DEAD:
+                updateStatus("No response from PC", Color.parseColor("#F44336"));
+                break;
+        }
+    }
+
+    // Input keeps updating the GamepadState meanwhile; it is replayed once the session is back
+    private void startReconnect(long nowNanos) {
+        android.util.Log.w("Universal", "Link lost, reconnecting: " + linkMonitor.metricsSummary());
+        updateStatus("Reconnecting...", Color.parseColor("#FF9800"));
+        inputTicks.stop(clockSyncTask);
+        inputTicks.start(reconnectTask, nowNanos);
+    }
+
+    // One attempt per tick; the result schedules the next one
+    private long reconnectTick(long nowNanos) {
+        if (!isConnected || executorService.isShutdown()) return InputTickScheduler.STOP;
+
+        reconnectPolicy.onAttempt();
+        executorService.execute(this::reconnectAttempt);
+        return InputTickScheduler.STOP;
+    }
+
+    // On the executor: new socket (the local address may have changed), then the handshake again
+    private void reconnectAttempt() {
+        boolean paired;
+        try {
+            transport.reopen();
+            handshakeReplies.clear();
+            long id = sendHello(true);
+            SessionHandshake.Agreement reply = readHandshakeReply(RECONNECT_ACK_TIMEOUT_MS);
+            // Desktops that don't answer the hello may still have acked it
+            paired = reply != null ? reply.accepted : controlChannel.awaitDelivery(id, 0);
+            if (paired) {
+                applyAgreement(reply != null ? reply : SessionHandshake.NO_REPLY);
+            }
+        } catch (Exception e) {
+            android.util.Log.w("Universal", "Reconnect attempt failed: " + e.getMessage());
+            paired = false;
+        }
+
+        boolean recovered = paired;
+        mainHandler.post(() -> {
+            if (!isConnected) return;
+            long now = System.nanoTime();
+            if (recovered) {
+                onReconnected(now);
+            } else {
+                inputTicks.start(reconnectTask, now + reconnectPolicy.nextAttemptDelayNanos());
             }
         });
     }
 
+    private void onReconnected(long nowNanos) {
+        reconnectPolicy.onRecovered(nowNanos);
+        android.util.Log.d("Universal", "Reconnected: " + reconnectPolicy.metricsSummary());
+
+        // The desktop may have missed any number of edges, or restarted
+        inputSender.replayState();
+        clockSync.reset();
+        clockSyncRequests = 0;
+        inputTicks.start(clockSyncTask, nowNanos);
+
+        shownLinkState = LinkMonitor.UNKNOWN;
+        updateStatus("Connected - " + layoutName, Color.parseColor("#4CAF50"));
+        startLinkCheck();
+    }
+
+    // Time sync requests go unreliably: a retransmitted request would be a bad sample
+    private long clockSyncTick(long nowNanos) {
+        if (!isConnected || executorService.isShutdown()) return InputTickScheduler.STOP;
+
+        executorService.execute(() -> controlChannel.sendUnreliable(clockSync.newRequest()));
+        clockSyncRequests++;
+        return (clockSyncRequests < CLOCK_SYNC_BURST
+                ? CLOCK_SYNC_BURST_INTERVAL_MS : CLOCK_SYNC_INTERVAL_MS) * 1_000_000L;
+    }
+
+    // Every touch handler runs inside this, so input sent from it gets the touch's time
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        inputCaptureNanos = android.os.Build.VERSION.SDK_INT >= 34
+                ? event.getEventTimeNanos() : event.getEventTime() * 1_000_000L;
+        try {
+            return super.dispatchTouchEvent(event);
+        } finally {
+            inputCaptureNanos = 0;
+        }
+    }
+
+    // Capture time for input sent now: the event being handled, else now (timers, PWM)
+    private long captureTime() {
+        return inputCaptureNanos != 0 ? inputCaptureNanos : System.nanoTime();
+    }
+
+    private interface TouchSample {
+        void on(float x, float y, long nanos);
+    }
+
+    // Passes every hardware sample of a move event (the batched historical ones first, then
+    // the current one) with its own time; input sent from "sample" carries that time
+    private void forEachTouchSample(MotionEvent event, TouchSample sample) {
+        long eventNanos = inputCaptureNanos;
+        for (int h = 0; h < event.getHistorySize(); h++) {
+            long nanos = android.os.Build.VERSION.SDK_INT >= 34
+                    ? event.getHistoricalEventTimeNanos(h) : event.getHistoricalEventTime(h) * 1_000_000L;
+            inputCaptureNanos = nanos;
+            sample.on(event.getHistoricalX(h), event.getHistoricalY(h), nanos);
+        }
+        inputCaptureNanos = eventNanos;
+        sample.on(event.getX(), event.getY(), captureTime());
+    }
+
+    // Move events of this gesture are delivered as they arrive instead of batched per vsync
+    private static void requestUnbuffered(View view, MotionEvent event) {
+        view.requestUnbufferedDispatch(event);
+    }
+
     // for flight sim
     private void addCalibrateButton() {
         Button calibrateBtn = new Button(this);
@@ -276,37 +565,23 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
+                    requestUnbuffered(v, event);
                     lastTouchX = event.getX();
                     lastTouchY = event.getY();
+                    lastTouchNanos = captureTime();
                     isMouseActive = true;
                     isMouseDragging = true;
                     velocityX = 0;
                     velocityY = 0;
-                    mouseHandler.post(smoothMouseRunnable);  // 60fps
+                    if (!touchpadRaw) {
+                        lastMouseFrameNanos = 0;
+                        inputTicks.start(touchpadTask, System.nanoTime());
+                    }
                     return true;
 
                 case MotionEvent.ACTION_MOVE:
                     if (isMouseDragging) {
-                        float deltaX = event.getX() - lastTouchX;
-                        float deltaY = event.getY() - lastTouchY;
-
-                        float joyX = deltaX / 100f;  // Sensitivity
-                        float joyY = deltaY / 100f;
-
-                        // Deadzone
-                        if (Math.abs(joyX) < MOUSE_DEADZONE) joyX = 0;
-                        if (Math.abs(joyY) < MOUSE_DEADZONE) joyY = 0;
-
-
-                        float targetVelocityX = joyX * MAX_SPEED;
-                        float targetVelocityY = joyY * MAX_SPEED;
-
-
-                        velocityX += (targetVelocityX - velocityX) * ACCELERATION;
-                        velocityY += (targetVelocityY - velocityY) * ACCELERATION;
-
-                        lastTouchX = event.getX();
-                        lastTouchY = event.getY();
+                        forEachTouchSample(event, this::onTouchpadSample);
                     }
                     return true;
 
@@ -316,30 +591,67 @@ public class UniversalControllerActivity extends AppCompatActivity {
                     isMouseActive = false;
                     velocityX = 0;
                     velocityY = 0;
-                    mouseHandler.removeCallbacks(smoothMouseRunnable);
+                    inputTicks.stop(touchpadTask);
+                    flushMouse();
+                    stopMouseMotion();
                     return true;
             }
             return false;
         });
     }
 
-    // for smooth mouse input
-    private Runnable smoothMouseRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (isMouseActive) {
+    private void onTouchpadSample(float x, float y, long nanos) {
+        float deltaX = x - lastTouchX;
+        float deltaY = y - lastTouchY;
+        float elapsedMs = Math.max(1f, (nanos - lastTouchNanos) / 1_000_000f);
+        lastTouchX = x;
+        lastTouchY = y;
+        lastTouchNanos = nanos;
+
+        if (touchpadRaw) {
+            // Finger motion as is: no deadzone, no smoothing, fractions carried
+            mouseAccumulator.add(deltaX * TOUCHPAD_RAW_GAIN, deltaY * TOUCHPAD_RAW_GAIN);
+            flushMouse();
+            return;
+        }
 
-                int mouseX = Math.round(velocityX);
-                int mouseY = Math.round(velocityY);
+        // Finger motion per 16ms frame, so the feel doesn't depend on the touch sample rate
+        float frames = elapsedMs / MOUSE_FRAME_MS;
+        float joyX = deltaX / frames / 100f;  // Sensitivity
+        float joyY = deltaY / frames / 100f;
 
-                if (Math.abs(mouseX) > 0 || Math.abs(mouseY) > 0) {
-                    sendMouseMove(mouseX, mouseY);
-                }
+        // Deadzone
+        if (Math.abs(joyX) < MOUSE_DEADZONE) joyX = 0;
+        if (Math.abs(joyY) < MOUSE_DEADZONE) joyY = 0;
 
-                mouseHandler.postDelayed(this, MOUSE_INTERVAL_MS);
+        float targetVelocityX = joyX * MAX_SPEED;
+        float targetVelocityY = joyY * MAX_SPEED;
+
+        float gain = 1f - (float) Math.pow(1f - ACCELERATION, frames);
+        velocityX += (targetVelocityX - velocityX) * gain;
+        velocityY += (targetVelocityY - velocityY) * gain;
+    }
+
+    // Smoothed touchpad: motion advances by each display frame's actual duration, and is
+    // flushed on the frame closest to the analog interval, so sends stay in step with vsync
+    private long touchpadTick(long frameTimeNanos) {
+        if (!isMouseActive) return InputTickScheduler.STOP;
+
+        if (lastMouseFrameNanos == 0) {
+            lastMouseFlushNanos = frameTimeNanos;
+        } else if (velocityMouse) {
+            float framesPerSecond = 1000f / MOUSE_FRAME_MS;
+            sendMouseVelocity(velocityX * framesPerSecond, velocityY * framesPerSecond);
+        } else {
+            addMouseMotion(velocityX, velocityY, (frameTimeNanos - lastMouseFrameNanos) / 1_000_000f);
+            if (frameTimeNanos - lastMouseFlushNanos >= analogIntervalMs() * 1_000_000L - MOUSE_FLUSH_SLACK_NANOS) {
+                flushMouse();
+                lastMouseFlushNanos = frameTimeNanos;
             }
         }
-    };
+        lastMouseFrameNanos = frameTimeNanos;
+        return 0;  // every frame
+    }
     private View findViewAt(float x, float y) {
         for (int i = 0; i < controllerContainer.getChildCount(); i++) {
             View child = controllerContainer.getChildAt(i);
@@ -384,6 +696,15 @@ public class UniversalControllerActivity extends AppCompatActivity {
         public void onSensorChanged(SensorEvent event) {
             if (!gyroEnabled || !isConnected) return;
 
+            inputCaptureNanos = ClockSync.sensorToMonotonicNanos(event.timestamp);
+            try {
+                handleRotation(event);
+            } finally {
+                inputCaptureNanos = 0;
+            }
+        }
+
+        private void handleRotation(SensorEvent event) {
             if (event.sensor.getType() == Sensor.TYPE_GAME_ROTATION_VECTOR) {
                 float[] rotationMatrix = new float[9];
                 SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
@@ -407,6 +728,9 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
                 updateGyroUI();
 
+                inputSender.setAxis(GamepadState.AXIS_ROLL, currentRoll);
+                inputSender.setAxis(GamepadState.AXIS_PITCH, currentPitch);
+
                 String type = currentLayout.controllerType;
 
                 if ("Racing".equals(type)) {
@@ -504,16 +828,15 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
     private void startPWMControl() {
         isPWMActive = true;
-        pwmRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isPWMActive && isConnected) {
-                    processPWMSteering();
-                }
-                pwmHandler.postDelayed(this, PWM_CYCLE_MS);
-            }
-        };
-        pwmHandler.post(pwmRunnable);
+        inputTicks.start(pwmTask, System.nanoTime());
+    }
+
+    private long pwmTick(long nowNanos) {
+        if (!isPWMActive) return InputTickScheduler.STOP;
+        if (isConnected) {
+            processPWMSteering();
+        }
+        return Math.max(1, rateController.getPwmCycleMs() / PWM_TICKS_PER_CYCLE) * 1_000_000L;
     }
 
     private void processPWMSteering() {
@@ -553,18 +876,19 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
     private void pulsateSteeringKey(String key, float intensity) {
         boolean shouldBePressed;
+        int cycleMs = rateController.getPwmCycleMs();
 
         if (intensity < 0.15f) {
             shouldBePressed = false;
         } else if (intensity < 0.35f) {
-            long cyclePosition = System.currentTimeMillis() % PWM_CYCLE_MS;
-            shouldBePressed = cyclePosition < (PWM_CYCLE_MS * 0.5f);
+            long cyclePosition = System.currentTimeMillis() % cycleMs;
+            shouldBePressed = cyclePosition < (cycleMs * 0.5f);
         } else if (intensity < 0.65f) {
-            long cyclePosition = System.currentTimeMillis() % PWM_CYCLE_MS;
-            shouldBePressed = cyclePosition < (PWM_CYCLE_MS * 0.8f);
+            long cyclePosition = System.currentTimeMillis() % cycleMs;
+            shouldBePressed = cyclePosition < (cycleMs * 0.8f);
         } else if (intensity < 0.85f) {
-            long cyclePosition = System.currentTimeMillis() % PWM_CYCLE_MS;
-            shouldBePressed = cyclePosition < (PWM_CYCLE_MS * 0.95f);
+            long cyclePosition = System.currentTimeMillis() % cycleMs;
+            shouldBePressed = cyclePosition < (cycleMs * 0.95f);
         } else {
             shouldBePressed = true;
         }
@@ -621,61 +945,22 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private void sendKeyPress(String key, boolean pressed) {
         if (!isConnected) return;
 
-        executorService.execute(() -> {
-            try {
-                // Multiplayer
-                SharedPreferences prefs = getSharedPreferences("AppSettings", MODE_PRIVATE);
-                boolean isMultiplayer = prefs.getBoolean("multiplayer_enabled", false);
-                int playerNumber = prefs.getInt("player_number", 1);
-
-                Map<String, Object> message = new HashMap<>();
-                message.put("action", "key");
-                message.put("key", key);
-                message.put("pressed", pressed);
-
-                // Multiplayer informations
-                if (isMultiplayer) {
-                    message.put("player", playerNumber);
-                }
-
-                String json = gson.toJson(message);
-                byte[] buffer = json.getBytes();
-
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
-
-                String playerTag = isMultiplayer ? " (P" + playerNumber + ")" : "";
-                android.util.Log.d("Universal", "Sent: " + key + " = " + pressed + playerTag);
+        inputSender.enqueueKey(key, pressed, playerNumber, captureTime());
+    }
 
+    // Layout button; falls back to the key name if the control table had no room for it
+    private void sendControl(int controlId, String key, boolean pressed) {
+        if (!isConnected) return;
 
-            } catch (Exception e) {
-                android.util.Log.e("Universal", "sendKeyPress error: " + e.getMessage());
-                e.printStackTrace();
-            }
-        });
+        if (controlId == 0) {
+            inputSender.enqueueKey(key, pressed, playerNumber, captureTime());
+        } else {
+            inputSender.enqueueControl(controlId, pressed, playerNumber, captureTime());
+        }
     }
 
     private void sendGyroData(float x, float y, float z) {
-        executorService.execute(() -> {
-            try {
-                Map<String, Object> command = new HashMap<>();
-                command.put("type", "gyro");
-                command.put("x", x);
-                command.put("y", y);
-                command.put("z", z);
-
-                String json = gson.toJson(command);
-                byte[] buffer = json.getBytes();
-
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        inputSender.enqueueGyro(x, y, z, captureTime());
     }
 
 
@@ -688,12 +973,20 @@ public class UniversalControllerActivity extends AppCompatActivity {
             return null;
         }
 
+        controlMap = new ControlMap(layoutName);
+
         for (LayoutData.ButtonData btnData : layout.buttons) {
             View button = createButton(btnData);
             controllerContainer.addView(button);
             activeButtons.put(btnData.id, button);
         }
 
+        if (layout.gyroEnabled) {
+            controlMap.addAxis("gyro.roll", GamepadState.AXIS_ROLL, "roll");
+            controlMap.addAxis("gyro.pitch", GamepadState.AXIS_PITCH, "pitch");
+        }
+        inputSender.setControlMap(controlMap);
+
         return layout;  // ✅ 추가
     }
 
@@ -701,6 +994,8 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private View createButton(LayoutData.ButtonData data) {
         // Mouse Joystick
         if ("mouse_joystick".equals(data.action)) {
+            controlMap.addAxis(data.id + ".x", GamepadState.AXIS_RIGHT_X, "right_x");
+            controlMap.addAxis(data.id + ".y", GamepadState.AXIS_RIGHT_Y, "right_y");
             return createMouseJoystick(data);
         }
 
@@ -792,6 +1087,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
         // 마우스 클릭 액션
         String button = data.action.equals("mouse_left") ? "left" : "right";
+        controlMap.addMouse(data.id, "left".equals(button) ? InputProtocol.MOUSE_LEFT : InputProtocol.MOUSE_RIGHT);
         btn.setOnTouchListener((v, event) -> {
             if (event.getAction() == MotionEvent.ACTION_DOWN) {
                 sendMouseClick(button, true);
@@ -842,8 +1138,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
         private float handleRadius = 35f;
         private boolean isTouching = false;
 
-        private Handler sendHandler = new Handler();
-        private static final int SEND_INTERVAL_MS = 16; // 60fps
+        private final InputTickScheduler.Task mouseTask = inputTicks.frame("joystick", this::mouseTick);
 
         // ✅ Smooth mouse
         private float velocityX = 0;
@@ -852,33 +1147,29 @@ public class UniversalControllerActivity extends AppCompatActivity {
         private static final float JOYSTICK_MAX_SPEED = 5.0f;
         private static final float JOYSTICK_DEADZONE = 0.1f;
 
-        private Runnable joystickMouseRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isTouching) {
-                    float relativeX = (handleX - centerX) / (baseRadius - handleRadius);
-                    float relativeY = (handleY - centerY) / (baseRadius - handleRadius);
+        // Runs on the display frame nearest each analog interval
+        private long mouseTick(long nowNanos) {
+            if (!isTouching) return InputTickScheduler.STOP;
 
-                    // Deadzone
-                    if (Math.abs(relativeX) < JOYSTICK_DEADZONE) relativeX = 0;  // ✅
-                    if (Math.abs(relativeY) < JOYSTICK_DEADZONE) relativeY = 0;
+            float relativeX = (handleX - centerX) / (baseRadius - handleRadius);
+            float relativeY = (handleY - centerY) / (baseRadius - handleRadius);
 
-                    // ✅ 목표 속도
-                    float targetVelocityX = relativeX * JOYSTICK_MAX_SPEED;
-                    float targetVelocityY = relativeY * JOYSTICK_MAX_SPEED;
+            // Deadzone
+            if (Math.abs(relativeX) < JOYSTICK_DEADZONE) relativeX = 0;  // ✅
+            if (Math.abs(relativeY) < JOYSTICK_DEADZONE) relativeY = 0;
 
-                    // ✅ 부드러운 가속
-                    velocityX += (targetVelocityX - velocityX) * JOYSTICK_ACCELERATION;
-                    velocityY += (targetVelocityY - velocityY) * JOYSTICK_ACCELERATION;
+            // ✅ 목표 속도
+            float targetVelocityX = relativeX * JOYSTICK_MAX_SPEED;
+            float targetVelocityY = relativeY * JOYSTICK_MAX_SPEED;
 
-                    int mouseX = Math.round(velocityX);
-                    int mouseY = Math.round(velocityY);
+            // ✅ 부드러운 가속
+            float gain = perTick(JOYSTICK_ACCELERATION);
+            velocityX += (targetVelocityX - velocityX) * gain;
+            velocityY += (targetVelocityY - velocityY) * gain;
 
-                    sendMouseMove(mouseX, mouseY);
-                    sendHandler.postDelayed(this, SEND_INTERVAL_MS);
-                }
-            }
-        };
+            sendScaledMouseMove(velocityX, velocityY);
+            return analogIntervalMs() * 1_000_000L;
+        }
 
         public JoystickView(Context context) {
             super(context);
@@ -927,15 +1218,16 @@ public class UniversalControllerActivity extends AppCompatActivity {
         public boolean onTouchEvent(MotionEvent event) {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
+                    requestUnbuffered(this, event);
                     isTouching = true;
                     velocityX = 0;  // ✅ 초기화
                     velocityY = 0;
                     updateHandle(event.getX(), event.getY());
-                    sendHandler.post(joystickMouseRunnable);
+                    inputTicks.start(mouseTask, System.nanoTime());
                     return true;
 
                 case MotionEvent.ACTION_MOVE:
-                    updateHandle(event.getX(), event.getY());
+                    forEachTouchSample(event, (x, y, nanos) -> updateHandle(x, y));
                     return true;
 
                 case MotionEvent.ACTION_UP:
@@ -943,9 +1235,9 @@ public class UniversalControllerActivity extends AppCompatActivity {
                     isTouching = false;
                     velocityX = 0;
                     velocityY = 0;
-                    sendHandler.removeCallbacks(joystickMouseRunnable);
+                    inputTicks.stop(mouseTask);
                     resetHandle();
-                    sendMouseMove(0, 0);
+                    stopMouseMotion();
                     return true;
             }
             return super.onTouchEvent(event);
@@ -965,78 +1257,37 @@ public class UniversalControllerActivity extends AppCompatActivity {
                 handleX = centerX + (float) Math.cos(angle) * (baseRadius - handleRadius);
                 handleY = centerY + (float) Math.sin(angle) * (baseRadius - handleRadius);
             }
+            updateAxes();
             invalidate();
         }
 
         private void resetHandle() {
             handleX = centerX;
             handleY = centerY;
+            updateAxes();
             invalidate();
         }
 
-        private Runnable sendMouseRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isTouching) {
-                    float relativeX = (handleX - centerX) / (baseRadius - handleRadius);
-                    float relativeY = (handleY - centerY) / (baseRadius - handleRadius);
-
-                    // 감도 300 (Flight Controller와 동일)
-                    int mouseX = Math.round(relativeX * 300);
-                    int mouseY = Math.round(relativeY * 300);
-
-                    sendMouseMove(mouseX, mouseY);
-                    sendHandler.postDelayed(this, SEND_INTERVAL_MS);
-                }
-            }
-        };
+        // Stick position in percent, for state reports
+        private void updateAxes() {
+            float range = baseRadius - handleRadius;
+            inputSender.setAxis(GamepadState.AXIS_RIGHT_X, (handleX - centerX) / range * 100f);
+            inputSender.setAxis(GamepadState.AXIS_RIGHT_Y, (handleY - centerY) / range * 100f);
+        }
     }
 
     // send mouse inputs
     private void sendMouseMove(int x, int y) {
         if (!isConnected) return;
 
-        executorService.execute(() -> {
-            try {
-                Map<String, Object> message = new HashMap<>();
-                message.put("action", "mouse_move");
-                message.put("x", x);
-                message.put("y", y);
-
-                String json = gson.toJson(message);
-                byte[] buffer = json.getBytes();
-
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        inputSender.enqueueMouseMove(x, y, captureTime());
     }
 
     private void sendMouseClick(String button, boolean pressed) {
         if (!isConnected) return;
 
-        executorService.execute(() -> {
-            try {
-                Map<String, Object> message = new HashMap<>();
-                message.put("action", "mouse_button");
-                message.put("button", button);
-                message.put("pressed", pressed);
-
-                String json = gson.toJson(message);
-                byte[] buffer = json.getBytes();
-
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        int buttonId = "left".equals(button) ? InputProtocol.MOUSE_LEFT : InputProtocol.MOUSE_RIGHT;
+        inputSender.enqueueMouseButton(buttonId, pressed, captureTime());
     }
     private void setupButtonAction(Button btn, String action) {
         LayoutData.ButtonData data = (LayoutData.ButtonData) btn.getTag();
@@ -1045,6 +1296,8 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
         // Movement Joystick
         if ("movement_joystick".equals(action)) {
+            controlMap.addAxis(data.id + ".x", GamepadState.AXIS_LEFT_X, "left_x");
+            controlMap.addAxis(data.id + ".y", GamepadState.AXIS_LEFT_Y, "left_y");
             setupMovementJoystick(btn);
             return;
         }
@@ -1064,11 +1317,14 @@ public class UniversalControllerActivity extends AppCompatActivity {
             return;
         }
 
+        // Resolved once here; touches only send the control ID
+        int controlId = controlMap.addKey(data.id != null ? data.id : action, keyToSend);
+
         // Hold-type buttons
         btn.setOnTouchListener((v, event) -> {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
-                    sendKeyPress(keyToSend, true);
+                    sendControl(controlId, keyToSend, true);
                     vibrateShort();
                     btn.setAlpha(0.7f);
                     btn.setScaleX(0.95f);
@@ -1077,7 +1333,7 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
                 case MotionEvent.ACTION_UP:
                 case MotionEvent.ACTION_CANCEL:
-                    sendKeyPress(keyToSend, false);
+                    sendControl(controlId, keyToSend, false);
                     btn.setAlpha(1.0f);
                     btn.setScaleX(1.0f);
                     btn.setScaleY(1.0f);
@@ -1272,12 +1528,21 @@ public class UniversalControllerActivity extends AppCompatActivity {
         public boolean onTouchEvent(MotionEvent event) {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
-                case MotionEvent.ACTION_MOVE:
+                    requestUnbuffered(this, event);
                     updateStickPosition(event.getX(), event.getY());
                     updateMovementKeys();
                     invalidate();
                     break;
 
+                case MotionEvent.ACTION_MOVE:
+                    // Every sample, so a quick flick still sends the keys it passed through
+                    forEachTouchSample(event, (x, y, nanos) -> {
+                        updateStickPosition(x, y);
+                        updateMovementKeys();
+                    });
+                    invalidate();
+                    break;
+
                 case MotionEvent.ACTION_UP:
                 case MotionEvent.ACTION_CANCEL:
                     resetStick();
@@ -1302,11 +1567,20 @@ public class UniversalControllerActivity extends AppCompatActivity {
                 stickX = x;
                 stickY = y;
             }
+            updateAxes();
         }
 
         private void resetStick() {
             stickX = centerX;
             stickY = centerY;
+            updateAxes();
+        }
+
+        // Stick position in percent, for state reports
+        private void updateAxes() {
+            float maxDistance = baseRadius - stickRadius;
+            inputSender.setAxis(GamepadState.AXIS_LEFT_X, (stickX - centerX) / maxDistance * 100f);
+            inputSender.setAxis(GamepadState.AXIS_LEFT_Y, (stickY - centerY) / maxDistance * 100f);
         }
 
         private void updateMovementKeys() {
@@ -1453,23 +1727,33 @@ public class UniversalControllerActivity extends AppCompatActivity {
     private void connectToServer() {
         executorService.execute(() -> {
             try {
-                udpSocket = new DatagramSocket();
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-
-                Map<String, String> pairingMsg = new HashMap<>();
-                pairingMsg.put("type", "pairing");
-                pairingMsg.put("code", pairingCode);
-                pairingMsg.put("device_name", deviceName);
-
-                String json = gson.toJson(pairingMsg);
-                byte[] buffer = json.getBytes();
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
+                // First task on the executor, so every later send sees an open transport
+                transport.open();
+                controlChannel.start();
+
+                // One round trip: pairs, and agrees on codec, rate and features
+                long helloId = sendHello(false);
+                SessionHandshake.Agreement reply = readHandshakeReply(HANDSHAKE_REPLY_TIMEOUT_MS);
+                if (reply != null && !reply.accepted) {
+                    mainHandler.post(() -> updateStatus("Wrong pairing code", Color.parseColor("#F44336")));
+                    return;
+                }
+                // Every desktop answers a correct code; silence is a wrong code (or the wrong PC),
+                // unless the hello was at least acked
+                if (reply == null && !controlChannel.awaitDelivery(helloId, 0)) {
+                    mainHandler.post(() -> updateStatus("No reply from PC - check the code", Color.parseColor("#F44336")));
+                    return;
+                }
+                applyAgreement(reply != null ? reply : SessionHandshake.NO_REPLY);
+                // Next launch tries to resume this session first
+                SessionStore.saveEndpoint(this, serverIP, serverPort, pairingCode);
 
                 mainHandler.post(() -> {
                     isConnected = true;
                     statusText.setText("Connected - " + layoutName);
                     statusText.setTextColor(Color.parseColor("#4CAF50"));
+                    inputTicks.start(clockSyncTask, System.nanoTime());
+                    startLinkCheck();
                 });
 
             } catch (Exception e) {
@@ -1487,26 +1771,167 @@ public class UniversalControllerActivity extends AppCompatActivity {
         updateStatus("Disconnected", Color.parseColor("#F44336"));
     }
 
-    private void sendCommand(String action, String state) {
-        if (!isConnected || udpSocket == null) return;
+    // The session handshake; "resume" marks a re-pairing of this session after an outage
+    private long sendHello(boolean resume) {
+        return controlChannel.send(SessionHandshake.hello(pairingCode, deviceName,
+                SessionStore.getToken(this), resume, RateController.MAX_RATE_HZ), HELLO_SUPERSEDE_KEY);
+    }
 
-        executorService.execute(() -> {
-            try {
-                Map<String, String> command = new HashMap<>();
-                command.put("type", "command");
-                command.put("action", action);
-                command.put("state", state);
+    // Acknowledged only if the desktop agreed to acks; otherwise sent once, as a desktop that
+    // never acks would get every retry. Returns the ReliableChannel ID, 0 if sent unreliably.
+    private long sendControlMessage(Map<String, Object> message) {
+        return sendControlMessage(message, 0);
+    }
+
+    private long sendControlMessage(Map<String, Object> message, long supersedeKey) {
+        if (agreement.has(SessionHandshake.FEATURE_ACKS)) {
+            return controlChannel.send(message, supersedeKey);
+        }
+        controlChannel.sendUnreliable(message);
+        return 0;
+    }
+
+    /**
+     * Waits for the desktop's answer to the hello, null if none came. Original desktops
+     * answer "pair_success" and may send their codec separately, so after a reply without
+     * a codec the rest of the window is spent waiting for one.
+     *
+     * The hello isn't retried past the window: a desktop that answered has it, and one that
+     * never acks would only re-pair on every retry.
+     */
+    private SessionHandshake.Agreement readHandshakeReply(int timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        SessionHandshake.Agreement reply = null;
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return reply;
+                SessionHandshake.Agreement next = handshakeReplies.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) return reply;
+                reply = next;
+                if (!reply.accepted || !reply.isLegacy()
+                        || !InputProtocol.CODEC_JSON.equals(reply.codec)) {
+                    return reply;
+                }
+            }
+        } catch (InterruptedException e) {
+            return reply;
+        } finally {
+            controlChannel.supersede(HELLO_SUPERSEDE_KEY);
+        }
+    }
 
-                String json = gson.toJson(command);
-                byte[] buffer = json.getBytes();
+    // On the executor: wire codec, rate limit and features for this session, then the control map
+    private void applyAgreement(SessionHandshake.Agreement agreed) {
+        agreement = agreed;
+        boolean axisStreams = InputProtocol.CODEC_BINARY_AXIS.equals(agreed.codec);
+        boolean binaryWire = axisStreams || InputProtocol.CODEC_BINARY.equals(agreed.codec);
+        inputSender.setBinaryWire(binaryWire);
+        inputSender.setAxisStreams(axisStreams);
+        // Releases on the JSON wire are retransmitted only to a desktop that acks them
+        inputSender.setReliableChannel(agreed.has(SessionHandshake.FEATURE_ACKS) ? controlChannel : null);
+        android.util.Log.d("Universal", "Handshake: " + agreed);
+
+        mainHandler.post(() -> {
+            rateController.setMaxRateHz(agreed.maxRateHz);
+            applyWireOptions();
+        });
 
-                InetAddress serverAddress = InetAddress.getByName(serverIP);
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-                udpSocket.send(packet);
+        // Key names until the (re-)upload is acknowledged
+        if (controlMap != null) {
+            inputSender.setControlMap(controlMap);
+        }
+        uploadControlMap();
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
+    // Options, limited to what the desktop agreed to (main thread)
+    private void applyWireOptions() {
+        SessionHandshake.Agreement agreed = agreement;
+        int reportHz = agreed.has(SessionHandshake.FEATURE_STATE_REPORTS) ? stateReportHz : 0;
+        if (agreed.maxRateHz > 0) {
+            reportHz = Math.min(reportHz, agreed.maxRateHz);
+        }
+        inputSender.setStateReportRate(reportHz);
+
+        if (!agreed.has(SessionHandshake.FEATURE_FEC)) {
+            inputSender.setFecGroupSize(0);
+        } else if (fecMode != InputProtocol.FEC_AUTO) {
+            inputSender.setFecGroupSize(fecMode);
+        }
+    }
+
+    // Sends the layout's control table; input switches to control IDs when the desktop acks it.
+    // Call on the executor, at session start and whenever the layout changes.
+    private void uploadControlMap() {
+        ControlMap map = controlMap;
+        if (map == null) return;
+
+        // Set before sending: the ack can arrive before send() returns
+        uploadedControlMap = map;
+        sendControlMessage(map.toMessage(), CONTROL_MAP_SUPERSEDE_KEY);
+    }
+
+    // Messages from the desktop (called on the control channel thread)
+    private final ReliableChannel.Listener controlListener = new ReliableChannel.Listener() {
+        @Override
+        public void onMessage(Map<String, Object> message) {
+            Object action = message.get("action");
+            if ("time_sync".equals(action)) {
+                clockSync.onReply(message, ClockSync.nowMicros());
+                return;
+            }
+            if ("heartbeat_echo".equals(action)) {
+                Object ts = message.get("ts");
+                if (ts instanceof Number) {
+                    linkMonitor.onEcho(((Number) ts).longValue(), LinkMonitor.probeTimestamp());
+                }
+                return;
+            }
+
+            SessionHandshake.Agreement reply = SessionHandshake.parseReply(message);
+            if (reply != null) {
+                handshakeReplies.offer(reply);
             }
+        }
+
+        @Override
+        public void onDelivered(long id, Object action) {
+            // An earlier upload still pending was superseded, so this ack is for uploadedControlMap
+            if ("control_map".equals(action)) {
+                inputSender.activateControlMap(uploadedControlMap);
+                android.util.Log.d("Universal", "Control map active: " + uploadedControlMap.getEntries().size() + " entries");
+            }
+        }
+
+        @Override
+        public void onDeliveryFailed(long id, Object action) {
+            android.util.Log.w("Universal", "Not acknowledged: " + action + " (" + id + ")");
+        }
+    };
+
+    private void sendCommand(String action, String state) {
+        if (!isConnected || !transport.isOpen()) return;
+
+        executorService.execute(() -> {
+            Map<String, Object> command = new HashMap<>();
+            command.put("type", "command");
+            command.put("action", action);
+            command.put("state", state);
+            sendControlMessage(command);
+        });
+    }
+
+    // Tell the desktop which player this controller is, so it doesn't have to infer it from key events
+    private void sendPlayerChange() {
+        if (!isConnected || executorService.isShutdown()) return;
+
+        int player = playerNumber;
+        executorService.execute(() -> {
+            Map<String, Object> message = new HashMap<>();
+            message.put("action", "player_change");
+            message.put("deviceName", deviceName);
+            message.put("player", player);
+            sendControlMessage(message);
         });
     }
 
@@ -1541,6 +1966,20 @@ public class UniversalControllerActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+
+        // Multiplayer (may have changed in OptionsActivity)
+        SharedPreferences prefs = getSharedPreferences("AppSettings", MODE_PRIVATE);
+        int previousPlayer = playerNumber;
+        playerNumber = prefs.getBoolean("multiplayer_enabled", false) ? prefs.getInt("player_number", 1) : 0;
+        if (playerNumber != previousPlayer) {
+            sendPlayerChange();
+        }
+        stateReportHz = prefs.getInt("state_report_hz", 0);
+        velocityMouse = prefs.getBoolean("mouse_velocity", false);
+        touchpadRaw = prefs.getBoolean("touchpad_raw", false);
+        fecMode = prefs.getInt("fec_group", 0);
+        applyWireOptions();
+
         if (gyroEnabled && gyroSensor != null) {
             sensorManager.registerListener(gyroListener, gyroSensor, SensorManager.SENSOR_DELAY_FASTEST);
         }
@@ -1552,15 +1991,11 @@ public class UniversalControllerActivity extends AppCompatActivity {
 
         android.util.Log.d("Disconnect", "Disconnected");
 
-        // Send disconnect signal to Desktop
-        sendDisconnectMessage();
-        heartbeatHandler.removeCallbacks(heartbeatRunnable);
-
-
         isPWMActive = false;
-        if (pwmHandler != null && pwmRunnable != null) {
-            pwmHandler.removeCallbacks(pwmRunnable);
-        }
+        inputTicks.stopAll();
+        mainHandler.removeCallbacks(inputTimerWake);
+        Choreographer.getInstance().removeFrameCallback(inputFrameWake);
+        android.util.Log.d("Disconnect", "Input ticks: " + inputTicks.metricsSummary());
 
         if (isConnected) {
             sendKeyPress("w", false);
@@ -1569,30 +2004,45 @@ public class UniversalControllerActivity extends AppCompatActivity {
             sendKeyPress("d", false);
         }
 
-        // Send Message and quit
-        try {
-            Thread.sleep(300);
-        } catch (Exception e) {}
+        // Sender thread drains what is already queued, then exits
+        if (inputSender != null) {
+            inputSender.stop();
+            android.util.Log.d("Disconnect", "Sender: " + inputSender.metricsSummary());
+            android.util.Log.d("Disconnect", "Rate: " + rateController.metricsSummary());
+            android.util.Log.d("Disconnect", "Reconnect: " + reconnectPolicy.metricsSummary());
+            android.util.Log.d("Disconnect", "Velocity mouse: " + mouseVelocity.metricsSummary());
+        }
+
+        // Send disconnect signal to Desktop (waits for the ack off the main thread)
+        sendDisconnectMessage();
 
-        // ExecutorService finish
+        // Socket close, after the disconnect on the executor
         if (executorService != null) {
+            executorService.execute(this::closeSession);
             executorService.shutdown();
         }
 
-        // Socket close
-        if (udpSocket != null && !udpSocket.isClosed()) {
-            udpSocket.close();
-        }
-
         android.util.Log.d("Disconnect", "=== onDestroy() FINISHED ===");
     }
 
+    private void closeSession() {
+        controlChannel.stop();
+        android.util.Log.d("Disconnect", "Control: " + controlChannel.metricsSummary());
+        android.util.Log.d("Disconnect", "Link: " + linkMonitor.metricsSummary());
+        android.util.Log.d("Disconnect", "Clock: offsetUs=" + clockSync.getOffsetMicros()
+                + " driftPpm=" + clockSync.getDriftPpm() + " bestRttUs=" + clockSync.getBestDelayMicros());
+
+        transport.close();
+        android.util.Log.d("Disconnect", "Transport: sent=" + transport.getPacketsSent()
+                + " bytes=" + transport.getBytesSent() + " errors=" + transport.getSendErrors());
+    }
+
     // Send Disconnect Message
     private void sendDisconnectMessage() {
         android.util.Log.d("Disconnect", "=== sendDisconnectMessage() START ===");
 
-        if (udpSocket == null || udpSocket.isClosed()) {
-            android.util.Log.e("Disconnect", "Socket is null or closed!");
+        if (transport == null || !transport.isOpen()) {
+            android.util.Log.e("Disconnect", "Transport is null or closed!");
             return;
         }
 
@@ -1607,28 +2057,20 @@ public class UniversalControllerActivity extends AppCompatActivity {
                     message.put("action", "disconnect");
                     message.put("deviceName", deviceName);
 
-                    String json = gson.toJson(message);
-                    android.util.Log.d("Disconnect", "Message: " + json);
-
-                    byte[] buffer = json.getBytes();
-
-                    InetAddress serverAddress = InetAddress.getByName(serverIP);
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, serverPort);
-
-                    udpSocket.send(packet);
-
-                    android.util.Log.d("Disconnect", "✓✓✓ DISCONNECT SENT to " + serverIP + ":" + serverPort);
+                    long id = sendControlMessage(message);
+                    if (id == 0) {
+                        android.util.Log.d("Disconnect", "Disconnect sent (desktop doesn't ack)");
+                    } else if (controlChannel.awaitDelivery(id, DISCONNECT_ACK_TIMEOUT_MS)) {
+                        android.util.Log.d("Disconnect", "✓✓✓ DISCONNECT ACKED by " + serverIP + ":" + serverPort);
+                    } else {
+                        android.util.Log.w("Disconnect", "Disconnect not acknowledged");
+                    }
 
                 } catch (Exception e) {
                     android.util.Log.e("Disconnect", "❌ ERROR: " + e.getMessage());
                     e.printStackTrace();
                 }
             });
-
-            // hold message
-            try {
-                Thread.sleep(200);
-            } catch (Exception e) {}
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Payload size and CPU cost per gyro event of a recorded-like trace (slow drift, occasional
+ * flicks, sampled at 500 Hz): JSON message, OP_GYRO and the gyro axis stream.
+ * Not a unit test; run main() manually:
+ *
+ *   java -cp <test classes>:<app classes>:<gson> com.example.mobcontrol.AxisStreamBenchmark
+ */
+public class AxisStreamBenchmark {
+
+    private static final int TRACE = 100_000;
+    private static final long FRAME_NANOS = 2_000_000L;
+    private static final int FRAME_OVERHEAD = InputProtocol.HEADER_SIZE + InputProtocol.SEQUENCE_SIZE;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        float[][] trace = new float[TRACE][3];
+        Random random = new Random(1);
+        float[] values = new float[3];
+        for (int i = 0; i < TRACE; i++) {
+            for (int a = 0; a < 3; a++) {
+                values[a] += random.nextInt(100) == 0 ? random.nextGaussian() * 20 : random.nextGaussian() * 0.03;
+                trace[i][a] = values[a];
+            }
+        }
+
+        Gson gson = new Gson();
+        InputCodec codec = new InputCodec();
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long jsonBytes = 0;
+            for (float[] v : trace) {
+                Map<String, Object> message = new HashMap<>();
+                message.put("type", "gyro");
+                message.put("x", v[0]);
+                message.put("y", v[1]);
+                message.put("z", v[2]);
+                jsonBytes += gson.toJson(message).getBytes().length;
+            }
+            double jsonNanos = (System.nanoTime() - start) / (double) TRACE;
+
+            start = System.nanoTime();
+            long gyroBytes = 0;
+            for (int i = 0; i < TRACE; i++) {
+                codec.begin(0, i);
+                codec.putGyro(trace[i][0], trace[i][1], trace[i][2]);
+                gyroBytes += codec.finish() - FRAME_OVERHEAD;
+            }
+            double gyroNanos = (System.nanoTime() - start) / (double) TRACE;
+
+            AxisStreamEncoder stream = new AxisStreamEncoder(InputProtocol.AXIS_STREAM_GYRO, 3, InputProtocol.AXIS_SCALE);
+            start = System.nanoTime();
+            long streamBytes = 0;
+            long skipped = 0;
+            for (int i = 0; i < TRACE; i++) {
+                long now = i * FRAME_NANOS;
+                if (stream.isUnchanged(trace[i], now)) {
+                    skipped++;
+                    continue;
+                }
+                codec.begin(0, i);
+                stream.encode(codec, i, trace[i], now);
+                streamBytes += codec.finish() - FRAME_OVERHEAD;
+            }
+            double streamNanos = (System.nanoTime() - start) / (double) TRACE;
+            sink += jsonBytes + gyroBytes + streamBytes;
+
+            System.out.printf("round %d: json %.1f B %.0f ns | OP_GYRO %.1f B %.0f ns"
+                            + " | axis stream %.1f B %.0f ns (%d of %d skipped)%n",
+                    round, jsonBytes / (double) TRACE, jsonNanos, gyroBytes / (double) TRACE, gyroNanos,
+                    streamBytes / (double) TRACE, streamNanos, skipped, TRACE);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+}
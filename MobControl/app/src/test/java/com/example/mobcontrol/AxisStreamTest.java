@@ -0,0 +1,162 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AxisStreamTest {
+
+    private static final long FRAME_NANOS = 2_000_000L;  // 500 Hz
+
+    // Decodes frames into an AxisStreamDecoder, remembering whether the last event applied
+    private static class Receiver implements InputCodec.Handler {
+        final AxisStreamDecoder decoder = new AxisStreamDecoder();
+        boolean applied;
+
+        void receive(InputCodec codec) {
+            applied = false;
+            InputCodec.decode(codec.buffer(), 0, codec.finish(), this);
+        }
+
+        @Override public void onAxes(int seq, int stream, int base, int scale, int[] fields) {
+            applied = decoder.apply(seq, stream, base, scale, fields);
+        }
+        @Override public void onKey(int keyId, boolean pressed) {}
+        @Override public void onMouseMove(int dx, int dy) {}
+        @Override public void onMouseButton(int button, boolean pressed) {}
+        @Override public void onGyro(float x, float y, float z) {}
+        @Override public void onHeartbeat() {}
+        @Override public void onStateReport(int seq, GamepadState state) {}
+        @Override public void onKeyTransition(int transition, int keyId, boolean pressed) {}
+        @Override public void onCaptureTime(long remoteMicros) {}
+        @Override public void onEchoRequest(long timestamp) {}
+        @Override public void onMouseVelocity(int x, int y, int vx, int vy) {}
+    }
+
+    private static AxisStreamEncoder gyro() {
+        return new AxisStreamEncoder(InputProtocol.AXIS_STREAM_GYRO, 3, InputProtocol.AXIS_SCALE);
+    }
+
+    private static void send(AxisStreamEncoder stream, InputCodec codec, int seq, float[] values, long now) {
+        codec.begin(0, seq);
+        stream.encode(codec, seq, values, now);
+    }
+
+    @Test
+    public void decodedValues_stayWithinHalfAStep() {
+        AxisStreamEncoder stream = gyro();
+        InputCodec codec = new InputCodec();
+        Receiver receiver = new Receiver();
+        Random random = new Random(11);
+        float bound = 0.5f / InputProtocol.AXIS_SCALE + 1e-4f;
+
+        float[] values = new float[3];
+        for (int seq = 0; seq < 5000; seq++) {
+            for (int a = 0; a < 3; a++) {
+                // Mostly slow drift, with the occasional flick
+                values[a] += random.nextInt(50) == 0 ? random.nextGaussian() * 40 : random.nextGaussian() * 0.05;
+            }
+            send(stream, codec, seq, values, seq * FRAME_NANOS);
+            receiver.receive(codec);
+
+            assertTrue(receiver.applied);
+            for (int a = 0; a < 3; a++) {
+                float error = Math.abs(receiver.decoder.value(InputProtocol.AXIS_STREAM_GYRO, a) - values[a]);
+                assertTrue("seq " + seq + " axis " + a + " error " + error, error <= bound);
+            }
+        }
+        assertTrue(stream.getDeltaEvents() > stream.getKeyEvents() * 10);
+    }
+
+    @Test
+    public void varintFields_roundTripExtremes() {
+        int[] values = {Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 64};
+        InputCodec codec = new InputCodec();
+        codec.begin(0, 1);
+        codec.putAxisKey(InputProtocol.AXIS_STREAM_MOUSE, 0x0F, 1, values);
+
+        int[][] decoded = new int[1][];
+        InputCodec.decode(codec.buffer(), 0, codec.finish(), new Receiver() {
+            @Override public void onAxes(int seq, int stream, int base, int scale, int[] fields) {
+                decoded[0] = fields.clone();
+            }
+        });
+        assertArrayEquals(values, decoded[0]);
+        // seq, opcode + stream/mask + scale, then 5 + 5 + 1 + 2 bytes of varints
+        assertEquals(InputProtocol.HEADER_SIZE + 4 + 4 + 13, codec.finish());
+    }
+
+    @Test
+    public void lostFrame_deltasWaitForNextKey() {
+        AxisStreamEncoder stream = gyro();
+        InputCodec codec = new InputCodec();
+        Receiver receiver = new Receiver();
+
+        send(stream, codec, 0, new float[]{1, 2, 3}, 0);
+        receiver.receive(codec);
+        send(stream, codec, 1, new float[]{1.5f, 2, 3}, FRAME_NANOS);  // lost
+
+        send(stream, codec, 2, new float[]{1.6f, 2, 3}, 2 * FRAME_NANOS);
+        receiver.receive(codec);
+        assertFalse(receiver.applied);
+        assertFalse(receiver.decoder.isValid(InputProtocol.AXIS_STREAM_GYRO));
+        assertEquals(1f, receiver.decoder.value(InputProtocol.AXIS_STREAM_GYRO, 0), 0);
+
+        send(stream, codec, 3, new float[]{1.7f, 2, 3}, AxisStreamEncoder.KEYFRAME_INTERVAL_NANOS);
+        receiver.receive(codec);
+        assertTrue(receiver.applied);
+        assertEquals(1.7f, receiver.decoder.value(InputProtocol.AXIS_STREAM_GYRO, 0), 0.001f);
+    }
+
+    @Test
+    public void mouseMotion_costsFourBytesPerMove() {
+        AxisStreamEncoder mouse = AxisStreamEncoder.motion(InputProtocol.AXIS_STREAM_MOUSE, 2);
+        InputCodec codec = new InputCodec();
+        float[] move = {7, -3};
+        for (int seq = 0; seq < 50; seq++) {
+            send(mouse, codec, seq, move, seq * FRAME_NANOS);
+        }
+        // OP_MOUSE_MOVE takes 5 bytes
+        assertEquals(4.0, mouse.getAverageBytes(), 1e-9);
+        assertEquals(0, mouse.getDeltaEvents());
+    }
+
+    @Test
+    public void lostMouseFrame_losesOnlyItsOwnMotion() {
+        AxisStreamEncoder mouse = AxisStreamEncoder.motion(InputProtocol.AXIS_STREAM_MOUSE, 2);
+        InputCodec codec = new InputCodec();
+        Receiver receiver = new Receiver();
+
+        send(mouse, codec, 0, new float[]{5, 1}, 0);
+        receiver.receive(codec);
+        send(mouse, codec, 1, new float[]{6, 2}, FRAME_NANOS);  // lost
+        send(mouse, codec, 2, new float[]{-4, 3}, 2 * FRAME_NANOS);
+        receiver.receive(codec);
+
+        assertTrue(receiver.applied);
+        assertEquals(-4f, receiver.decoder.value(InputProtocol.AXIS_STREAM_MOUSE, 0), 0);
+        assertEquals(3f, receiver.decoder.value(InputProtocol.AXIS_STREAM_MOUSE, 1), 0);
+        assertEquals(0, receiver.decoder.getRejectedDeltas());
+
+        assertTrue(mouse.isUnchanged(new float[]{0.2f, -0.4f}, 3 * FRAME_NANOS));
+    }
+
+    @Test
+    public void unchangedGyro_isSkippedUntilKeyDue() {
+        AxisStreamEncoder stream = gyro();
+        InputCodec codec = new InputCodec();
+        float[] values = {0.5f, -0.25f, 0};
+        assertFalse(stream.isUnchanged(values, 0));
+
+        send(stream, codec, 0, values, 0);
+        float[] jitter = Arrays.copyOf(values, 3);
+        jitter[0] += 0.004f;  // below the 0.01 step
+        assertTrue(stream.isUnchanged(jitter, FRAME_NANOS));
+        jitter[1] += 0.02f;
+        assertFalse(stream.isUnchanged(jitter, FRAME_NANOS));
+        assertFalse(stream.isUnchanged(values, AxisStreamEncoder.KEYFRAME_INTERVAL_NANOS));
+    }
+}
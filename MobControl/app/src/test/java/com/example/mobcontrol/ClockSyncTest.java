@@ -0,0 +1,63 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+
+    private static final long OFFSET = 5_000_000_000L;  // desktop clock is 5000s ahead
+    private static final double DRIFT = 50e-6;          // and runs 50ppm fast
+
+    private static long remote(long phone) {
+        return phone + OFFSET + Math.round(DRIFT * phone);
+    }
+
+    // One exchange starting at phone time t0 with the given one-way delays (micros)
+    private static void exchange(ClockSync clock, long t0, long up, long down) {
+        long t1 = remote(t0 + up);
+        long t2 = t1 + 100;  // desktop turnaround
+        long t3 = t0 + up + 100 + down;
+        clock.addSample(t0, t1, t2, t3);
+    }
+
+    @Test
+    public void notSynced_untilFirstReply() {
+        ClockSync clock = new ClockSync();
+        assertFalse(clock.isSynced());
+        assertEquals(1234, clock.toRemoteMicros(1234));
+
+        exchange(clock, 1_000_000, 2_000, 2_000);
+        assertTrue(clock.isSynced());
+        assertEquals(remote(1_000_000), clock.toRemoteMicros(1_000_000), 100);
+    }
+
+    @Test
+    public void asymmetricJitter_offsetWithinOneMillisecond_andDriftTracked() {
+        ClockSync clock = new ClockSync();
+        Random random = new Random(7);
+
+        long t0 = 10_000_000;
+        for (int i = 0; i < 40; i++) {
+            // Wi-Fi: 1ms base each way, some jitter, and every 4th packet queued for up to 30ms
+            long up = 1_000 + random.nextInt(500) + (random.nextInt(4) == 0 ? random.nextInt(30_000) : 0);
+            long down = 1_000 + random.nextInt(500) + (random.nextInt(4) == 0 ? random.nextInt(30_000) : 0);
+            exchange(clock, t0, up, down);
+            t0 += 2_000_000;
+        }
+
+        assertEquals(remote(t0), clock.toRemoteMicros(t0), 1_000);
+        assertEquals(50, clock.getDriftPpm(), 10);
+        assertTrue(clock.getBestDelayMicros() < 3_000);  // the unqueued round trip
+    }
+
+    @Test
+    public void negativeDelay_isIgnored() {
+        ClockSync clock = new ClockSync();
+        clock.addSample(1_000, 5_000, 9_000, 2_000);
+        assertFalse(clock.isSynced());
+        assertEquals(0, clock.getSampleCount());
+    }
+}
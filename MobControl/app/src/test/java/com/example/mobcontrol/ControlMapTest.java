@@ -0,0 +1,74 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ControlMapTest {
+
+    @Test
+    public void rawKeyIds_mapToThemselves() {
+        ControlMap map = new ControlMap("Racing");
+        int w = InputProtocol.keyId("w");
+
+        assertEquals(w, map.keyId(w));
+        assertEquals("w", map.keyName(w));
+        assertFalse(map.isLayoutControl(w));
+    }
+
+    @Test
+    public void layoutControls_getCompactIds() {
+        ControlMap map = new ControlMap("Racing");
+        int gas = map.addKey("gas", "w");
+        int turbo = map.addKey("turbo", "shift");
+
+        assertEquals(ControlMap.FIRST_LAYOUT_ID, gas);
+        assertEquals(ControlMap.FIRST_LAYOUT_ID + 1, turbo);
+        assertEquals(gas, map.addKey("gas", "w"));
+        assertEquals(InputProtocol.keyId("shift"), map.keyId(turbo));
+        assertTrue(map.isLayoutControl(turbo));
+    }
+
+    @Test
+    public void fullTable_fallsBackToRawKeyId() {
+        ControlMap map = new ControlMap("Big");
+        for (int i = ControlMap.FIRST_LAYOUT_ID; i <= ControlMap.MAX_ID; i++) {
+            map.addKey("b" + i, "space");
+        }
+        assertEquals(InputProtocol.keyId("e"), map.addKey("extra", "e"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void message_listsControlsAndAxes() {
+        ControlMap map = new ControlMap("Racing");
+        map.addKey("gas", "w");
+        map.addMouse("fire", InputProtocol.MOUSE_LEFT);
+        map.addAxis("gyro.roll", GamepadState.AXIS_ROLL, "roll");
+
+        Map<String, Object> message = map.toMessage();
+        assertEquals("control_map", message.get("action"));
+        assertEquals(map.getVersion(), message.get("version"));
+        assertEquals(2, ((List<Object>) message.get("controls")).size());
+        assertEquals(1, ((List<Object>) message.get("axes")).size());
+
+        ControlMap changed = new ControlMap("Racing");
+        changed.addKey("gas", "s");
+        assertNotEquals(map.getVersion(), changed.getVersion());
+    }
+
+    @Test
+    public void receiver_resolvesControlIds() {
+        ControlMap map = new ControlMap("Racing");
+        int gas = map.addKey("gas", "w");
+
+        KeyHistoryReceiver receiver = new KeyHistoryReceiver();
+        receiver.setControlMap(map);
+        receiver.onKeyTransition(0, gas, true);
+
+        assertTrue(receiver.getKeys().isKeyPressed(InputProtocol.keyId("w")));
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class DesktopDiscoveryTest {
+
+    // Answers discover requests on loopback: optionally junk first, then the given reply
+    private static Thread fakeDesktop(DatagramSocket socket, String... replies) {
+        Thread thread = new Thread(() -> {
+            try {
+                byte[] buffer = new byte[1024];
+                DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                socket.receive(request);
+                for (String reply : replies) {
+                    byte[] data = reply.getBytes(StandardCharsets.UTF_8);
+                    socket.send(new DatagramPacket(data, data.length, request.getSocketAddress()));
+                }
+            } catch (Exception ignored) {
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static DesktopDiscovery loopbackDiscovery(DatagramSocket desktop) {
+        DesktopDiscovery discovery = new DesktopDiscovery(desktop.getLocalPort());
+        discovery.setInterfaceProbes(false);
+        discovery.addTarget(InetAddress.getLoopbackAddress());
+        return discovery;
+    }
+
+    @Test
+    public void firstValidReply_endsTheSearchRightAway() throws Exception {
+        try (DatagramSocket desktop = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            fakeDesktop(desktop, "not json", "{\"action\":\"pong\"}", "{\"action\":\"discovered\"}");
+
+            DesktopDiscovery.Result result = loopbackDiscovery(desktop).discover("1234", 3000);
+
+            assertTrue(result.isFound());
+            assertEquals("127.0.0.1", result.host);
+            assertEquals(3, result.replies);
+            // Not the old 3s receive timeout per attempt
+            assertTrue(result.elapsedMicros + "us", result.elapsedMicros < 500_000L);
+        }
+    }
+
+    @Test
+    public void noDesktop_givesUpAtTheTimeout() throws Exception {
+        try (DatagramSocket desktop = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            fakeDesktop(desktop);  // receives, never answers
+
+            DesktopDiscovery.Result result = loopbackDiscovery(desktop).discover("1234", 300);
+
+            assertFalse(result.isFound());
+            assertTrue(result.elapsedMicros >= 300_000L);
+            assertTrue(result.elapsedMicros < 1_000_000L);
+        }
+    }
+
+    @Test
+    public void candidateRace_unreachableAddressesDontDelayTheAnswer() throws Exception {
+        try (DatagramSocket desktop = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            fakeDesktop(desktop, "{\"action\":\"discovered\"}");
+
+            DesktopDiscovery race = new DesktopDiscovery(desktop.getLocalPort());
+            race.setInterfaceProbes(false);
+            race.addTarget(InetAddress.getByName("192.0.2.1"));   // TEST-NET: never answers
+            race.addTarget(InetAddress.getByName("127.0.0.2"));   // nothing listening
+            race.addTarget(InetAddress.getLoopbackAddress());
+
+            DesktopDiscovery.Result result = race.discover("1234", 3000);
+
+            assertEquals("127.0.0.1", result.host);
+            assertEquals(3, result.targets);
+            assertTrue(result.elapsedMicros + "us", result.elapsedMicros < 500_000L);
+        }
+    }
+
+    @Test
+    public void replies_matchTheDesktopFormats() {
+        DesktopDiscovery discovery = new DesktopDiscovery(7777);
+        assertTrue(discovery.isDesktopReply("{\"action\":\"discovered\",\"name\":\"PC\"}"));
+        assertTrue(discovery.isDesktopReply("{\"status\":\"found\"}"));
+        assertFalse(discovery.isDesktopReply("{\"action\":\"discover\",\"code\":\"1234\"}"));
+        assertFalse(discovery.isDesktopReply("garbage"));
+        assertFalse(discovery.isDesktopReply(""));
+    }
+}
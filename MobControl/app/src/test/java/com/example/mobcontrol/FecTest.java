@@ -0,0 +1,135 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FecTest {
+
+    // Sequenced frames of varying length, as the sender produces them
+    private static byte[] frame(int seq) {
+        InputCodec codec = new InputCodec();
+        codec.begin(0, seq);
+        for (int i = 0; i <= seq % 3; i++) {
+            codec.putMouseMove(seq, -i);
+        }
+        return Arrays.copyOf(codec.buffer(), codec.finish());
+    }
+
+    // Datagrams on the wire for "frames" frames: each frame, plus parity after every group
+    private static List<byte[]> send(FecEncoder fec, int frames) {
+        List<byte[]> wire = new ArrayList<>();
+        for (int seq = 0; seq < frames; seq++) {
+            byte[] f = frame(seq);
+            wire.add(f);
+            int parity = fec.add(f, f.length, seq);
+            if (parity > 0) {
+                wire.add(Arrays.copyOf(fec.parityBuffer(), parity));
+            }
+        }
+        int parity = fec.flush();
+        if (parity > 0) {
+            wire.add(Arrays.copyOf(fec.parityBuffer(), parity));
+        }
+        return wire;
+    }
+
+    // Passes the datagrams that weren't dropped through a decoder; returns frames by seq
+    private static Map<Integer, byte[]> receive(FecDecoder decoder, List<byte[]> wire, boolean[] dropped) {
+        Map<Integer, byte[]> frames = new HashMap<>();
+        for (int i = 0; i < wire.size(); i++) {
+            if (dropped[i]) continue;
+            for (byte[] f : decoder.receive(wire.get(i), wire.get(i).length)) {
+                frames.put(InputCodec.sequence(f, 0), f);
+            }
+        }
+        return frames;
+    }
+
+    @Test
+    public void oneLostFramePerGroup_isRebuilt() {
+        FecEncoder fec = new FecEncoder(InputCodec.MAX_FRAME_SIZE);
+        fec.setGroupSize(4);
+        List<byte[]> wire = send(fec, 12);  // 3 groups of 4 frames + parity
+        assertEquals(15, wire.size());
+
+        boolean[] dropped = new boolean[wire.size()];
+        dropped[0] = true;   // first frame of group 1
+        dropped[7] = true;   // third frame of group 2
+        dropped[13] = true;  // last frame of group 3
+
+        FecDecoder decoder = new FecDecoder();
+        Map<Integer, byte[]> frames = receive(decoder, wire, dropped);
+
+        assertEquals(12, frames.size());
+        for (int seq = 0; seq < 12; seq++) {
+            assertArrayEquals(frame(seq), frames.get(seq));
+        }
+        assertEquals(3, decoder.getRecovered());
+    }
+
+    @Test
+    public void twoLostFramesInGroup_areNotRecovered() {
+        FecEncoder fec = new FecEncoder(InputCodec.MAX_FRAME_SIZE);
+        fec.setGroupSize(4);
+        List<byte[]> wire = send(fec, 4);
+
+        boolean[] dropped = new boolean[wire.size()];
+        dropped[1] = true;
+        dropped[2] = true;
+
+        FecDecoder decoder = new FecDecoder();
+        assertEquals(2, receive(decoder, wire, dropped).size());
+        assertEquals(1, decoder.getUnrecoverable());
+    }
+
+    @Test
+    public void partialGroup_isProtectedByFlush() {
+        FecEncoder fec = new FecEncoder(InputCodec.MAX_FRAME_SIZE);
+        fec.setGroupSize(8);
+        List<byte[]> wire = send(fec, 3);  // burst ends before the group fills
+        assertEquals(4, wire.size());
+        assertEquals(3, wire.get(3)[2]);   // parity covers 3 frames
+
+        boolean[] dropped = new boolean[wire.size()];
+        dropped[2] = true;
+        Map<Integer, byte[]> frames = receive(new FecDecoder(), wire, dropped);
+        assertArrayEquals(frame(2), frames.get(2));
+    }
+
+    @Test
+    public void randomLoss_residualLossDrops() {
+        FecEncoder fec = new FecEncoder(InputCodec.MAX_FRAME_SIZE);
+        fec.setGroupSize(4);
+        int frames = 10_000;
+        List<byte[]> wire = send(fec, frames);
+
+        Random random = new Random(3);
+        boolean[] dropped = new boolean[wire.size()];
+        int lostFrames = 0;
+        for (int i = 0; i < wire.size(); i++) {
+            dropped[i] = random.nextInt(10) == 0;  // 10% loss
+            if (dropped[i] && wire.get(i)[0] == InputProtocol.MAGIC) lostFrames++;
+        }
+
+        int delivered = receive(new FecDecoder(), wire, dropped).size();
+        int residual = frames - delivered;
+        // Expected ~3.4% residual vs 10% raw
+        assertTrue("residual " + residual + " of " + lostFrames, residual < lostFrames / 2);
+    }
+
+    @Test
+    public void lossRate_choosesGroupSize() {
+        assertEquals(0, FecEncoder.groupSizeForLoss(0.2));
+        assertEquals(8, FecEncoder.groupSizeForLoss(2));
+        assertEquals(4, FecEncoder.groupSizeForLoss(10));
+        assertEquals(2, FecEncoder.groupSizeForLoss(30));
+    }
+}
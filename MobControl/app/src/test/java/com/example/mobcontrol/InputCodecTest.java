@@ -0,0 +1,225 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InputCodecTest {
+
+    // Records decoded events as strings so frames can be compared easily
+    private static class Recorder implements InputCodec.Handler {
+        final List<String> events = new ArrayList<>();
+
+        @Override public void onKey(int keyId, boolean pressed) {
+            events.add("key " + InputProtocol.keyName(keyId) + " " + pressed);
+        }
+        @Override public void onMouseMove(int dx, int dy) {
+            events.add("move " + dx + " " + dy);
+        }
+        @Override public void onMouseButton(int button, boolean pressed) {
+            events.add("button " + button + " " + pressed);
+        }
+        @Override public void onGyro(float x, float y, float z) {
+            events.add(String.format(java.util.Locale.US, "gyro %.2f %.2f %.2f", x, y, z));
+        }
+        @Override public void onHeartbeat() {
+            events.add("heartbeat");
+        }
+        @Override public void onStateReport(int seq, GamepadState state) {
+            events.add("state " + seq + " " + Long.toHexString(state.getKeys()) + " " + state.getMouseButtons());
+            reports.add(state);
+        }
+        final List<GamepadState> reports = new ArrayList<>();
+        @Override public void onKeyTransition(int transition, int keyId, boolean pressed) {
+            events.add("transition " + transition + " " + InputProtocol.keyName(keyId) + " " + pressed);
+        }
+        @Override public void onCaptureTime(long remoteMicros) {
+            events.add("t " + remoteMicros);
+        }
+        @Override public void onEchoRequest(long timestamp) {
+            events.add("echo " + timestamp);
+        }
+        @Override public void onMouseVelocity(int x, int y, int vx, int vy) {
+            events.add("velocity " + x + " " + y + " " + vx + " " + vy);
+        }
+        @Override public void onAxes(int seq, int stream, int base, int scale, int[] fields) {
+            events.add("axes " + stream + " " + base + " " + scale + " " + java.util.Arrays.toString(fields));
+        }
+    }
+
+    @Test
+    public void roundTrip_allEventTypes() {
+        InputCodec codec = new InputCodec();
+        codec.begin(2);
+        codec.putKey(InputProtocol.keyId("w"), true);
+        codec.putKey(InputProtocol.keyId("space"), false);
+        codec.putMouseMove(-12, 300);
+        codec.putMouseButton(InputProtocol.MOUSE_RIGHT, true);
+        codec.putGyro(12.34f, -5.5f, 0f);
+        codec.putHeartbeat();
+        codec.putEchoRequest(0xFFFFFFF0L);
+        int length = codec.finish();
+
+        Recorder recorder = new Recorder();
+        int count = InputCodec.decode(codec.buffer(), 0, length, recorder);
+
+        assertEquals(7, count);
+        assertEquals(2, InputCodec.player(codec.buffer(), 0));
+        assertEquals("key w true", recorder.events.get(0));
+        assertEquals("key space false", recorder.events.get(1));
+        assertEquals("move -12 300", recorder.events.get(2));
+        assertEquals("button 1 true", recorder.events.get(3));
+        assertEquals("gyro 12.34 -5.50 0.00", recorder.events.get(4));
+        assertEquals("heartbeat", recorder.events.get(5));
+        assertEquals("echo " + 0xFFFFFFF0L, recorder.events.get(6));
+    }
+
+    @Test
+    public void stateReport_roundTrip() {
+        GamepadState state = new GamepadState();
+        state.setKey(InputProtocol.keyId("w"), true);
+        state.setKey(InputProtocol.keyId("mouse3"), true);
+        state.setMouseButton(InputProtocol.MOUSE_LEFT, true);
+        state.setAxis(GamepadState.AXIS_LEFT_X, -100f);
+        state.setAxis(GamepadState.AXIS_PITCH, 12.5f);
+
+        InputCodec codec = new InputCodec();
+        codec.begin(0);
+        codec.putStateReport(-7, state);
+        int length = codec.finish();
+        assertEquals(InputProtocol.HEADER_SIZE + InputCodec.STATE_REPORT_SIZE, length);
+
+        Recorder recorder = new Recorder();
+        InputCodec.decode(codec.buffer(), 0, length, recorder);
+
+        GamepadState decoded = recorder.reports.get(0);
+        assertEquals("state -7 " + Long.toHexString(state.getKeys()) + " 1", recorder.events.get(0));
+        assertTrue(decoded.isKeyPressed(InputProtocol.keyId("mouse3")));
+        assertEquals(-100f, decoded.getAxis(GamepadState.AXIS_LEFT_X), 0.001f);
+        assertEquals(12.5f, decoded.getAxis(GamepadState.AXIS_PITCH), 0.001f);
+        assertEquals(0f, decoded.getAxis(GamepadState.AXIS_RIGHT_Y), 0.001f);
+    }
+
+    @Test
+    public void sequencedFrame_carriesKeyHistoryAfterEvents() {
+        InputCodec codec = new InputCodec();
+        codec.begin(1, 42);
+        codec.putMouseMove(3, -4);
+        codec.beginKeyHistory(7, 2);
+        codec.putHistoryEntry(InputProtocol.keyId("d"), true);
+        codec.putHistoryEntry(InputProtocol.keyId("d"), false);
+        int length = codec.finish();
+
+        assertTrue(InputCodec.isSequenced(codec.buffer(), 0));
+        assertEquals(42, InputCodec.sequence(codec.buffer(), 0));
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, InputCodec.decode(codec.buffer(), 0, length, recorder));
+        assertEquals("move 3 -4", recorder.events.get(0));
+        assertEquals("transition 7 d true", recorder.events.get(1));
+        assertEquals("transition 8 d false", recorder.events.get(2));
+    }
+
+    @Test
+    public void timestampedFrame_carriesCaptureTimes() {
+        InputCodec codec = new InputCodec();
+        codec.begin(0, 5, 1_000_000L);
+        codec.putCaptureAge(InputCodec.toCaptureAge(2_500));
+        codec.putMouseMove(1, 2);
+        codec.beginKeyHistory(3, 1);
+        codec.putHistoryEntry(InputProtocol.keyId("w"), true, InputCodec.toCaptureAge(40));
+        int length = codec.finish();
+
+        Recorder recorder = new Recorder();
+        InputCodec.decode(codec.buffer(), 0, length, recorder);
+        assertEquals("t 997500", recorder.events.get(0));
+        assertEquals("move 1 2", recorder.events.get(1));
+        assertEquals("t 999960", recorder.events.get(2));
+        assertEquals("transition 3 w true", recorder.events.get(3));
+
+        // Ages saturate instead of wrapping
+        assertEquals(InputProtocol.MAX_CAPTURE_AGE, InputCodec.toCaptureAge(10_000_000L));
+        assertEquals(0, InputCodec.toCaptureAge(-50));
+    }
+
+    @Test
+    public void keyFrame_isSmall() {
+        InputCodec codec = new InputCodec();
+        codec.begin(0);
+        codec.putKey(InputProtocol.keyId("a"), true);
+
+        assertEquals(InputProtocol.HEADER_SIZE + 2, codec.finish());
+    }
+
+    @Test
+    public void begin_resetsReusedBuffer() {
+        InputCodec codec = new InputCodec();
+        codec.begin(0);
+        codec.putMouseMove(1, 1);
+        codec.finish();
+
+        codec.begin(0);
+        codec.putKey(InputProtocol.keyId("d"), false);
+        int length = codec.finish();
+
+        Recorder recorder = new Recorder();
+        InputCodec.decode(codec.buffer(), 0, length, recorder);
+        assertEquals(1, recorder.events.size());
+        assertEquals("key d false", recorder.events.get(0));
+    }
+
+    @Test
+    public void mouseVelocity_roundTripWrappingPosition() {
+        InputCodec codec = new InputCodec();
+        codec.begin(0);
+        codec.putMouseVelocity(Integer.MAX_VALUE, -8, 1200, -40000);
+        int length = codec.finish();
+
+        Recorder recorder = new Recorder();
+        InputCodec.decode(codec.buffer(), 0, length, recorder);
+        assertEquals("velocity 2147483647 -8 1200 -32768", recorder.events.get(0));
+    }
+
+    @Test
+    public void mouseMove_clampsToSigned16() {
+        InputCodec codec = new InputCodec();
+        codec.begin(0);
+        codec.putMouseMove(100000, -100000);
+        int length = codec.finish();
+
+        Recorder recorder = new Recorder();
+        InputCodec.decode(codec.buffer(), 0, length, recorder);
+        assertEquals("move 32767 -32768", recorder.events.get(0));
+    }
+
+    @Test
+    public void keyTable_coversSelectableKeys() {
+        String[] keys = {"a", "z", "0", "9", "space", "enter", "shift", "ctrl", "alt", "tab",
+                "esc", "backspace", "up", "down", "left", "right", "f1", "f12", "mouse1", "mouse3"};
+        for (String key : keys) {
+            int id = InputProtocol.keyId(key);
+            assertTrue(key, id > 0 && id < 256);
+            assertEquals(key, InputProtocol.keyName(id));
+        }
+        assertEquals(0, InputProtocol.keyId("not_a_key"));
+    }
+
+    @Test
+    public void jsonMessage_isNotBinaryFrame() {
+        byte[] json = "{\"action\":\"key\"}".getBytes();
+        assertFalse(InputCodec.isBinaryFrame(json, 0, json.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedFrame_isRejected() {
+        InputCodec codec = new InputCodec();
+        codec.begin(0);
+        codec.putMouseMove(5, 5);
+        int length = codec.finish();
+
+        InputCodec.decode(codec.buffer(), 0, length - 1, new Recorder());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputEventRingTest {
+
+    @Test
+    public void claim_returnsNullWhenFull() {
+        InputEventRing ring = new InputEventRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(ring.claim());
+            ring.publish();
+        }
+        assertNull(ring.claim());
+        assertEquals(4, ring.size());
+
+        ring.poll();
+        ring.release();
+        assertNotNull(ring.claim());
+    }
+
+    @Test
+    public void poll_returnsEventsInOrder() {
+        InputEventRing ring = new InputEventRing(8);
+        for (int i = 0; i < 5; i++) {
+            InputEvent e = ring.claim();
+            e.dx = i;
+            ring.publish();
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, ring.poll().dx);
+            ring.release();
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void producerAndConsumerThreads_seeEveryEventOnce() throws Exception {
+        final InputEventRing ring = new InputEventRing(16);
+        final int total = 200_000;
+        final long[] sum = new long[1];
+
+        Thread consumer = new Thread(() -> {
+            int received = 0;
+            while (received < total) {
+                InputEvent e = ring.poll();
+                if (e == null) {
+                    Thread.yield();
+                    continue;
+                }
+                assertEquals(received, e.dx);
+                sum[0] += e.dx;
+                ring.release();
+                received++;
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < total; ) {
+            InputEvent e = ring.claim();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            e.dx = i++;
+            ring.publish();
+        }
+
+        consumer.join(10_000);
+        assertFalse(consumer.isAlive());
+        assertEquals((long) total * (total - 1) / 2, sum[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_mustBePowerOfTwo() {
+        new InputEventRing(10);
+    }
+}
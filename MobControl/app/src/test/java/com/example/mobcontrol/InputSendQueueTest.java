@@ -0,0 +1,82 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputSendQueueTest {
+
+    @Test
+    public void mouseDeltas_areSummed() {
+        InputSendQueue queue = new InputSendQueue(8);
+        queue.addMouseDelta(3, -2, 100);
+        queue.addMouseDelta(4, -5, 200);
+        queue.addMouseDelta(-1, 0, 300);
+
+        InputEvent out = new InputEvent();
+        assertTrue(queue.takeMouse(out));
+        assertEquals(6, out.dx);
+        assertEquals(-7, out.dy);
+        assertEquals(100, out.captureNanos);  // oldest sample of the delta
+        assertEquals(2, queue.getConflatedMouse());
+        assertFalse(queue.takeMouse(out));
+    }
+
+    @Test
+    public void gyro_keepsLatestSample() {
+        InputSendQueue queue = new InputSendQueue(8);
+        queue.setGyro(1f, 2f, 3f, 0);
+        queue.setGyro(-4.25f, 5.5f, 0f, 0);
+
+        InputEvent out = new InputEvent();
+        assertTrue(queue.takeGyro(out));
+        assertEquals(-4.25f, out.x, 0.001f);
+        assertEquals(5.5f, out.y, 0.001f);
+        assertEquals(0f, out.z, 0.001f);
+        assertEquals(1, queue.getConflatedAxis());
+        assertFalse(queue.takeGyro(out));
+    }
+
+    @Test
+    public void backlog_countsDiscreteAndPendingAnalog() {
+        InputSendQueue queue = new InputSendQueue(8);
+        queue.addMouseDelta(1, 1, 0);
+        queue.addMouseDelta(1, 1, 0);
+        queue.offerKey("w", InputProtocol.keyId("w"), InputProtocol.keyId("w"), true, 0, 0);
+        queue.offerMouseButton(InputProtocol.MOUSE_LEFT, true, 0);
+
+        assertEquals(3, queue.backlog());
+    }
+
+    @Test
+    public void discreteEvents_survive_fullRing_inOrder() {
+        InputSendQueue queue = new InputSendQueue(4);
+        for (int i = 0; i < 10; i++) {
+            queue.offerKey("k" + i, 0, 0, i % 2 == 0, 0, 0);
+        }
+        assertEquals(6, queue.getOverflowEvents());
+
+        for (int i = 0; i < 10; i++) {
+            InputEvent e = queue.pollDiscrete();
+            assertNotNull(e);
+            assertEquals("k" + i, e.key);
+            queue.releaseDiscrete();
+        }
+        assertNull(queue.pollDiscrete());
+
+        // Back to the ring once the overflow is drained
+        queue.offerKey("again", 0, 0, true, 0, 0);
+        assertEquals("again", queue.pollDiscrete().key);
+    }
+
+    @Test
+    public void heartbeat_isSinglePendingFlag() {
+        InputSendQueue queue = new InputSendQueue(4);
+        queue.requestHeartbeat();
+        queue.requestHeartbeat();
+
+        assertTrue(queue.takeHeartbeat());
+        assertFalse(queue.takeHeartbeat());
+        assertTrue(queue.isEmpty());
+    }
+}
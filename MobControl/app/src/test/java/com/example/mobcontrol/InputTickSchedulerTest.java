@@ -0,0 +1,144 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InputTickSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long FRAME = 16_666_667L;  // 60 Hz
+
+    private static class FakeDriver implements InputTickScheduler.Driver {
+        long wakeAt = Long.MAX_VALUE;
+        boolean frame;
+
+        @Override
+        public void wakeAt(long nanos) {
+            wakeAt = nanos;
+        }
+
+        @Override
+        public void wakeOnFrame() {
+            frame = true;
+        }
+    }
+
+    // Wakes the scheduler like the main looper would, each wake "delayNanos" late
+    private static void runUntil(InputTickScheduler scheduler, FakeDriver driver, long end, long delayNanos) {
+        long nextFrame = 0;
+        while (true) {
+            long timer = driver.wakeAt == Long.MAX_VALUE ? Long.MAX_VALUE : driver.wakeAt + delayNanos;
+            long frame = driver.frame ? nextFrame : Long.MAX_VALUE;
+            long now = Math.min(timer, frame);
+            if (now > end) return;
+            if (now == frame) {
+                driver.frame = false;
+                nextFrame += FRAME;
+                scheduler.runFrame(now);
+            } else {
+                driver.wakeAt = Long.MAX_VALUE;
+                scheduler.runTimers(now);
+            }
+            while (nextFrame <= now) nextFrame += FRAME;
+        }
+    }
+
+    @Test
+    public void timers_runAtTheirOwnRates() {
+        FakeDriver driver = new FakeDriver();
+        InputTickScheduler scheduler = new InputTickScheduler(driver, FRAME);
+        List<Long> fast = new ArrayList<>();
+        List<Long> slow = new ArrayList<>();
+        InputTickScheduler.Task a = scheduler.timer("fast", now -> { fast.add(now); return 10 * MS; });
+        InputTickScheduler.Task b = scheduler.timer("slow", now -> { slow.add(now); return 100 * MS; });
+        scheduler.start(a, 0);
+        scheduler.start(b, 0);
+
+        runUntil(scheduler, driver, 1000 * MS - 1, 0);
+
+        assertEquals(100, fast.size());
+        assertEquals(10, slow.size());
+        assertEquals(990 * MS, (long) fast.get(99));
+        assertEquals(0, a.getMissed());
+        assertEquals(0, a.getJitterNanos());
+    }
+
+    @Test
+    public void lateWakes_keepTheAverageRate() {
+        FakeDriver driver = new FakeDriver();
+        InputTickScheduler scheduler = new InputTickScheduler(driver, FRAME);
+        int[] ticks = new int[1];
+        InputTickScheduler.Task task = scheduler.timer("pwm", now -> { ticks[0]++; return 10 * MS; });
+        scheduler.start(task, 0);
+
+        // Every wake 3ms late: a rescheduling loop would drift to one tick per 13ms
+        runUntil(scheduler, driver, 1000 * MS - 1, 3 * MS);
+
+        assertEquals(100, ticks[0]);
+        assertEquals(0, task.getMissed());
+        assertEquals(3 * MS, task.getMaxLateNanos());
+    }
+
+    @Test
+    public void stall_skipsAheadAndCountsMissed() {
+        FakeDriver driver = new FakeDriver();
+        InputTickScheduler scheduler = new InputTickScheduler(driver, FRAME);
+        List<Long> runs = new ArrayList<>();
+        InputTickScheduler.Task task = scheduler.timer("link", now -> { runs.add(now); return 10 * MS; });
+        scheduler.start(task, 0);
+
+        scheduler.runTimers(0);
+        scheduler.runTimers(55 * MS);  // main thread blocked for 45ms
+        scheduler.runTimers(65 * MS);
+
+        assertEquals(3, runs.size());  // no burst of catch-up ticks
+        assertEquals(1, task.getMissed());
+        assertEquals(45 * MS, task.getMaxLateNanos());
+        assertTrue(task.getJitterNanos() > 0);
+    }
+
+    @Test
+    public void frameTasks_runOnTheNearestFrame() {
+        FakeDriver driver = new FakeDriver();
+        InputTickScheduler scheduler = new InputTickScheduler(driver, FRAME);
+        int[] everyFrame = new int[1];
+        List<Long> paced = new ArrayList<>();
+        InputTickScheduler.Task touchpad = scheduler.frame("touchpad", now -> { everyFrame[0]++; return 0; });
+        InputTickScheduler.Task joystick = scheduler.frame("joystick", now -> { paced.add(now); return 33 * MS; });
+        scheduler.start(touchpad, 0);
+        scheduler.start(joystick, 0);
+
+        runUntil(scheduler, driver, 1000 * MS, 0);
+
+        assertEquals(60, everyFrame[0]);
+        // 33ms on a 60 Hz display: the average rate is kept, each tick on the frame nearest its due time
+        assertEquals(31, paced.size());
+        for (int i = 0; i < paced.size(); i++) {
+            assertEquals(i * 33 * MS, paced.get(i), FRAME / 2);
+        }
+        assertEquals(0, joystick.getMissed());
+    }
+
+    @Test
+    public void stop_endsTheTaskAndTheFrameRequests() {
+        FakeDriver driver = new FakeDriver();
+        InputTickScheduler scheduler = new InputTickScheduler(driver, FRAME);
+        int[] ticks = new int[1];
+        InputTickScheduler.Task task = scheduler.frame("mouse",
+                now -> ++ticks[0] < 3 ? 0 : InputTickScheduler.STOP);
+        scheduler.start(task, 0);
+
+        runUntil(scheduler, driver, 1000 * MS, 0);
+
+        assertEquals(3, ticks[0]);
+        assertFalse(task.isRunning());
+        assertFalse(driver.frame);
+
+        scheduler.start(task, 1000 * MS);
+        assertTrue(driver.frame);
+    }
+}
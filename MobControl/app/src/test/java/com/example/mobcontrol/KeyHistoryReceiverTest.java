@@ -0,0 +1,111 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeyHistoryReceiverTest {
+
+    private int nextSeq;
+    private final List<int[]> sent = new ArrayList<>();  // {keyId, pressed}
+
+    // Builds a sequenced frame repeating the last "historySize" transitions, like InputSender
+    private byte[] frame(int historySize) {
+        InputCodec codec = new InputCodec();
+        codec.begin(0, nextSeq++);
+        int count = Math.min(historySize, sent.size());
+        int first = sent.size() - count;
+        codec.beginKeyHistory(first, count);
+        for (int t = first; t < sent.size(); t++) {
+            codec.putHistoryEntry(sent.get(t)[0], sent.get(t)[1] != 0);
+        }
+        int length = codec.finish();
+
+        byte[] data = new byte[length];
+        System.arraycopy(codec.buffer(), 0, data, 0, length);
+        return data;
+    }
+
+    private byte[] transition(String key, boolean pressed) {
+        sent.add(new int[] {InputProtocol.keyId(key), pressed ? 1 : 0});
+        return frame(8);
+    }
+
+    // Feeds a frame to the receiver and returns the transitions that were injected
+    private static List<String> receive(KeyHistoryReceiver receiver, byte[] data) {
+        final List<String> injected = new ArrayList<>();
+        receiver.onDatagram(InputCodec.sequence(data, 0));
+        InputCodec.decode(data, 0, data.length, new InputCodec.Handler() {
+            @Override public void onKey(int keyId, boolean pressed) {}
+            @Override public void onMouseMove(int dx, int dy) {}
+            @Override public void onMouseButton(int button, boolean pressed) {}
+            @Override public void onGyro(float x, float y, float z) {}
+            @Override public void onHeartbeat() {}
+            @Override public void onStateReport(int seq, GamepadState state) {}
+            @Override public void onCaptureTime(long remoteMicros) {}
+            @Override public void onEchoRequest(long timestamp) {}
+            @Override public void onAxes(int seq, int stream, int base, int scale, int[] fields) {}
+            @Override public void onMouseVelocity(int x, int y, int vx, int vy) {}
+            @Override public void onKeyTransition(int transition, int keyId, boolean pressed) {
+                if (receiver.onKeyTransition(transition, keyId, pressed)) {
+                    injected.add(InputProtocol.keyName(keyId) + " " + pressed);
+                }
+            }
+        });
+        return injected;
+    }
+
+    @Test
+    public void lostRelease_isRebuiltFromNextDatagram() {
+        KeyHistoryReceiver receiver = new KeyHistoryReceiver();
+
+        assertEquals("[d true]", receive(receiver, transition("d", true)).toString());
+        transition("d", false);  // lost
+        List<String> injected = receive(receiver, transition("a", true));
+
+        assertEquals("[d false, a true]", injected.toString());
+        assertFalse(receiver.getKeys().isKeyPressed(InputProtocol.keyId("d")));
+        assertEquals(1, receiver.getLostDatagrams());
+        assertEquals(0, receiver.getMissedTransitions());
+    }
+
+    @Test
+    public void repeatedHistory_isAppliedOnce() {
+        KeyHistoryReceiver receiver = new KeyHistoryReceiver();
+
+        receive(receiver, transition("w", true));
+        assertTrue(receive(receiver, frame(8)).isEmpty());
+        assertTrue(receive(receiver, frame(8)).isEmpty());
+
+        assertEquals(1, receiver.getAppliedTransitions());
+    }
+
+    @Test
+    public void lateDatagram_doesNotUndoNewerTransition() {
+        KeyHistoryReceiver receiver = new KeyHistoryReceiver();
+
+        byte[] press = transition("w", true);
+        byte[] release = transition("w", false);
+
+        receive(receiver, release);
+        assertTrue(receive(receiver, press).isEmpty());
+        assertFalse(receiver.getKeys().isKeyPressed(InputProtocol.keyId("w")));
+        assertEquals(1, receiver.getLateDatagrams());
+    }
+
+    @Test
+    public void historyTooShort_isCountedAsMissed() {
+        KeyHistoryReceiver receiver = new KeyHistoryReceiver();
+
+        receive(receiver, transition("w", true));
+        transition("a", true);   // lost
+        transition("a", false);  // lost
+        sent.add(new int[] {InputProtocol.keyId("s"), 1});
+        receive(receiver, frame(1));
+
+        assertEquals(2, receiver.getMissedTransitions());
+    }
+}
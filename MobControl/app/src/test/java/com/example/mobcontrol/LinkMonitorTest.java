@@ -0,0 +1,74 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkMonitorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void unknown_untilFirstEcho() {
+        LinkMonitor monitor = new LinkMonitor();
+        monitor.onProbeSent(0, 1_000);
+        assertEquals(LinkMonitor.UNKNOWN, monitor.getState(10_000 * MS));
+
+        monitor.onEcho(1_000, 4_000);
+        assertEquals(LinkMonitor.ALIVE, monitor.getState(10_000 * MS));
+        assertEquals(3_000, monitor.getSmoothedRttMicros());
+    }
+
+    @Test
+    public void unansweredProbes_degradeThenDeadWithin500ms() {
+        LinkMonitor monitor = new LinkMonitor();
+        monitor.onProbeSent(0, 0);
+        monitor.onEcho(0, 2_000);
+
+        // Probes every 100ms, none answered from here on
+        for (long t = 100; t <= 600; t += 100) {
+            monitor.onProbeSent(t * MS, t * 1000);
+        }
+        assertEquals(LinkMonitor.ALIVE, monitor.getState(200 * MS));
+        assertEquals(LinkMonitor.DEGRADED, monitor.getState(400 * MS));
+        assertEquals(LinkMonitor.DEAD, monitor.getState(600 * MS));
+
+        // Any echo brings it back
+        monitor.onEcho(0, 2_500);
+        assertEquals(LinkMonitor.ALIVE, monitor.getState(700 * MS));
+    }
+
+    @Test
+    public void unechoedProbes_countAsLoss() {
+        LinkMonitor monitor = new LinkMonitor();
+        for (int i = 0; i < 400; i++) {
+            long sent = i * 100_000L;
+            monitor.onProbeSent(sent * 1000, sent);
+            if (i % 4 != 0) {
+                monitor.onEcho(sent, sent + 2_000);  // every 4th probe is lost
+            }
+        }
+        assertEquals(25, monitor.getLossPercent(), 5);
+    }
+
+    @Test
+    public void percentilesAndJitter() {
+        LinkMonitor monitor = new LinkMonitor();
+        for (int i = 1; i <= 100; i++) {
+            monitor.onEcho(0, i * 100);  // 100us .. 10ms
+        }
+        // Window keeps the last 64: 3.7ms .. 10ms
+        assertEquals(3_700, monitor.getRttPercentileMicros(0));
+        assertEquals(6_800, monitor.getRttPercentileMicros(50));
+        assertEquals(10_000, monitor.getRttPercentileMicros(100));
+        assertEquals(100, monitor.getJitterMicros(), 10);
+    }
+
+    @Test
+    public void binaryTimestamp_wrapsAround() {
+        LinkMonitor monitor = new LinkMonitor();
+        long now = 0x1_0000_0100L;  // phone micros just past a 32 bit wrap
+        monitor.onEcho((now - 1_500) & 0xFFFFFFFFL, now);
+        assertEquals(1_500, monitor.getSmoothedRttMicros());
+    }
+}
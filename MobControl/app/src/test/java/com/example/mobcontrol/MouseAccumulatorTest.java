@@ -0,0 +1,61 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MouseAccumulatorTest {
+
+    @Test
+    public void slowMotion_addsUpInsteadOfRoundingAway() {
+        MouseAccumulator mouse = new MouseAccumulator();
+        int total = 0;
+        for (int tick = 0; tick < 100; tick++) {
+            mouse.add(0.3f, 0);
+            if (mouse.flush()) {
+                total += mouse.getDx();
+            }
+        }
+        // Math.round(0.3f) per tick would have sent nothing
+        assertEquals(30, total);
+    }
+
+    @Test
+    public void totalDisplacement_doesNotDependOnFlushRate() {
+        float[] motion = new float[1000];
+        for (int i = 0; i < motion.length; i++) {
+            motion[i] = (float) Math.sin(i / 40.0) * 2.7f;
+        }
+        double exact = 0;
+        for (float m : motion) exact += m;
+
+        for (int flushEvery : new int[]{1, 2, 3, 8}) {
+            MouseAccumulator mouse = new MouseAccumulator();
+            int total = 0;
+            for (int i = 0; i < motion.length; i++) {
+                mouse.add(motion[i], -motion[i]);
+                if (i % flushEvery == 0 && mouse.flush()) {
+                    total += mouse.getDx();
+                    assertEquals(-mouse.getDx(), mouse.getDy());
+                }
+            }
+            if (mouse.flush()) {
+                total += mouse.getDx();
+            }
+            assertEquals("flush every " + flushEvery, exact, total, 1.0);
+        }
+    }
+
+    @Test
+    public void steadySpeed_neverStraysMoreThanAPixel() {
+        MouseAccumulator mouse = new MouseAccumulator();
+        int sent = 0;
+        for (int frame = 1; frame <= 500; frame++) {
+            mouse.add(2.5f, 0);
+            mouse.flush();
+            assertTrue(mouse.getDx() == 2 || mouse.getDx() == 3);
+            sent += mouse.getDx();
+            assertTrue(Math.abs(frame * 2.5f - sent) < 1);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MouseVelocityTest {
+
+    private static final long TICK_NANOS = 16_000_000L;       // phone mouse loop
+    private static final long FRAME_MICROS = 1_000_000L / 144;  // desktop display
+    private static final long LATENCY_MICROS = 20_000L;
+
+    private static class Update {
+        int x, y, vx, vy;
+        long sampleMicros;
+    }
+
+    private static class Result {
+        int updates;
+        int movingTicks;
+        int cursorX;
+        float phoneX;
+        int stillFramesWhileSteady;
+    }
+
+    // Joystick pushed to 300 px/s (ramping like the app's loops) for a second, then released
+    private static Result simulate(double lossRate, long renderDelayMicros) {
+        MouseVelocityTracker tracker = new MouseVelocityTracker();
+        List<Update> wire = new ArrayList<>();
+        Random random = new Random(5);
+        Result result = new Result();
+
+        float v = 0;
+        long now = 0;
+        for (int tick = 0; tick < 90; tick++, now += TICK_NANOS) {
+            float target = tick < 70 ? 300 : 0;
+            v += (target - v) * 0.3f;
+            if (target == 0) v = 0;
+            if (v != 0) result.movingTicks++;
+
+            if (tracker.update(v, 0, now)) {
+                tracker.markSent(now);
+                // The stop update is repeated, like the activity does
+                int copies = tracker.isMoving() ? 1 : 3;
+                for (int c = 0; c < copies; c++) {
+                    result.updates++;
+                    // With loss on, the first copy of the stop update is always lost
+                    boolean lost = c == 0 && lossRate > 0 && (!tracker.isMoving() || random.nextDouble() < lossRate);
+                    if (lost) continue;
+                    Update u = new Update();
+                    u.x = tracker.getPositionX();
+                    u.y = tracker.getPositionY();
+                    u.vx = tracker.getVelocityX();
+                    u.vy = tracker.getVelocityY();
+                    u.sampleMicros = now / 1000 + c * 20_000L;
+                    wire.add(u);
+                }
+            }
+        }
+        result.phoneX = tracker.getPositionX() / (float) InputProtocol.MOUSE_POSITION_SCALE;
+
+        CursorExtrapolator cursor = new CursorExtrapolator(renderDelayMicros);
+        int next = 0;
+        for (long t = 0; t < 2_000_000L; t += FRAME_MICROS) {
+            while (next < wire.size() && wire.get(next).sampleMicros + LATENCY_MICROS <= t) {
+                Update u = wire.get(next++);
+                cursor.onUpdate(u.x, u.y, u.vx, u.vy, u.sampleMicros);
+            }
+            cursor.advance(t);
+            result.cursorX += cursor.getDx();
+            assertEquals(0, cursor.getDy());
+
+            // Ramp done, release not reached yet
+            if (t > 400_000L + renderDelayMicros && t < 1_000_000L && cursor.getDx() == 0) {
+                result.stillFramesWhileSteady++;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void steadyDrag_movesEveryFrameAtAFractionOfThePacketRate() {
+        Result r = simulate(0, 0);
+
+        // Delta mode sends one datagram per moving tick
+        assertTrue(r.updates + " updates for " + r.movingTicks + " ticks", r.updates * 2 < r.movingTicks);
+        assertEquals(0, r.stillFramesWhileSteady);
+        assertEquals(r.phoneX, r.cursorX, 1);
+    }
+
+    @Test
+    public void lostUpdates_cursorStillEndsOnPhonePosition() {
+        Result r = simulate(0.3, 0);
+        assertEquals(r.phoneX, r.cursorX, 1);
+    }
+
+    @Test
+    public void renderDelay_interpolatesToTheSamePosition() {
+        Result r = simulate(0, 30_000L);
+        assertEquals(0, r.stillFramesWhileSteady);
+        assertEquals(r.phoneX, r.cursorX, 1);
+    }
+
+    @Test
+    public void tracker_sendsOnChangeAndRefresh() {
+        MouseVelocityTracker tracker = new MouseVelocityTracker();
+        assertFalse(tracker.update(0, 0, 0));  // not moving, nothing to stop
+
+        assertTrue(tracker.update(100, 0, 0));
+        tracker.markSent(0);
+        assertFalse(tracker.update(105, 0, TICK_NANOS));  // below 10%
+        assertTrue(tracker.update(100, 0, MouseVelocityTracker.REFRESH_NANOS));
+        tracker.markSent(MouseVelocityTracker.REFRESH_NANOS);
+
+        assertTrue(tracker.update(0, 0, MouseVelocityTracker.REFRESH_NANOS + TICK_NANOS));
+        tracker.markSent(MouseVelocityTracker.REFRESH_NANOS + TICK_NANOS);
+        assertFalse(tracker.isMoving());
+        assertFalse(tracker.update(0, 0, MouseVelocityTracker.REFRESH_NANOS + 2 * TICK_NANOS));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-event CPU cost of a JSON key message: building and serializing a map (old path)
+ * versus handing off a PacketTemplates entry. Not a unit test; run main() manually:
+ *
+ *   java -cp <test classes>:<app classes>:<gson> com.example.mobcontrol.PacketTemplateBenchmark
+ */
+public class PacketTemplateBenchmark {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        ControlMap map = new ControlMap("Racing");
+        int gas = map.addKey("gas", "w");
+        PacketTemplates templates = new PacketTemplates(map, 0, false);
+        Gson gson = new Gson();
+
+        for (int round = 0; round < 3; round++) {
+            double perEventSerialize = measure(() -> {
+                Map<String, Object> message = new HashMap<>();
+                message.put("action", "key");
+                message.put("key", "w");
+                message.put("pressed", true);
+                return gson.toJson(message).getBytes();
+            });
+            double perEventTemplate = measure(() -> templates.get(gas, true));
+
+            System.out.printf("round %d: serialize %.1f ns/event, template %.1f ns/event (%.0fx)%n",
+                    round, perEventSerialize, perEventTemplate, perEventSerialize / perEventTemplate);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private interface Encoder {
+        byte[] encode();
+    }
+
+    private static double measure(Encoder encoder) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink += encoder.encode().length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.encode().length;
+        }
+        return (System.nanoTime() - start) / (double) ITERATIONS;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PacketTemplatesTest {
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(byte[] json) {
+        return new Gson().fromJson(new String(json), Map.class);
+    }
+
+    @Test
+    public void keyTemplate_matchesPerEventMessage() {
+        ControlMap map = new ControlMap("Racing");
+        int gas = map.addKey("gas", "w");
+
+        PacketTemplates templates = new PacketTemplates(map, 2, false);
+        Map<String, Object> press = parse(templates.get(gas, true));
+
+        assertEquals("key", press.get("action"));
+        assertEquals("w", press.get("key"));
+        assertEquals(true, press.get("pressed"));
+        assertEquals(2.0, press.get("player"));
+        assertEquals(false, parse(templates.get(gas, false)).get("pressed"));
+    }
+
+    @Test
+    public void controlIdTemplate_carriesOnlyTheId() {
+        ControlMap map = new ControlMap("Racing");
+        int gas = map.addKey("gas", "w");
+
+        Map<String, Object> press = parse(new PacketTemplates(map, 0, true).get(gas, true));
+
+        assertEquals("control", press.get("action"));
+        assertEquals((double) gas, press.get("id"));
+        assertFalse(press.containsKey("key"));
+        assertFalse(press.containsKey("player"));
+    }
+
+    @Test
+    public void unknownControl_hasNoTemplate() {
+        PacketTemplates templates = new PacketTemplates(new ControlMap("Empty"), 0, false);
+        assertNull(templates.get(ControlMap.FIRST_LAYOUT_ID, true));
+        assertNull(templates.get(0, true));
+        assertNotNull(templates.get(InputProtocol.keyId("space"), true));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PresenceListenerTest {
+
+    private static final InetAddress DESKTOP = InetAddress.getLoopbackAddress();
+    private static final InetSocketAddress BEACON_FROM = new InetSocketAddress(DESKTOP, 50000);
+
+    private static Map<String, Object> beacon(String id, String name, String code) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("action", "presence");
+        message.put("id", id);
+        message.put("name", name);
+        message.put("port", 7777.0);  // Gson numbers
+        if (code != null) message.put("code", code);
+        return message;
+    }
+
+    @Test
+    public void beacons_buildTheListAndExpire() {
+        PresenceListener presence = new PresenceListener(0, desktops -> { });
+
+        assertTrue(presence.handleMessage(beacon("pc1", "Gaming PC", null), DESKTOP, BEACON_FROM, 0));
+        // Same beacon again: nothing to redraw
+        assertFalse(presence.handleMessage(beacon("pc1", "Gaming PC", null), DESKTOP, BEACON_FROM, 1_000_000_000L));
+        // Opened for pairing
+        assertTrue(presence.handleMessage(beacon("pc1", "Gaming PC", "1234"), DESKTOP, BEACON_FROM, 2_000_000_000L));
+
+        List<PresenceListener.Desktop> list = presence.snapshot();
+        assertEquals(1, list.size());
+        assertEquals("Gaming PC", list.get(0).name);
+        assertEquals("127.0.0.1", list.get(0).host);
+        assertEquals(7777, list.get(0).port);
+        assertEquals("1234", list.get(0).code);
+        assertEquals(-1, list.get(0).rttMicros);
+
+        assertFalse(presence.expire(2_000_000_000L + PresenceListener.EXPIRE_NANOS));
+        assertTrue(presence.expire(2_000_000_001L + PresenceListener.EXPIRE_NANOS));
+        assertTrue(presence.snapshot().isEmpty());
+    }
+
+    @Test
+    public void pongs_measureRttAndSortTheList() {
+        PresenceListener presence = new PresenceListener(0, desktops -> { });
+        InetSocketAddress otherFrom = new InetSocketAddress(DESKTOP, 50001);
+        presence.handleMessage(beacon("far", "Far", null), DESKTOP, BEACON_FROM, 0);
+        presence.handleMessage(beacon("near", "Near", null), DESKTOP, otherFrom, 0);
+
+        Map<String, Object> pong = new HashMap<>();
+        pong.put("action", "presence_pong");
+        pong.put("t", 1000.0);  // micros
+        assertTrue(presence.handleMessage(pong, DESKTOP, BEACON_FROM, 9_000_000L));
+        assertTrue(presence.handleMessage(pong, DESKTOP, otherFrom, 3_000_000L));
+
+        List<PresenceListener.Desktop> list = presence.snapshot();
+        assertEquals("Near", list.get(0).name);
+        assertEquals(2000, list.get(0).rttMicros);
+        assertEquals(8000, list.get(1).rttMicros);
+    }
+
+    @Test
+    public void loopback_beaconAndPingRoundTrip() throws Exception {
+        CountDownLatch measured = new CountDownLatch(1);
+        AtomicReference<List<PresenceListener.Desktop>> last = new AtomicReference<>();
+        PresenceListener presence = new PresenceListener(0, desktops -> {
+            last.set(desktops);
+            if (!desktops.isEmpty() && desktops.get(0).rttMicros >= 0) measured.countDown();
+        });
+        presence.start();
+
+        try (DatagramSocket desktop = new DatagramSocket(0, DESKTOP)) {
+            desktop.setSoTimeout(2000);
+            byte[] data = "{\"action\":\"presence\",\"id\":\"pc1\",\"name\":\"PC\",\"port\":7777}"
+                    .getBytes(StandardCharsets.UTF_8);
+            desktop.send(new DatagramPacket(data, data.length, DESKTOP, presence.getLocalPort()));
+
+            // Answer the ping like the desktop does
+            byte[] buffer = new byte[256];
+            DatagramPacket ping = new DatagramPacket(buffer, buffer.length);
+            desktop.receive(ping);
+            String request = new String(buffer, 0, ping.getLength(), StandardCharsets.UTF_8);
+            assertTrue(request, request.contains("presence_ping"));
+            String t = request.replaceAll(".*\"t\":(\\d+).*", "$1");
+            byte[] pong = ("{\"action\":\"presence_pong\",\"t\":" + t + "}").getBytes(StandardCharsets.UTF_8);
+            desktop.send(new DatagramPacket(pong, pong.length, ping.getSocketAddress()));
+
+            assertTrue(measured.await(2, TimeUnit.SECONDS));
+            assertEquals("PC", last.get().get(0).name);
+        } finally {
+            presence.stop();
+        }
+    }
+}
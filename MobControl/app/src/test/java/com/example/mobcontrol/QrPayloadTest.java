@@ -0,0 +1,35 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class QrPayloadTest {
+
+    @Test
+    public void singleHost_parsesLikeBefore() {
+        QrPayload payload = QrPayload.parse("192.168.0.10:7777:1234");
+        assertEquals(Arrays.asList("192.168.0.10"), payload.hosts);
+        assertEquals(7777, payload.port);
+        assertEquals("1234", payload.code);
+    }
+
+    @Test
+    public void candidateList_keepsOrderAndDropsDuplicates() {
+        QrPayload payload = QrPayload.parse("192.168.0.10, 10.8.0.2,172.17.0.1,10.8.0.2:7777:1234");
+        assertEquals(Arrays.asList("192.168.0.10", "10.8.0.2", "172.17.0.1"), payload.hosts);
+    }
+
+    @Test
+    public void badPayloads_areRejected() {
+        for (String text : new String[]{"hello", "1.2.3.4:7777", ",:7777:1234", "1.2.3.4:port:1234", "1.2.3.4:70000:1234"}) {
+            try {
+                QrPayload.parse(text);
+                fail(text);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
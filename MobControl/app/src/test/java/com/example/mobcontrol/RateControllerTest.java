@@ -0,0 +1,78 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateControllerTest {
+
+    private static void clean(RateController rate, int updates) {
+        for (int i = 0; i < updates; i++) {
+            rate.update(LinkMonitor.ALIVE, 3_000, 2_500, 0, 200);
+        }
+    }
+
+    @Test
+    public void startsAtOldFixedRates() {
+        RateController rate = new RateController();
+        assertEquals(16, rate.getAnalogIntervalMs());
+        assertEquals(100, rate.getPwmCycleMs());
+    }
+
+    @Test
+    public void cleanFastLink_raisesTo500Hz() {
+        RateController rate = new RateController();
+        clean(rate, 9);
+        assertEquals(16, rate.getAnalogIntervalMs());  // needs a sustained clean period
+
+        clean(rate, 100);
+        assertEquals(500, rate.getAnalogRateHz());
+        assertEquals(50, rate.getPwmCycleMs());
+    }
+
+    @Test
+    public void congestion_dropsImmediately() {
+        RateController rate = new RateController();
+        clean(rate, 100);
+
+        // Queueing delay: smoothed RTT 15ms above the minimum
+        assertTrue(rate.update(LinkMonitor.ALIVE, 17_500, 2_500, 0, 200));
+        assertEquals(4, rate.getAnalogIntervalMs());
+
+        // Retransmissions since the last update
+        assertTrue(rate.update(LinkMonitor.ALIVE, 3_000, 2_500, 3, 200));
+        assertEquals(8, rate.getAnalogIntervalMs());
+        assertFalse(rate.update(LinkMonitor.ALIVE, 3_000, 2_500, 3, 200));  // same count: clean
+
+        rate.update(LinkMonitor.DEAD, 3_000, 2_500, 3, 200);
+        rate.update(LinkMonitor.DEGRADED, 3_000, 2_500, 3, 200);
+        rate.update(LinkMonitor.DEGRADED, 3_000, 2_500, 3, 200);
+        assertEquals(33, rate.getAnalogIntervalMs());
+        assertEquals(4000, rate.getBatchWindowMicros());
+    }
+
+    @Test
+    public void noEchoes_neverRaises() {
+        RateController rate = new RateController();
+        for (int i = 0; i < 100; i++) {
+            rate.update(LinkMonitor.UNKNOWN, 0, 0, 0, 200);
+        }
+        assertEquals(16, rate.getAnalogIntervalMs());
+    }
+
+    @Test
+    public void desktopRateLimit_capsRaises() {
+        RateController rate = new RateController();
+        rate.setMaxRateHz(125);
+        clean(rate, 100);
+        assertEquals(8, rate.getAnalogIntervalMs());
+
+        // A limit below the current rate applies at once
+        rate.setMaxRateHz(62);
+        assertEquals(16, rate.getAnalogIntervalMs());
+
+        rate.setMaxRateHz(0);
+        clean(rate, 100);
+        assertEquals(RateController.MAX_RATE_HZ, rate.getAnalogRateHz());
+    }
+}
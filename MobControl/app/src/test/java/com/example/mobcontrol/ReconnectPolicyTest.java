@@ -0,0 +1,76 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReconnectPolicyTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void shortStall_doesNotStartAnOutage() {
+        ReconnectPolicy policy = new ReconnectPolicy(new Random(1));
+        assertFalse(policy.onLinkCheck(true, false, 1000 * MS));
+        assertFalse(policy.onLinkCheck(true, false, 2000 * MS));
+        assertFalse(policy.onLinkCheck(false, false, 2200 * MS));  // back in time
+        assertFalse(policy.onLinkCheck(true, false, 3000 * MS));   // dead time restarts
+        assertFalse(policy.onLinkCheck(true, false, 4000 * MS));
+        assertTrue(policy.onLinkCheck(true, false, 4500 * MS));
+        assertTrue(policy.isInOutage());
+    }
+
+    @Test
+    public void sendFailures_needTheSameTimeAsADeadLink() {
+        ReconnectPolicy policy = new ReconnectPolicy(new Random(1));
+        // One transient failure, then sends work again
+        assertFalse(policy.onLinkCheck(false, true, 1000 * MS));
+        assertFalse(policy.onLinkCheck(false, false, 1100 * MS));
+        assertFalse(policy.onLinkCheck(false, true, 2700 * MS));
+
+        // Failing for the whole threshold
+        assertFalse(policy.onLinkCheck(false, true, 4000 * MS));
+        assertTrue(policy.onLinkCheck(false, true, 4200 * MS));
+        assertFalse(policy.onLinkCheck(true, true, 4300 * MS));  // already reconnecting
+    }
+
+    @Test
+    public void backoff_doublesUpToTheCapWithJitter() {
+        ReconnectPolicy policy = new ReconnectPolicy(new Random(7));
+        policy.onLinkCheck(false, true, 1000 * MS);
+        assertTrue(policy.onLinkCheck(false, true, 2500 * MS));
+        assertEquals(0, policy.nextAttemptDelayNanos());
+
+        long base = ReconnectPolicy.INITIAL_BACKOFF_NANOS;
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            policy.onAttempt();
+            long expected = Math.min(base, ReconnectPolicy.MAX_BACKOFF_NANOS);
+            long delay = policy.nextAttemptDelayNanos();
+            assertTrue(attempt + ": " + delay, delay >= expected * 0.8 && delay <= expected * 1.2);
+            base *= 2;
+        }
+    }
+
+    @Test
+    public void recovery_recordsOutageAndRecoverTimes() {
+        ReconnectPolicy policy = new ReconnectPolicy(new Random(1));
+        policy.onLinkCheck(true, false, 1000 * MS);
+        assertTrue(policy.onLinkCheck(true, false, 2500 * MS));
+        policy.onAttempt();
+        policy.onAttempt();
+
+        policy.onRecovered(3000 * MS);
+
+        assertFalse(policy.isInOutage());
+        assertEquals(2_000_000L, policy.getLastOutageMicros());
+        assertEquals(500_000L, policy.getLastRecoverMicros());
+        assertTrue(policy.metricsSummary(), policy.metricsSummary().contains("lastAttempts=2"));
+
+        // The next outage starts from scratch
+        assertFalse(policy.onLinkCheck(true, false, 4000 * MS));
+        assertTrue(policy.onLinkCheck(false, true, 5500 * MS));
+        assertEquals(0, policy.getAttempts());
+    }
+}
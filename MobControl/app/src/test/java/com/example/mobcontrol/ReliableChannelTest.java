@@ -0,0 +1,79 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReliableChannelTest {
+
+    private static final ReliableChannel.Listener IGNORE = new ReliableChannel.Listener() {
+        @Override public void onMessage(Map<String, Object> message) {}
+        @Override public void onDelivered(long id, Object action) {}
+        @Override public void onDeliveryFailed(long id, Object action) {}
+    };
+
+    private static Map<String, Object> release(String key) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("action", "key");
+        message.put("key", key);
+        message.put("pressed", false);
+        return message;
+    }
+
+    private static InputEvent keyEvent(String key, int keyId, int player) {
+        InputEvent e = new InputEvent();
+        e.type = InputEvent.KEY;
+        e.key = key;
+        e.keyId = keyId;
+        e.player = player;
+        return e;
+    }
+
+    // Desktop that never acks, and a channel whose thread isn't started: nothing is retransmitted
+    @Test
+    public void laterTransition_dropsThePendingRelease() throws Exception {
+        try (DatagramSocket desktop = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             InputTransport transport = new InputTransport("127.0.0.1", desktop.getLocalPort())) {
+            transport.open();
+            ReliableChannel channel = new ReliableChannel(transport, IGNORE);
+
+            long w = InputSender.transitionKey(keyEvent("w", 1, 0));
+            long a = InputSender.transitionKey(keyEvent("a", 2, 0));
+            long first = channel.send(release("w"), w);
+            channel.send(release("a"), a);
+            assertEquals(2, channel.getPendingCount());
+
+            // Another release of "w" replaces the first one
+            channel.send(release("w"), w);
+            assertEquals(2, channel.getPendingCount());
+            assertFalse(channel.awaitDelivery(first, 0));
+
+            // A press of "a" ends its release
+            channel.supersede(a);
+            assertEquals(1, channel.getPendingCount());
+            assertEquals(2, channel.getSuperseded());
+
+            // Unkeyed control messages are never dropped
+            channel.send(release("x"));
+            channel.supersede(0);
+            assertEquals(2, channel.getPendingCount());
+        }
+    }
+
+    @Test
+    public void transitionKeys_separateKeysPlayersAndButtons() {
+        assertEquals(InputSender.transitionKey(keyEvent("w", 1, 0)), InputSender.transitionKey(keyEvent("w", 1, 0)));
+        assertNotEquals(InputSender.transitionKey(keyEvent("w", 1, 0)), InputSender.transitionKey(keyEvent("w", 1, 2)));
+        assertNotEquals(InputSender.transitionKey(keyEvent("w", 1, 0)), InputSender.transitionKey(keyEvent("a", 2, 0)));
+
+        InputEvent button = new InputEvent();
+        button.type = InputEvent.MOUSE_BUTTON;
+        button.button = 1;
+        assertNotEquals(InputSender.transitionKey(keyEvent(null, 1, 0)), InputSender.transitionKey(button));
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ResumeHandshakeTest {
+
+    // Desktop that drops the first "ignore" requests, then answers with "reply"
+    private static DatagramSocket fakeDesktop(int ignore, String reply) throws Exception {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        new Thread(() -> {
+            try {
+                byte[] buffer = new byte[1024];
+                for (int i = 0; ; i++) {
+                    DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(request);
+                    String text = new String(buffer, 0, request.getLength(), StandardCharsets.UTF_8);
+                    if (i < ignore || !text.contains("\"session\":\"token1\"")) continue;
+                    byte[] data = reply.getBytes(StandardCharsets.UTF_8);
+                    socket.send(new DatagramPacket(data, data.length, request.getSocketAddress()));
+                    return;
+                }
+            } catch (Exception ignored) {
+            }
+        }).start();
+        return socket;
+    }
+
+    private static ResumeHandshake.Result resume(DatagramSocket desktop, int timeoutMillis) {
+        return ResumeHandshake.resume("127.0.0.1", desktop.getLocalPort(), "token1", "Phone", timeoutMillis);
+    }
+
+    @Test
+    public void knownToken_resumesInOneRoundTrip() throws Exception {
+        try (DatagramSocket desktop = fakeDesktop(0, "{\"action\":\"resumed\"}")) {
+            ResumeHandshake.Result result = resume(desktop, 800);
+            assertEquals(ResumeHandshake.RESUMED, result.outcome);
+            assertTrue(result.rttMicros + "us", result.rttMicros >= 0 && result.rttMicros < 200_000L);
+        }
+    }
+
+    @Test
+    public void lostRequest_isRepeated() throws Exception {
+        try (DatagramSocket desktop = fakeDesktop(1, "{\"action\":\"resumed\"}")) {
+            assertEquals(ResumeHandshake.RESUMED, resume(desktop, 800).outcome);
+        }
+    }
+
+    @Test
+    public void rejectedOrSilent_fallsBack() throws Exception {
+        try (DatagramSocket desktop = fakeDesktop(0, "{\"action\":\"resume_rejected\"}")) {
+            assertEquals(ResumeHandshake.REJECTED, resume(desktop, 800).outcome);
+        }
+        try (DatagramSocket desktop = fakeDesktop(5, "{\"action\":\"resumed\"}")) {
+            long start = System.nanoTime();
+            ResumeHandshake.Result result = resume(desktop, 400);
+            assertEquals(ResumeHandshake.NO_ANSWER, result.outcome);
+            assertEquals(-1, result.rttMicros);
+            assertTrue((System.nanoTime() - start) < 1_000_000_000L);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RttEstimatorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void noSample_usesInitialRto() {
+        RttEstimator rtt = new RttEstimator(200 * MS, 30 * MS, 1000 * MS);
+        assertFalse(rtt.hasSample());
+        assertEquals(200 * MS, rtt.getRtoNanos());
+    }
+
+    @Test
+    public void stableRtt_convergesToMinimum() {
+        RttEstimator rtt = new RttEstimator(200 * MS, 30 * MS, 1000 * MS);
+        for (int i = 0; i < 50; i++) {
+            rtt.addSample(4 * MS);
+        }
+        assertEquals(4 * MS, rtt.getSmoothedRttNanos());
+        assertEquals(30 * MS, rtt.getRtoNanos());
+    }
+
+    @Test
+    public void jitter_raisesRto() {
+        RttEstimator rtt = new RttEstimator(200 * MS, 30 * MS, 1000 * MS);
+        for (int i = 0; i < 50; i++) {
+            rtt.addSample((i % 2 == 0 ? 10 : 60) * MS);
+        }
+        assertTrue(rtt.getRtoNanos() > 60 * MS);
+    }
+
+    @Test
+    public void backoff_doublesAndIsCapped() {
+        RttEstimator rtt = new RttEstimator(200 * MS, 30 * MS, 1000 * MS);
+        assertEquals(200 * MS, rtt.getBackoffRtoNanos(1));
+        assertEquals(400 * MS, rtt.getBackoffRtoNanos(2));
+        assertEquals(800 * MS, rtt.getBackoffRtoNanos(3));
+        assertEquals(1000 * MS, rtt.getBackoffRtoNanos(4));
+    }
+}
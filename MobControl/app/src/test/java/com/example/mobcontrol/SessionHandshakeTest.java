@@ -0,0 +1,81 @@
+package com.example.mobcontrol;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SessionHandshakeTest {
+
+    private static final Gson gson = new Gson();
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> json(String text) {
+        return gson.fromJson(text, Map.class);
+    }
+
+    @Test
+    public void hello_carriesOfferAndLegacyPairingFields() {
+        Map<String, Object> hello = json(gson.toJson(
+                SessionHandshake.hello("1234", "Pixel", "abcd", false, 500)));
+
+        assertEquals("pair", hello.get("action"));  // original desktops pair from this
+        assertEquals("1234", hello.get("code"));
+        assertEquals("Pixel", hello.get("deviceName"));
+        assertEquals(2.0, hello.get("v"));
+        assertEquals(500.0, hello.get("max_rate_hz"));
+        assertEquals("abcd", hello.get("session"));
+        assertTrue(((List<?>) hello.get("features")).contains(SessionHandshake.FEATURE_STATE_REPORTS));
+        assertEquals(InputProtocol.CODEC_BINARY_AXIS, ((List<?>) hello.get("codecs")).get(0));
+        assertNull(hello.get("resume"));
+    }
+
+    @Test
+    public void helloAck_enablesOnlyListedAndOfferedFeatures() {
+        SessionHandshake.Agreement agreed = SessionHandshake.parseReply(json(
+                "{\"action\":\"hello_ack\",\"v\":2,\"codec\":\"binary1\",\"max_rate_hz\":125,"
+                        + "\"features\":[\"acks\",\"teleport\"],\"session\":\"s1\"}"));
+
+        assertTrue(agreed.accepted);
+        assertFalse(agreed.isLegacy());
+        assertEquals(InputProtocol.CODEC_BINARY, agreed.codec);
+        assertEquals(125, agreed.maxRateHz);
+        assertEquals("s1", agreed.sessionId);
+        assertTrue(agreed.has(SessionHandshake.FEATURE_ACKS));
+        assertFalse(agreed.has(SessionHandshake.FEATURE_FEC));
+        assertFalse(agreed.has("teleport"));
+    }
+
+    @Test
+    public void legacyReplies_agreeOnTheCodecOnly() {
+        // Codec-only reply: the codec, but no features it didn't list, and no rate limit
+        SessionHandshake.Agreement codecOnly = SessionHandshake.parseReply(json("{\"codec\":\"binary1-axis\"}"));
+        assertTrue(codecOnly.isLegacy());
+        assertEquals(InputProtocol.CODEC_BINARY_AXIS, codecOnly.codec);
+        assertFalse(codecOnly.has(SessionHandshake.FEATURE_STATE_REPORTS));
+        assertFalse(codecOnly.has(SessionHandshake.FEATURE_ACKS));
+        assertEquals(0, codecOnly.maxRateHz);
+
+        // Original desktop: JSON, nothing optional
+        SessionHandshake.Agreement paired = SessionHandshake.parseReply(json(
+                "{\"status\":\"connected\",\"action\":\"pair_success\",\"message\":\"Connected successfully!\"}"));
+        assertTrue(paired.accepted);
+        assertEquals(InputProtocol.CODEC_JSON, paired.codec);
+        assertFalse(paired.has(SessionHandshake.FEATURE_ACKS));
+
+        // Original desktop that answers with its button config
+        SessionHandshake.Agreement config = SessionHandshake.parseReply(json(
+                "{\"status\":\"connected\",\"buttons\":{\"a\":{\"enabled\":true,\"key\":\"SPACE\",\"label\":\"A\"}}}"));
+        assertTrue(config.accepted);
+        assertTrue(config.isLegacy());
+        assertEquals(InputProtocol.CODEC_JSON, config.codec);
+        assertFalse(config.has(SessionHandshake.FEATURE_ACKS));
+
+        assertFalse(SessionHandshake.parseReply(json("{\"action\":\"pair_failed\"}")).accepted);
+        assertNull(SessionHandshake.parseReply(json("{\"action\":\"time_sync\",\"t1\":1}")));
+    }
+}
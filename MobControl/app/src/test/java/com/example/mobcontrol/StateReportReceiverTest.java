@@ -0,0 +1,48 @@
+package com.example.mobcontrol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StateReportReceiverTest {
+
+    private static GamepadState pressed(String key) {
+        GamepadState state = new GamepadState();
+        state.setKey(InputProtocol.keyId(key), true);
+        return state;
+    }
+
+    @Test
+    public void outOfOrderReport_isDropped() {
+        StateReportReceiver receiver = new StateReportReceiver();
+
+        assertTrue(receiver.onReport(1, pressed("w")));
+        assertTrue(receiver.onReport(3, pressed("a")));
+        assertFalse(receiver.onReport(2, pressed("s")));   // late
+        assertFalse(receiver.onReport(3, pressed("d")));   // duplicate
+
+        assertTrue(receiver.getState().isKeyPressed(InputProtocol.keyId("a")));
+        assertEquals(2, receiver.getDroppedReports());
+        assertEquals(1, receiver.getLostReports());
+    }
+
+    @Test
+    public void lostRelease_isRepairedByNextReport() {
+        StateReportReceiver receiver = new StateReportReceiver();
+
+        receiver.onReport(10, pressed("w"));
+        // Report 11 (w released) is lost, report 12 still has the full state
+        receiver.onReport(12, new GamepadState());
+
+        assertFalse(receiver.getState().isKeyPressed(InputProtocol.keyId("w")));
+    }
+
+    @Test
+    public void sequence_wrapsAround() {
+        StateReportReceiver receiver = new StateReportReceiver();
+
+        assertTrue(receiver.onReport(Integer.MAX_VALUE, new GamepadState()));
+        assertTrue(receiver.onReport(Integer.MIN_VALUE, new GamepadState()));
+        assertFalse(receiver.onReport(Integer.MAX_VALUE - 1, new GamepadState()));
+    }
+}